@@ -0,0 +1,201 @@
+package com.cardio_generator;
+
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.BinaryFileOutputStrategy;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BulkDatasetGenerator} produces large fixed datasets, e.g. 1,000 patients over
+ * seven days, for benchmarking {@code DataStorage} and the readers.
+ *
+ * The patients are split into contiguous partitions. Each partition is generated on its
+ * own thread, with its own generators and {@link VirtualClock}, in a tight loop over
+ * virtual time. The signals and rates are those of the simulator. Each partition is
+ * written to {@code part-<n>.bin} as binary frames with {@link BinaryFileOutputStrategy};
+ * {@code BinaryFileDataReader} loads the directory back.
+ *
+ * The simulated time starts at a fixed instant rather than now, and every value and
+ * initial delay is drawn from per-patient streams of the seed, so the same arguments
+ * produce the same dataset, whatever the number of partitions.
+ *
+ * Usage: {@code java com.cardio_generator.BulkDatasetGenerator --output-dir <dir>
+ * [--patient-count <n>] [--duration <seconds>] [--partitions <n>] [--seed <n>]
+ * [--start-time <epoch millis>] [--ecg-rate <hz>]}
+ */
+public class BulkDatasetGenerator {
+
+    /** 2024-01-01T00:00:00Z */
+    public static final long DEFAULT_START_MILLIS = 1704067200000L;
+
+    private final int patientCount;
+    private final long durationMillis;
+    private final int partitions;
+    private final long startMillis;
+    private final long seed;
+    private final int ecgRateHz;
+
+    /**
+     * @param patientCount   the number of patients, with ids 1 to {@code patientCount}
+     * @param durationMillis the simulated time to generate
+     * @param partitions     the number of partitions, files and threads
+     * @param startMillis    the simulated time of the first tick
+     * @param seed           the master seed of the generated values
+     */
+    public BulkDatasetGenerator(int patientCount, long durationMillis, int partitions, long startMillis, long seed) {
+        this(patientCount, durationMillis, partitions, startMillis, seed, 0);
+    }
+
+    /**
+     * @param patientCount   the number of patients, with ids 1 to {@code patientCount}
+     * @param durationMillis the simulated time to generate
+     * @param partitions     the number of partitions, files and threads
+     * @param startMillis    the simulated time of the first tick
+     * @param seed           the master seed of the generated values
+     * @param ecgRateHz      the high-rate ECG sample rate, or 0 for one ECG sample per second
+     */
+    public BulkDatasetGenerator(int patientCount, long durationMillis, int partitions, long startMillis, long seed,
+                                int ecgRateHz) {
+        if (patientCount <= 0 || partitions <= 0) {
+            throw new IllegalArgumentException("Patient count and partitions must be positive");
+        }
+        this.patientCount = patientCount;
+        this.durationMillis = durationMillis;
+        this.partitions = Math.min(partitions, patientCount);
+        this.startMillis = startMillis;
+        this.seed = seed;
+        this.ecgRateHz = ecgRateHz;
+    }
+
+    /**
+     * Generates the dataset into the directory. The partition files of an earlier run
+     * are deleted first, so that a run with fewer partitions leaves none of them behind
+     * for a reader of the directory to import.
+     *
+     * @param directory the directory for the partition files; created if missing
+     * @return the number of samples written
+     * @throws IOException if a file cannot be written or a stale one deleted
+     */
+    public long generate(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "part-*.bin")) {
+            for (Path file : stale) {
+                Files.delete(file);
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int partition = 0; partition < partitions; partition++) {
+                int index = partition;
+                results.add(pool.submit(() -> generatePartition(index, directory)));
+            }
+            long samples = 0;
+            for (Future<Long> result : results) {
+                samples += result.get();
+            }
+            return samples;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating the dataset", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error generating the dataset", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Generates the patients of one partition into part-<partition>.bin
+    private long generatePartition(int partition, Path directory) throws IOException {
+        int first = 1 + (int) ((long) patientCount * partition / partitions);
+        int last = (int) ((long) patientCount * (partition + 1) / partitions);
+        List<Integer> patientIds = new ArrayList<>(last - first + 1);
+        for (int id = first; id <= last; id++) {
+            patientIds.add(id);
+        }
+
+        VirtualClock clock = new VirtualClock(startMillis);
+        PatientBlockScheduler blocks = HealthDataSimulator.createBlockScheduler(
+                patientIds, patientCount, patientIds.size(), clock, new RandomStreams(seed), ecgRateHz);
+        BinaryFileOutputStrategy output = new BinaryFileOutputStrategy(
+                directory.resolve("part-" + partition + ".bin"));
+        try {
+            blocks.runVirtual(clock, durationMillis, output);
+        } finally {
+            output.close();
+        }
+        return output.getWrittenSamples();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int patientCount = 1000;
+        long durationMillis = TimeUnit.DAYS.toMillis(7);
+        int partitions = Runtime.getRuntime().availableProcessors();
+        long startMillis = DEFAULT_START_MILLIS;
+        long seed = 0;
+        int ecgRateHz = 0;
+        String outputDir = null;
+        try {
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--patient-count":
+                        patientCount = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+                        break;
+                    case "--partitions":
+                        partitions = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--ecg-rate":
+                        ecgRateHz = Integer.parseInt(value);
+                        break;
+                    case "--start-time":
+                        startMillis = Long.parseLong(value);
+                        break;
+                    case "--output-dir":
+                        outputDir = value;
+                        break;
+                    default:
+                        System.err.println("Unknown option '" + args[i] + "'");
+                        System.exit(1);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (outputDir == null) {
+            System.err.println("Usage: java com.cardio_generator.BulkDatasetGenerator --output-dir <dir>"
+                    + " [--patient-count <n>] [--duration <seconds>] [--partitions <n>] [--seed <n>]"
+                    + " [--start-time <epoch millis>] [--ecg-rate <hz>]");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        long samples = new BulkDatasetGenerator(patientCount, durationMillis, partitions, startMillis, seed, ecgRateHz)
+                .generate(Paths.get(outputDir));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Generated %d samples for %d patients in %.1f s (%.0f samples/s)%n",
+                samples, patientCount, seconds, samples / seconds);
+    }
+}
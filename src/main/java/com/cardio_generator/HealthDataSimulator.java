@@ -1,5 +1,6 @@
 package com.cardio_generator;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -10,20 +11,33 @@ import com.cardio_generator.generators.BloodPressureDataGenerator;
 import com.cardio_generator.generators.BloodSaturationDataGenerator;
 import com.cardio_generator.generators.BloodLevelsDataGenerator;
 import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.generators.HighRateECGGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.SimulationClock;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.CompositeOutputStrategy;
 import com.cardio_generator.outputs.ConsoleOutputStrategy;
 import com.cardio_generator.outputs.FileOutputStrategy;
 import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.ScenarioOutputStrategy;
+import com.cardio_generator.outputs.SegmentPolicy;
 import com.cardio_generator.outputs.TcpOutputStrategy;
 import com.cardio_generator.outputs.WebSocketOutputStrategy;
 import com.data_management.DataStorage;
+import com.data_management.OverflowPolicy;
 import com.data_management.PatientRecord;
+import com.data_management.WireFormat;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -34,18 +48,138 @@ public class HealthDataSimulator {
     private static int patientCount = 10; // Default number of patients
     private static ScheduledExecutorService scheduler;
     private static OutputStrategy outputStrategy = new ConsoleOutputStrategy(); // Default output strategy
-    private static final Random random = new Random();
+    private static Random random = new Random();
+    // Per-patient random streams of the generators; seeded with --seed
+    private static RandomStreams randomStreams = RandomStreams.unseeded();
+    // High-rate ECG samples per second, 0 for one sample per second; emitted in blocks
+    private static int ecgRateHz = 0;
+    static final long ECG_BLOCK_MILLIS = 50;
+
+    // File output rotation settings; applied when the output strategy is created
+    private static long rotateBytes = 0;
+    private static long rotateMillis = 0;
+    private static boolean compressSegments = false;
+    private static long websocketBatchMillis = 0;
+    private static boolean websocketDeflate = false;
+    private static int websocketHistory = WebSocketOutputStrategy.DEFAULT_HISTORY_SIZE;
+    private static WireFormat wireFormat = WireFormat.TEXT;
+    // Per-sink lanes when several --output arguments are given
+    private static final int OUTPUT_LANE_CAPACITY = 1 << 16;
+    private static final long OUTPUT_METRICS_INTERVAL_SECONDS = 10;
+    // One task per block of patients instead of one per patient and signal
+    private static boolean blockScheduling = false;
+    private static final int SCHEDULER_BLOCK_SIZE = 1024;
+    // Virtual time: simulated per real time, 0 = as fast as possible; null = wall clock
+    private static Double speed = null;
+    private static long durationMillis = Long.MAX_VALUE;
+
+    private static final List<String> scenarioArgs = new ArrayList<>();
+    private static double incidentRate = 0;
+    private static long episodeMillis = TimeUnit.MINUTES.toMillis(10);
+
+    private static double loadRate = 0;
+    private static int loadSteps = 10;
+    private static long loadStepMillis = TimeUnit.SECONDS.toMillis(10);
+
+    private static volatile PatientCensus census;
+    private static int controlPort = -1;
+
+    // This process generates partition partitionIndex of partitionCount, numbered from 1
+    private static int partitionIndex = 1;
+    private static int partitionCount = 1;
+    private static boolean seeded = false;
+    // Master seed of partitioned runs without --seed, so that the partitions agree
+    private static final long PARTITION_SEED = 0;
+
+    // A recorded trace to play back instead of generating data
+    private static String replayPath;
+    private static boolean replayRebase = false;
 
     public static void main(String[] args) throws IOException {
 
         parseArguments(args);
+        if (loadRate > 0) {
+            runLoad();
+            return;
+        }
+        if (speed != null) {
+            blockScheduling = true;
+        }
+
+        List<Integer> patientIds = partitionPatientIds(patientCount, partitionIndex, partitionCount);
+        scheduler = Executors.newScheduledThreadPool(
+                blockScheduling ? Runtime.getRuntime().availableProcessors() : Math.max(1, patientIds.size() * 4));
+        if (outputStrategy instanceof CompositeOutputStrategy) {
+            CompositeOutputStrategy composite = (CompositeOutputStrategy) outputStrategy;
+            scheduler.scheduleAtFixedRate(() -> System.err.print(composite.formatMetrics()),
+                    OUTPUT_METRICS_INTERVAL_SECONDS, OUTPUT_METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
 
-        scheduler = Executors.newScheduledThreadPool(patientCount * 4);
+        if (incidentRate > 0 || !scenarioArgs.isEmpty()) {
+            outputStrategy = createScenarioStrategy(outputStrategy, System.currentTimeMillis());
+        }
+        if (replayPath != null) {
+            runReplay();
+        }
 
-        List<Integer> patientIds = initializePatientIds(patientCount);
-        Collections.shuffle(patientIds); // Randomize the order of patient IDs
+        Collections.shuffle(patientIds, random); // Randomize the order of patient IDs
 
-        scheduleTasksForPatients(patientIds);
+        if (speed != null) {
+            runInVirtualTime(patientIds);
+        } else if (blockScheduling) {
+            PatientBlockScheduler blocks = createBlockScheduler(patientIds, SimulationClock.SYSTEM);
+            census = blocks;
+            startControlServer();
+            blocks.start(scheduler, outputStrategy);
+        } else {
+            scheduleTasksForPatients(patientIds);
+            startControlServer();
+        }
+    }
+
+    /**
+     * Admits a patient to the running simulation; its signals start after their usual
+     * initial delay.
+     *
+     * @param patientId the patient; any positive id, not only those up to the patient count
+     * @return {@code false} if the patient is already admitted
+     * @throws IllegalStateException if the simulation has not started
+     */
+    public static boolean admitPatient(int patientId) {
+        return requireCensus().admit(patientId);
+    }
+
+    /**
+     * Discharges a patient from the running simulation: its signals stop and the
+     * generators release its state.
+     *
+     * @param patientId the patient
+     * @return {@code false} if the patient is not admitted
+     * @throws IllegalStateException if the simulation has not started
+     */
+    public static boolean dischargePatient(int patientId) {
+        return requireCensus().discharge(patientId);
+    }
+
+    private static PatientCensus requireCensus() {
+        PatientCensus current = census;
+        if (current == null) {
+            throw new IllegalStateException("The simulation has not started");
+        }
+        return current;
+    }
+
+    // Opens the --control-port socket for the census, if one was given
+    private static void startControlServer() {
+        if (controlPort < 0) {
+            return;
+        }
+        try {
+            PatientControlServer server = new PatientControlServer(controlPort, census);
+            System.out.println("Patient control on port: " + server.getPort());
+        } catch (IOException e) {
+            System.err.println("Error: Cannot open control port " + controlPort + ": " + e.getMessage());
+        }
     }
 
 
@@ -62,6 +196,29 @@ public class HealthDataSimulator {
  *   {@code file:<path>}: Output to a file located at the specified path.
  *   {@code websocket:<port>}: Output via WebSocket on the specified port.
  *   {@code tcp:<port>}: Output via TCP socket on the specified port.
+ *   {@code tcp-push:<host>:<port>}: Push to a TCP aggregator, e.g. a listening {@code TcpDataReader}.
+ *   {@code --output} may be repeated; every sink then gets its own queue and thread.
+ *   {@code --rotate-size <bytes>}, {@code --rotate-interval <seconds>}: Rotate file output into segments.
+ *   {@code --compress-segments}: Gzip closed file output segments.
+ *   {@code --websocket-batch <ms>}: Collect WebSocket samples over this interval into one frame (default 0, per sample).
+ *   {@code --websocket-deflate}: Offer permessage-deflate compression to WebSocket clients.
+ *   {@code --websocket-history <samples>}: Samples kept for WebSocket clients that resume (default 500000, 0 for none).
+ *   {@code --wire-format <text|binary>}: Encoding of TCP and WebSocket output.
+ *   {@code --scheduler <task|block>}: One scheduled task per patient and signal, or one per block of patients.
+ *   {@code --speed <factor|max>}: Generate in virtual time at a multiple of real time, or as fast as possible.
+ *   {@code --duration <seconds>}: Simulated time to generate in virtual time before exiting.
+ *   {@code --seed <number>}: Master seed of the generated values, for reproducible runs.
+ *   {@code --ecg-rate <hz>}: Generate the ECG at this sample rate from beat templates, in 50 ms blocks.
+ *   {@code --scenario <type>:<patient>:<start>[:<duration>]}: Script a clinical episode; may be repeated.
+ *   {@code --incident-rate <per patient-hour>}: Inject random clinical episodes at this rate.
+ *   {@code --episode-length <seconds>}: Duration of episodes without one of their own, the default is 600.
+ *   {@code --load <samples per second>}: Load mode: send probe samples at rising rates up to this one and
+ *     report the throughput each output sustains; {@code DataReceiver --latency-probe} reports their latency.
+ *   {@code --load-steps <n>}, {@code --load-step-duration <seconds>}: The rate steps of load mode.
+ *   {@code --control-port <port>}: Accept admit and discharge commands on this loopback port.
+ *   {@code --partition <k>/<n>}: Generate only the k-th of n equal ranges of patient ids.
+ *   {@code --replay <path>}: Play back a file output directory or binary frame capture at {@code --speed},
+ *     real time by default; {@code --replay-rebase} shifts its timestamps to start now.
  *     
  * This class initializes the patients, shuffles their IDs, and schedules tasks to simulate health data generation 
  * using the specified output type. It requires the command line arguments to configure patient count and output 
@@ -72,6 +229,7 @@ public class HealthDataSimulator {
  * @return nothing (void method).
  */
     private static void parseArguments(String[] args) throws IOException {
+        List<String> outputArgs = new ArrayList<>();
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
                 case "-h":
@@ -90,37 +248,197 @@ public class HealthDataSimulator {
                     break;
                 case "--output":
                     if (i + 1 < args.length) {
-                        String outputArg = args[++i];
-                        if (outputArg.equals("console")) {
-                            outputStrategy = new ConsoleOutputStrategy();
-                        } else if (outputArg.startsWith("file:")) {
-                            String baseDirectory = outputArg.substring(5);
-                            Path outputPath = Paths.get(baseDirectory);
-                            if (!Files.exists(outputPath)) {
-                                Files.createDirectories(outputPath);
-                            }
-                            outputStrategy = new FileOutputStrategy(baseDirectory);
-                        } else if (outputArg.startsWith("websocket:")) {
-                            try {
-                                int port = Integer.parseInt(outputArg.substring(10));
-                                // Initialize your WebSocket output strategy here
-                                outputStrategy = new WebSocketOutputStrategy(port);
-                                System.out.println("WebSocket output will be on port: " + port);
-                            } catch (NumberFormatException e) {
-                                System.err.println(
-                                        "Invalid port for WebSocket output. Please specify a valid port number.");
-                            }
-                        } else if (outputArg.startsWith("tcp:")) {
-                            try {
-                                int port = Integer.parseInt(outputArg.substring(4));
-                                // Initialize your TCP socket output strategy here
-                                outputStrategy = new TcpOutputStrategy(port);
-                                System.out.println("TCP socket output will be on port: " + port);
-                            } catch (NumberFormatException e) {
-                                System.err.println("Invalid port for TCP output. Please specify a valid port number.");
-                            }
+                        outputArgs.add(args[++i]);
+                    }
+                    break;
+                case "--rotate-size":
+                    if (i + 1 < args.length) {
+                        try {
+                            rotateBytes = Long.parseLong(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid segment size. Segments will not rotate by size.");
+                        }
+                    }
+                    break;
+                case "--rotate-interval":
+                    if (i + 1 < args.length) {
+                        try {
+                            rotateMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid rotation interval. Segments will not rotate by time.");
+                        }
+                    }
+                    break;
+                case "--compress-segments":
+                    compressSegments = true;
+                    break;
+                case "--websocket-batch":
+                    if (i + 1 < args.length) {
+                        try {
+                            websocketBatchMillis = Long.parseLong(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid WebSocket batch interval. Using default value: "
+                                    + websocketBatchMillis);
+                        }
+                    }
+                    break;
+                case "--websocket-deflate":
+                    websocketDeflate = true;
+                    break;
+                case "--websocket-history":
+                    if (i + 1 < args.length) {
+                        try {
+                            websocketHistory = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid WebSocket history size. Using default value: "
+                                    + websocketHistory);
+                        }
+                        if (websocketHistory < 0) {
+                            System.err.println("Error: WebSocket history size must not be negative. Using 0.");
+                            websocketHistory = 0;
+                        }
+                    }
+                    break;
+                case "--wire-format":
+                    if (i + 1 < args.length) {
+                        try {
+                            wireFormat = WireFormat.valueOf(args[++i].toUpperCase());
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Error: Unknown wire format. Using default value: " + wireFormat);
+                        }
+                    }
+                    break;
+                case "--scheduler":
+                    if (i + 1 < args.length) {
+                        String mode = args[++i];
+                        if (mode.equals("block") || mode.equals("task")) {
+                            blockScheduling = mode.equals("block");
                         } else {
-                            System.err.println("Unknown output type. Using default (console).");
+                            System.err.println("Error: Unknown scheduler. Using default value: task");
+                        }
+                    }
+                    break;
+                case "--speed":
+                    if (i + 1 < args.length) {
+                        String factor = args[++i];
+                        try {
+                            speed = factor.equals("max") ? 0 : Double.parseDouble(factor);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid speed. Running in real time.");
+                        }
+                    }
+                    break;
+                case "--duration":
+                    if (i + 1 < args.length) {
+                        try {
+                            durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid duration. Running until stopped.");
+                        }
+                    }
+                    break;
+                case "--seed":
+                    if (i + 1 < args.length) {
+                        try {
+                            long seed = Long.parseLong(args[++i]);
+                            randomStreams = new RandomStreams(seed);
+                            random = new Random(seed);
+                            seeded = true;
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid seed. Using a random seed.");
+                        }
+                    }
+                    break;
+                case "--ecg-rate":
+                    if (i + 1 < args.length) {
+                        try {
+                            ecgRateHz = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid ECG rate. Generating one ECG sample per second.");
+                        }
+                    }
+                    break;
+                case "--scenario":
+                    if (i + 1 < args.length) {
+                        scenarioArgs.add(args[++i]);
+                    }
+                    break;
+                case "--incident-rate":
+                    if (i + 1 < args.length) {
+                        try {
+                            incidentRate = Double.parseDouble(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid incident rate. Injecting no random episodes.");
+                        }
+                    }
+                    break;
+                case "--load":
+                    if (i + 1 < args.length) {
+                        try {
+                            loadRate = Double.parseDouble(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid load rate. Running the normal simulation.");
+                        }
+                    }
+                    break;
+                case "--load-steps":
+                    if (i + 1 < args.length) {
+                        try {
+                            loadSteps = Math.max(1, Integer.parseInt(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid number of load steps. Using 10.");
+                        }
+                    }
+                    break;
+                case "--load-step-duration":
+                    if (i + 1 < args.length) {
+                        try {
+                            loadStepMillis = TimeUnit.SECONDS.toMillis(Math.max(1, Long.parseLong(args[++i])));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid load step duration. Using 10 seconds.");
+                        }
+                    }
+                    break;
+                case "--control-port":
+                    if (i + 1 < args.length) {
+                        try {
+                            controlPort = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid control port. Running without control socket.");
+                        }
+                    }
+                    break;
+                case "--replay":
+                    if (i + 1 < args.length) {
+                        replayPath = args[++i];
+                    }
+                    break;
+                case "--replay-rebase":
+                    replayRebase = true;
+                    break;
+                case "--partition":
+                    if (i + 1 < args.length) {
+                        String[] partition = args[++i].split("/");
+                        try {
+                            int index = Integer.parseInt(partition[0]);
+                            int count = Integer.parseInt(partition[1]);
+                            if (index < 1 || index > count) {
+                                throw new NumberFormatException();
+                            }
+                            partitionIndex = index;
+                            partitionCount = count;
+                        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                            System.err.println("Error: Invalid partition, expected <k>/<n> with 1 <= k <= n."
+                                    + " Generating all patients.");
+                        }
+                    }
+                    break;
+                case "--episode-length":
+                    if (i + 1 < args.length) {
+                        try {
+                            episodeMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid episode length. Using 600 seconds.");
                         }
                     }
                     break;
@@ -130,6 +448,142 @@ public class HealthDataSimulator {
                     System.exit(1);
             }
         }
+        if (partitionCount > 1 && !seeded) {
+            // Each patient's values must not depend on which process generates them
+            randomStreams = new RandomStreams(PARTITION_SEED);
+        }
+        if (loadRate > 0) {
+            // Every output gets a lane of its own, so each is measured and none holds up the senders
+            Map<String, OutputStrategy> sinks = new LinkedHashMap<>();
+            for (String outputArg : outputArgs.isEmpty() ? List.of("console") : outputArgs) {
+                sinks.put(outputArg, createOutputStrategy(outputArg));
+            }
+            outputStrategy = new CompositeOutputStrategy(sinks, OUTPUT_LANE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+        } else if (outputArgs.size() == 1) {
+            outputStrategy = createOutputStrategy(outputArgs.get(0));
+        } else if (outputArgs.size() > 1) {
+            // Dropping low priority samples keeps a slow sink from holding up the others
+            Map<String, OutputStrategy> sinks = new LinkedHashMap<>();
+            for (String outputArg : outputArgs) {
+                sinks.put(outputArg, createOutputStrategy(outputArg));
+            }
+            outputStrategy = new CompositeOutputStrategy(sinks, OUTPUT_LANE_CAPACITY, OverflowPolicy.DROP_LOW_PRIORITY);
+        }
+    }
+
+    /**
+     * Creates the output strategy described by an {@code --output} argument.
+     *
+     * @param outputArg the output type, e.g. {@code console} or {@code file:<path>}
+     * @return the output strategy; console output if the type is invalid
+     * @throws IOException if the output directory cannot be created
+     */
+    private static OutputStrategy createOutputStrategy(String outputArg) throws IOException {
+        if (outputArg.equals("console")) {
+            return new ConsoleOutputStrategy();
+        } else if (outputArg.startsWith("file:")) {
+            String baseDirectory = outputArg.substring(5);
+            Path outputPath = Paths.get(baseDirectory);
+            if (!Files.exists(outputPath)) {
+                Files.createDirectories(outputPath);
+            }
+            return new FileOutputStrategy(baseDirectory, 1000,
+                    new SegmentPolicy(rotateBytes, rotateMillis, compressSegments));
+        } else if (outputArg.startsWith("websocket:")) {
+            try {
+                int port = Integer.parseInt(outputArg.substring(10));
+                // Initialize your WebSocket output strategy here
+                System.out.println("WebSocket output will be on port: " + port);
+                return new WebSocketOutputStrategy(port, websocketBatchMillis, websocketDeflate, wireFormat,
+                        websocketHistory);
+            } catch (NumberFormatException e) {
+                System.err.println(
+                        "Invalid port for WebSocket output. Please specify a valid port number.");
+            }
+        } else if (outputArg.startsWith("tcp-push:")) {
+            String address = outputArg.substring(9);
+            int colon = address.lastIndexOf(':');
+            try {
+                InetSocketAddress aggregator = new InetSocketAddress(address.substring(0, colon),
+                        Integer.parseInt(address.substring(colon + 1)));
+                return new TcpOutputStrategy(aggregator, 1 << 20, TcpOutputStrategy.SlowClientPolicy.DROP, wireFormat);
+            } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+                System.err.println("Invalid TCP aggregator. Please specify it as tcp-push:<host>:<port>.");
+            }
+        } else if (outputArg.startsWith("tcp:")) {
+            try {
+                int port = Integer.parseInt(outputArg.substring(4));
+                // Initialize your TCP socket output strategy here
+                System.out.println("TCP socket output will be on port: " + port);
+                return new TcpOutputStrategy(port, 1 << 20, TcpOutputStrategy.SlowClientPolicy.DROP, wireFormat);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port for TCP output. Please specify a valid port number.");
+            }
+        } else {
+            System.err.println("Unknown output type. Using default (console).");
+        }
+        return new ConsoleOutputStrategy();
+    }
+
+    /**
+     * Runs the load test on the outputs, prints the report and exits.
+     */
+    private static void runLoad() {
+        CompositeOutputStrategy composite = (CompositeOutputStrategy) outputStrategy;
+        LoadGenerator load = new LoadGenerator(patientCount, loadRate, loadSteps, loadStepMillis,
+                Runtime.getRuntime().availableProcessors());
+        try {
+            List<LoadGenerator.StepResult> results = load.run(composite, null);
+            System.out.print(LoadGenerator.formatReport(results, composite.getNames()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        composite.close();
+        System.exit(0);
+    }
+
+    /**
+     * Replays the {@code --replay} trace to the outputs, prints a summary and exits.
+     */
+    private static void runReplay() {
+        TraceReplayer replayer = new TraceReplayer(Paths.get(replayPath), speed != null ? speed : 1, replayRebase);
+        long start = System.currentTimeMillis();
+        try {
+            replayer.replay(outputStrategy);
+        } catch (IOException e) {
+            System.err.println("Error: Cannot replay " + replayPath + ": " + e.getMessage());
+        }
+        outputStrategy.close();
+        System.out.println("Replayed " + replayer.getReplayedSamples() + " samples spanning "
+                + replayer.getTraceSpanMillis() / 1000.0 + " s in " + (System.currentTimeMillis() - start) / 1000.0
+                + " s (skipped " + replayer.getSkippedSamples() + ", max lag " + replayer.getMaxLagMillis() + " ms)");
+        System.exit(0);
+    }
+
+    /**
+     * Wraps the output in a {@link ScenarioOutputStrategy} with the {@code --scenario}
+     * episodes and {@code --incident-rate}; invalid episodes are reported and skipped.
+     * Episodes change the samples before they reach any of the outputs.
+     *
+     * @param output       the output receiving the samples
+     * @param originMillis the start of the simulation, to which episode starts refer
+     */
+    private static OutputStrategy createScenarioStrategy(OutputStrategy output, long originMillis) {
+        List<ScenarioOutputStrategy.Episode> episodes = new ArrayList<>();
+        for (String scenarioArg : scenarioArgs) {
+            try {
+                episodes.add(ScenarioOutputStrategy.Episode.parse(scenarioArg, episodeMillis));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: Invalid scenario '" + scenarioArg + "': " + e.getMessage());
+            }
+        }
+        try {
+            return new ScenarioOutputStrategy(output, patientCount, originMillis, episodes, incidentRate,
+                    episodeMillis, randomStreams);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage() + ". Injecting no episodes.");
+            return output;
+        }
     }
 
     /**
@@ -150,7 +604,44 @@ public class HealthDataSimulator {
         System.out.println("                             'console' for console output,");
         System.out.println("                             'file:<directory>' for file output,");
         System.out.println("                             'websocket:<port>' for WebSocket output,");
-        System.out.println("                             'tcp:<port>' for TCP socket output.");
+        System.out.println("                             'tcp:<port>' for TCP socket output,");
+        System.out.println("                             'tcp-push:<host>:<port>' to push to a TCP aggregator.");
+        System.out.println("                           Repeat --output to write to several sinks, each on its own thread.");
+        System.out.println("  --rotate-size <bytes>    Start a new file output segment after this many bytes.");
+        System.out.println("  --rotate-interval <sec>  Start a new file output segment after this many seconds.");
+        System.out.println("  --compress-segments      Gzip closed file output segments.");
+        System.out.println("  --websocket-batch <ms>   Send WebSocket samples in one frame per interval (default: 0 = per sample).");
+        System.out.println("  --websocket-deflate      Offer permessage-deflate compression to WebSocket clients.");
+        System.out.println("  --websocket-history <n>  Samples kept for WebSocket clients that resume (default: 500000, 0 = none).");
+        System.out.println("  --wire-format <format>   'text' (default) or 'binary' frames for TCP and WebSocket output.");
+        System.out.println("  --scheduler <mode>       'task' (default): a task per patient and signal;");
+        System.out.println("                           'block': a task per 1024 patients on one thread per core.");
+        System.out.println("  --speed <factor>         Run in virtual time at this multiple of real time; 'max' for as fast");
+        System.out.println("                           as the outputs accept. Implies '--scheduler block'.");
+        System.out.println("  --duration <seconds>     Simulated time to generate with --speed, then exit (default: unlimited).");
+        System.out.println("  --seed <number>          Master seed; the same seed generates the same values (default: random).");
+        System.out.println("  --ecg-rate <hz>          Generate the ECG at this sample rate, e.g. 250, in 50 ms blocks");
+        System.out.println("                           (default: one sample per second).");
+        System.out.println("  --scenario <spec>        Script an episode as <type>:<patient>:<start sec>[:<duration sec>];");
+        System.out.println("                           types: hypotension, desaturation, tachycardia,");
+        System.out.println("                           hypotensive_hypoxemia, ecg_spikes. May be repeated.");
+        System.out.println("  --incident-rate <rate>   Inject random episodes at this rate per patient-hour (default: 0).");
+        System.out.println("  --episode-length <sec>   Duration of random and unspecified episodes (default: 600).");
+        System.out.println("  --load <rate>            Load mode: send LoadProbe samples in steps up to this many per second");
+        System.out.println("                           and report the throughput and saturation point of each output.");
+        System.out.println("                           Run the receiver with 'Main Receiver --source <source> --latency-probe'");
+        System.out.println("                           to report the ingest latency on the receiving side.");
+        System.out.println("  --load-steps <n>         Number of rate steps in load mode (default: 10).");
+        System.out.println("  --load-step-duration <sec>  Duration of each load step (default: 10).");
+        System.out.println("  --control-port <port>    Accept 'admit <id>', 'discharge <id>' (or <first>-<last>), 'count'");
+        System.out.println("                           and 'list' commands, one per line, on this loopback port.");
+        System.out.println("  --partition <k>/<n>      Generate only the k-th of n equal ranges of the patient ids, so that");
+        System.out.println("                           n processes share the patients. Partitions use seed 0 unless --seed");
+        System.out.println("                           is given; all processes must get the same --seed and --patient-count.");
+        System.out.println("  --replay <path>          Instead of generating, replay a file output directory, a .bin capture");
+        System.out.println("                           or a directory of them, merged by timestamp, at --speed (default: 1,");
+        System.out.println("                           'max' for as fast as possible) to the outputs.");
+        System.out.println("  --replay-rebase          Shift the replayed timestamps so that the trace starts now.");
         System.out.println("Example:");
         System.out.println("  java HealthDataSimulator --patient-count 100 --output websocket:8080");
         System.out.println(
@@ -158,14 +649,22 @@ public class HealthDataSimulator {
     }
 
     /**
- * Initializes a list of patient IDs from 1 to the specified patient count.
- *
- * @param patientCount The number of patient IDs to generate. It must be a positive integer.
- */
-
-    private static List<Integer> initializePatientIds(int patientCount) {
+     * Returns the patient ids of one partition. The ids 1 to {@code patientCount} are
+     * split into {@code partitions} contiguous ranges whose sizes differ by at most one.
+     *
+     * @param patientCount the number of patients of all partitions
+     * @param partition    the partition, from 1 to {@code partitions}
+     * @param partitions   the number of partitions; 1 for all patients
+     * @return the ids of the partition, ascending
+     */
+    public static List<Integer> partitionPatientIds(int patientCount, int partition, int partitions) {
+        if (partition < 1 || partition > partitions) {
+            throw new IllegalArgumentException("Partition must be between 1 and " + partitions);
+        }
+        int first = (int) ((long) patientCount * (partition - 1) / partitions) + 1;
+        int last = (int) ((long) patientCount * partition / partitions);
         List<Integer> patientIds = new ArrayList<>();
-        for (int i = 1; i <= patientCount; i++) {
+        for (int i = first; i <= last; i++) {
             patientIds.add(i);
         }
         return patientIds;
@@ -190,31 +689,83 @@ public class HealthDataSimulator {
  */
 
     private static void scheduleTasksForPatients(List<Integer> patientIds) {
-        ECGDataGenerator ecgDataGenerator = new ECGDataGenerator(patientCount);
-        BloodSaturationDataGenerator bloodSaturationDataGenerator = new BloodSaturationDataGenerator(patientCount);
-        BloodPressureDataGenerator bloodPressureDataGenerator = new BloodPressureDataGenerator(patientCount);
-        BloodLevelsDataGenerator bloodLevelsDataGenerator = new BloodLevelsDataGenerator(patientCount);
-        AlertGenerator alertGenerator = new AlertGenerator(patientCount);
+        SimulationClock clock = SimulationClock.SYSTEM;
+        PatientTaskScheduler tasks = new PatientTaskScheduler(scheduler, outputStrategy, random);
+        if (ecgRateHz > 0) {
+            tasks.addSignal(new HighRateECGGenerator(patientCount, ecgRateHz, clock, randomStreams),
+                    ECG_BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            tasks.addSignal(new ECGDataGenerator(patientCount, clock, randomStreams), 1, TimeUnit.SECONDS);
+        }
+        tasks.addSignal(new BloodSaturationDataGenerator(patientCount, clock, randomStreams), 1, TimeUnit.SECONDS);
+        tasks.addSignal(new BloodPressureDataGenerator(patientCount, clock, randomStreams), 1, TimeUnit.MINUTES);
+        tasks.addSignal(new BloodLevelsDataGenerator(patientCount, clock, randomStreams), 2, TimeUnit.MINUTES);
+        tasks.addSignal(new AlertGenerator(patientCount, clock, randomStreams), 20, TimeUnit.SECONDS);
 
         for (int patientId : patientIds) {
-            scheduleTask(() -> ecgDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.SECONDS);
-            scheduleTask(() -> bloodSaturationDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.SECONDS);
-            scheduleTask(() -> bloodPressureDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.MINUTES);
-            scheduleTask(() -> bloodLevelsDataGenerator.generate(patientId, outputStrategy), 2, TimeUnit.MINUTES);
-            scheduleTask(() -> alertGenerator.generate(patientId, outputStrategy), 20, TimeUnit.SECONDS);
+            tasks.admit(patientId);
         }
+        census = tasks;
+    }
+
+    private static PatientBlockScheduler createBlockScheduler(List<Integer> patientIds, SimulationClock clock) {
+        return createBlockScheduler(patientIds, patientCount, SCHEDULER_BLOCK_SIZE, clock, randomStreams, ecgRateHz);
     }
 
     /**
- * Schedules a task to be executed at a fixed rate with a randomized initial delay.
- * The task will be executed repeatedly with the specified time period between executions.
- *
- * @param task The {@code Runnable} task to be executed at fixed intervals.
- * @param period The time period between successive executions of the task.
- * @param timeUnit The time unit for the {@code period}, such as seconds or minutes.
- */
+     * Creates a block scheduler for the same signals at the same rates as
+     * {@link #scheduleTasksForPatients}, with one task per block of patients.
+     *
+     * @param patientIds   the patients to generate data for
+     * @param patientCount the highest patient id
+     * @param blockSize    the number of patients per block
+     * @param clock        the time source of the generators
+     * @param streams      source of the generated values and initial delays
+     * @param ecgRateHz    the high-rate ECG sample rate, or 0 for one ECG sample per second
+     */
+    static PatientBlockScheduler createBlockScheduler(List<Integer> patientIds, int patientCount, int blockSize,
+                                                      SimulationClock clock, RandomStreams streams, int ecgRateHz) {
+        PatientBlockScheduler blocks;
+        if (ecgRateHz > 0) {
+            // Ticks as short as an ECG block; the other periods are multiples of it
+            blocks = new PatientBlockScheduler(patientIds, blockSize, ECG_BLOCK_MILLIS, streams);
+            blocks.addSignal(new HighRateECGGenerator(patientCount, ecgRateHz, clock, streams),
+                    ECG_BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            blocks = new PatientBlockScheduler(patientIds, blockSize, 1000, streams);
+            blocks.addSignal(new ECGDataGenerator(patientCount, clock, streams), 1, TimeUnit.SECONDS);
+        }
+        blocks.addSignal(new BloodSaturationDataGenerator(patientCount, clock, streams), 1, TimeUnit.SECONDS);
+        blocks.addSignal(new BloodPressureDataGenerator(patientCount, clock, streams), 1, TimeUnit.MINUTES);
+        blocks.addSignal(new BloodLevelsDataGenerator(patientCount, clock, streams), 2, TimeUnit.MINUTES);
+        blocks.addSignal(new AlertGenerator(patientCount, clock, streams), 20, TimeUnit.SECONDS);
+        return blocks;
+    }
 
-    private static void scheduleTask(Runnable task, long period, TimeUnit timeUnit) {
-        scheduler.scheduleAtFixedRate(task, random.nextInt(5), period, timeUnit);
+    /**
+     * Generates {@code --duration} of simulated time starting now, at {@code --speed},
+     * then closes the output and exits.
+     *
+     * @param patientIds the patients to generate data for
+     */
+    private static void runInVirtualTime(List<Integer> patientIds) {
+        VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+        PatientBlockScheduler blocks = createBlockScheduler(patientIds, clock);
+        census = blocks;
+        startControlServer();
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        long start = System.currentTimeMillis();
+        long ticks = 0;
+        try {
+            ticks = blocks.runVirtual(clock, durationMillis, speed, pool, outputStrategy);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+        outputStrategy.close();
+        System.out.println("Generated " + ticks * blocks.getTickMillis() / 1000.0 + " simulated seconds in "
+                + (System.currentTimeMillis() - start) / 1000.0 + " s");
+        System.exit(0);
     }
+
 }
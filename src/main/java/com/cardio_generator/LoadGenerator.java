@@ -0,0 +1,248 @@
+package com.cardio_generator;
+
+import com.cardio_generator.outputs.AsyncOutputStrategy;
+import com.cardio_generator.outputs.CompositeOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.LatencyProbe;
+import com.data_management.SignalCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@code LoadGenerator} drives the outputs at known rates to find where the monitoring
+ * side stops keeping up. The rate rises in equal steps up to the target aggregate rate;
+ * every sample is a {@code LoadProbe} sample of one of the patients, in turn, carrying
+ * its send time so that a {@link LatencyProbe} on the receiving side can record ingest
+ * latency.
+ *
+ * Samples are sent by a number of sender threads, each sending its share of the rate in
+ * bursts paced by the elapsed time. When the output is a {@link CompositeOutputStrategy}
+ * the samples delivered and dropped by each of its sinks are measured per step; any
+ * other output counts as having delivered what the senders handed to it.
+ */
+public class LoadGenerator {
+
+    /** A step sustains its rate if the senders and every sink reach this share of it. */
+    public static final double SUSTAINED_SHARE = 0.95;
+    private static final long BURST_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final long MAX_DRAIN_MILLIS = 2000;
+
+    private final int patientCount;
+    private final double targetRate;
+    private final int steps;
+    private final long stepMillis;
+    private final int senders;
+
+    /**
+     * Measurements of one step.
+     */
+    public static final class StepResult {
+        private final double targetRate;
+        private final double sentRate;
+        private final double[] deliveredRates;
+        private final long[] droppedSamples;
+
+        StepResult(double targetRate, double sentRate, double[] deliveredRates, long[] droppedSamples) {
+            this.targetRate = targetRate;
+            this.sentRate = sentRate;
+            this.deliveredRates = deliveredRates;
+            this.droppedSamples = droppedSamples;
+        }
+
+        public double getTargetRate() {
+            return targetRate;
+        }
+
+        /**
+         * @return the samples per second the senders handed to the output
+         */
+        public double getSentRate() {
+            return sentRate;
+        }
+
+        /**
+         * @param sink the index of the sink
+         * @return the samples per second the sink accepted
+         */
+        public double getDeliveredRate(int sink) {
+            return deliveredRates[sink];
+        }
+
+        /**
+         * @param sink the index of the sink
+         * @return the samples the sink's queue dropped
+         */
+        public long getDroppedSamples(int sink) {
+            return droppedSamples[sink];
+        }
+
+        /**
+         * @param sink the index of the sink
+         * @return whether the senders and the sink kept up with the target rate, without drops
+         */
+        public boolean isSustained(int sink) {
+            return sentRate >= targetRate * SUSTAINED_SHARE
+                    && deliveredRates[sink] >= targetRate * SUSTAINED_SHARE
+                    && droppedSamples[sink] == 0;
+        }
+    }
+
+    /**
+     * @param patientCount the number of patients the samples are spread over
+     * @param targetRate   the aggregate samples per second of the last step
+     * @param steps        the number of steps; step {@code i} runs at {@code i / steps} of the target
+     * @param stepMillis   how long each step runs
+     * @param senders      the number of sender threads
+     */
+    public LoadGenerator(int patientCount, double targetRate, int steps, long stepMillis, int senders) {
+        if (patientCount <= 0 || targetRate <= 0 || steps <= 0 || stepMillis <= 0 || senders <= 0) {
+            throw new IllegalArgumentException("Patient count, rate, steps, step duration and senders must be positive");
+        }
+        this.patientCount = patientCount;
+        this.targetRate = targetRate;
+        this.steps = steps;
+        this.stepMillis = stepMillis;
+        this.senders = Math.min(senders, patientCount);
+    }
+
+    /**
+     * Runs all steps. Between steps the sinks' queues are given up to two seconds to
+     * drain, so that a backlog does not count against the next step.
+     *
+     * @param output where the samples go
+     * @param probe  a probe to reset at the start of each step and report after it, or {@code null}
+     * @return the measurements of each step
+     * @throws InterruptedException if interrupted while waiting for the senders
+     */
+    public List<StepResult> run(OutputStrategy output, LatencyProbe probe) throws InterruptedException {
+        List<AsyncOutputStrategy> lanes = output instanceof CompositeOutputStrategy
+                ? ((CompositeOutputStrategy) output).getLanes() : Collections.emptyList();
+        int sinks = Math.max(1, lanes.size());
+        List<StepResult> results = new ArrayList<>();
+        for (int step = 1; step <= steps; step++) {
+            double rate = targetRate * step / steps;
+            if (probe != null) {
+                probe.reset();
+            }
+            long[] deliveredBefore = new long[sinks];
+            long[] droppedBefore = new long[sinks];
+            for (int i = 0; i < lanes.size(); i++) {
+                deliveredBefore[i] = lanes.get(i).getDeliveredSamples();
+                droppedBefore[i] = lanes.get(i).getDroppedSamples();
+            }
+
+            long start = System.nanoTime();
+            long sent = runStep(output, rate);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            double[] deliveredRates = new double[sinks];
+            long[] dropped = new long[sinks];
+            if (lanes.isEmpty()) {
+                deliveredRates[0] = sent / seconds;
+            }
+            for (int i = 0; i < lanes.size(); i++) {
+                deliveredRates[i] = (lanes.get(i).getDeliveredSamples() - deliveredBefore[i]) / seconds;
+                dropped[i] = lanes.get(i).getDroppedSamples() - droppedBefore[i];
+            }
+            StepResult result = new StepResult(rate, sent / seconds, deliveredRates, dropped);
+            results.add(result);
+            System.out.printf("Step %d/%d: target %.0f samples/s, sent %.0f samples/s%n",
+                    step, steps, rate, result.getSentRate());
+            awaitDrained(lanes);
+            if (probe != null) {
+                System.out.println("  " + probe.formatSummary());
+            }
+        }
+        return results;
+    }
+
+    // Sends at the rate for one step and returns the number of samples sent
+    private long runStep(OutputStrategy output, double rate) throws InterruptedException {
+        AtomicLong sent = new AtomicLong();
+        // All senders pace from the same start, so starting the threads costs no samples
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(stepMillis);
+        Thread[] threads = new Thread[senders];
+        for (int s = 0; s < senders; s++) {
+            // Patients of this sender: every senders-th id starting at s + 1
+            int first = s + 1;
+            double senderRate = rate / senders;
+            threads[s] = new Thread(() -> sent.addAndGet(send(output, first, senderRate, start, deadline)),
+                    "load-sender-" + s);
+            threads[s].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return sent.get();
+    }
+
+    private long send(OutputStrategy output, int firstPatient, double rate, long start, long deadline) {
+        long sent = 0;
+        int patientId = firstPatient;
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            long due = (long) ((now - start) / 1e9 * rate) - sent;
+            if (due <= 0) {
+                LockSupport.parkNanos(BURST_NANOS);
+                continue;
+            }
+            // One clock reading per burst; a burst covers well under a millisecond
+            long sendMicros = LatencyProbe.nowMicros();
+            long sendMillis = sendMicros / 1000;
+            for (long i = 0; i < due; i++) {
+                output.output(patientId, sendMillis, SignalCode.LOAD_PROBE, sendMicros);
+                patientId += senders;
+                if (patientId > patientCount) {
+                    patientId = firstPatient;
+                }
+            }
+            sent += due;
+        }
+        return sent;
+    }
+
+    private static void awaitDrained(List<AsyncOutputStrategy> lanes) {
+        long deadline = System.currentTimeMillis() + MAX_DRAIN_MILLIS;
+        for (AsyncOutputStrategy lane : lanes) {
+            while (lane.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+    }
+
+    /**
+     * Describes the results per sink: the rate of every step, the highest rate sustained
+     * and the target rate of the first step that was not sustained.
+     *
+     * @param results the results of {@link #run}
+     * @param names   the names of the sinks, in lane order
+     * @return the report, several lines per sink
+     */
+    public static String formatReport(List<StepResult> results, List<String> names) {
+        StringBuilder out = new StringBuilder();
+        for (int sink = 0; sink < names.size(); sink++) {
+            out.append(names.get(sink)).append(':').append(System.lineSeparator());
+            double sustained = 0;
+            StepResult saturation = null;
+            for (StepResult result : results) {
+                out.append(String.format("  target %.0f/s: delivered %.0f/s, dropped %d%s%n",
+                        result.getTargetRate(), result.getDeliveredRate(sink), result.getDroppedSamples(sink),
+                        result.isSustained(sink) ? "" : " (not sustained)"));
+                if (result.isSustained(sink)) {
+                    sustained = Math.max(sustained, result.getDeliveredRate(sink));
+                } else if (saturation == null) {
+                    saturation = result;
+                }
+            }
+            out.append(String.format("  sustained throughput %.0f samples/s, saturation point %s%n", sustained,
+                    saturation == null ? "not reached" : String.format("%.0f samples/s", saturation.getTargetRate())));
+        }
+        return out.toString();
+    }
+}
@@ -1,14 +1,18 @@
 package com.cardio_generator;
 
+import com.data_management.DataReceiver;
 import com.data_management.DataStorage;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class Main {
     public static void main(String[] args) {
         try {
             if (args.length > 0 && args[0].equalsIgnoreCase("DataStorage")) {
                 DataStorage.main(new String[]{});
+            } else if (args.length > 0 && args[0].equalsIgnoreCase("Receiver")) {
+                DataReceiver.main(Arrays.copyOfRange(args, 1, args.length));
             } else {
                 HealthDataSimulator.main(new String[]{});
             }
@@ -0,0 +1,474 @@
+package com.cardio_generator;
+
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.OutputStrategy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code PatientBlockScheduler} runs the generators of many patients with one scheduled
+ * task per block of patients instead of one task per patient and signal.
+ *
+ * Time is divided into ticks. On every tick the task of a block walks its patients and
+ * calls each generator whose period is due for that patient, so 100,000 patients need
+ * about a hundred tasks on a pool the size of the machine. The blocks start at evenly
+ * spread offsets within the tick, which spreads the generated samples over the tick
+ * rather than sending them in one burst.
+ *
+ * As with one task per signal, each signal of a patient starts after a random delay of
+ * 0 to 4 of its period's time unit. All samples of a patient are generated by the same
+ * block, one after the other, so generators never see a patient on two threads.
+ *
+ * Instead of following the wall clock, {@link #runVirtual} moves a {@link VirtualClock}
+ * from tick to tick, either as fast as the generators and outputs allow or at a
+ * multiple of real time. Every signal keeps its period in simulated time.
+ *
+ * Patients can be admitted and discharged while the blocks run. A new patient joins the
+ * block with the fewest patients, or a new block once all are full; a block's patient
+ * list is replaced rather than changed, so the blocks never wait for an admission.
+ */
+public class PatientBlockScheduler implements PatientCensus {
+
+    private final int blockSize;
+    private final long tickMillis;
+    private final RandomStreams streams;
+    private final List<Signal> signals = new ArrayList<>();
+    private final List<Block> blocks = new CopyOnWriteArrayList<>();
+    // The block of each admitted patient; guarded by this scheduler
+    private final Map<Integer, Block> blockOf = new HashMap<>();
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+    // The most recent tick run, the base of an admitted patient's start ticks
+    private volatile int currentTick = -1;
+    // Set by start, for scheduling blocks added later; guarded by this scheduler
+    private ScheduledExecutorService scheduler;
+    // The output of the running or last run, told about discharges
+    private volatile OutputStrategy output;
+    private long liveStartNanos;
+
+    private final AtomicLong blockRuns = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    /**
+     * @param patientIds the patients to generate data for from the start
+     * @param blockSize  the number of patients handled by one task
+     * @param tickMillis the scheduling resolution; every period must be a multiple of it
+     * @param streams    source of the initial delays, drawn per patient and signal
+     */
+    public PatientBlockScheduler(List<Integer> patientIds, int blockSize, long tickMillis, RandomStreams streams) {
+        if (blockSize <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("Block size and tick must be positive");
+        }
+        this.blockSize = blockSize;
+        this.tickMillis = tickMillis;
+        this.streams = streams;
+        // The initial patients fill the blocks in order
+        for (int from = 0; from < patientIds.size(); from += blockSize) {
+            List<Integer> slice = patientIds.subList(from, Math.min(patientIds.size(), from + blockSize));
+            int[] ids = new int[slice.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = slice.get(i);
+            }
+            Block block = new Block(new Members(ids, new int[ids.length], new int[0][]));
+            blocks.add(block);
+            for (int id : ids) {
+                if (blockOf.put(id, block) != null) {
+                    throw new IllegalArgumentException("Patient " + id + " is listed twice");
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a generator to run for every patient at a fixed period. Signals are added
+     * before the blocks start.
+     *
+     * @param generator the generator
+     * @param period    the time between two samples of a patient
+     * @param timeUnit  the unit of {@code period}, also the unit of the initial delay
+     * @throws IllegalArgumentException if the period is not a multiple of the tick
+     */
+    public synchronized void addSignal(PatientDataGenerator generator, long period, TimeUnit timeUnit) {
+        long periodMillis = timeUnit.toMillis(period);
+        if (periodMillis < tickMillis || periodMillis % tickMillis != 0) {
+            throw new IllegalArgumentException("Period of " + periodMillis + " ms is not a multiple of the "
+                    + tickMillis + " ms tick");
+        }
+        long unitTicks = Math.max(1, timeUnit.toMillis(1) / tickMillis);
+        Signal signal = new Signal(generator, (int) (periodMillis / tickMillis), "start-" + signals.size(), unitTicks);
+        signals.add(signal);
+        for (Block block : blocks) {
+            synchronized (block) {
+                block.members = block.members.withSignal(signal);
+            }
+        }
+    }
+
+    /**
+     * Admits a patient; the patient's signals start after their initial delay, counted
+     * from the next tick.
+     */
+    @Override
+    public synchronized boolean admit(int patientId) {
+        if (patientId <= 0) {
+            throw new IllegalArgumentException("Patient ids must be positive");
+        }
+        if (blockOf.containsKey(patientId)) {
+            return false;
+        }
+        Block target = null;
+        for (Block block : blocks) {
+            int size = block.members.patientIds.length;
+            if (size < blockSize && (target == null || size < target.members.patientIds.length)) {
+                target = block;
+            }
+        }
+        if (target == null) {
+            target = new Block(new Members(new int[0], new int[0], new int[signals.size()][0]));
+            blocks.add(target);
+            if (scheduler != null) {
+                schedule(target);
+            }
+        }
+        synchronized (target) {
+            target.members = target.members.with(patientId, currentTick + 1, signals);
+        }
+        blockOf.put(patientId, target);
+        return true;
+    }
+
+    /**
+     * Discharges a patient. Once this returns no generator is called for the patient
+     * any more, and every generator and the output strategy have released the
+     * patient's state.
+     */
+    @Override
+    public synchronized boolean discharge(int patientId) {
+        Block block = blockOf.remove(patientId);
+        if (block == null) {
+            return false;
+        }
+        // Waits for a tick of the block in progress
+        synchronized (block) {
+            block.members = block.members.without(patientId);
+            for (Signal signal : signals) {
+                signal.generator.discharge(patientId);
+            }
+            if (output != null) {
+                output.discharge(patientId);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized List<Integer> getPatientIds() {
+        return new ArrayList<>(blockOf.keySet());
+    }
+
+    /**
+     * Schedules one task per block of patients; blocks added for later admissions are
+     * scheduled as they are created.
+     *
+     * @param scheduler      the pool running the tasks
+     * @param outputStrategy where the generators send their samples
+     */
+    public synchronized void start(ScheduledExecutorService scheduler, OutputStrategy outputStrategy) {
+        this.scheduler = scheduler;
+        this.output = outputStrategy;
+        this.liveStartNanos = System.nanoTime();
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int count = blocks.size();
+        for (int block = 0; block < count; block++) {
+            long phaseNanos = tickNanos * block / count;
+            Block task = blocks.get(block);
+            task.startLive(liveStartNanos + phaseNanos, 0);
+            tasks.add(scheduler.scheduleAtFixedRate(task, phaseNanos, tickNanos, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    // Schedules a block created after start, in step with the others from the next tick
+    private void schedule(Block block) {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        long now = System.nanoTime();
+        int firstTick = (int) ((now - liveStartNanos) / tickNanos) + 1;
+        long firstTickNanos = liveStartNanos + firstTick * tickNanos + tickNanos / 2;
+        block.startLive(firstTickNanos, firstTick);
+        tasks.add(scheduler.scheduleAtFixedRate(block, firstTickNanos - now, tickNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Generates the given span of simulated time in virtual time. For every tick the
+     * clock is set to the tick's time and all blocks run on the pool; the next tick starts
+     * when they are done, so slow outputs slow the simulation down rather than being
+     * overrun.
+     *
+     * @param clock          the clock of the generators; its current time is the first tick
+     * @param durationMillis the simulated time to generate
+     * @param speed          simulated time per real time, e.g. 60 for a minute per second;
+     *                       0 or less to run as fast as possible
+     * @param pool           runs the blocks of a tick in parallel
+     * @param outputStrategy where the generators send their samples
+     * @return the number of ticks generated
+     * @throws InterruptedException if interrupted while waiting for a tick
+     */
+    public long runVirtual(VirtualClock clock, long durationMillis, double speed, ExecutorService pool,
+                           OutputStrategy outputStrategy) throws InterruptedException {
+        return runTicks(clock, durationMillis, speed, pool, outputStrategy);
+    }
+
+    /**
+     * Generates the given span of simulated time in virtual time on the calling thread,
+     * as fast as possible.
+     *
+     * @param clock          the clock of the generators; its current time is the first tick
+     * @param durationMillis the simulated time to generate
+     * @param outputStrategy where the generators send their samples
+     * @return the number of ticks generated
+     */
+    public long runVirtual(VirtualClock clock, long durationMillis, OutputStrategy outputStrategy) {
+        try {
+            return runTicks(clock, durationMillis, 0, null, outputStrategy);
+        } catch (InterruptedException e) {
+            // Not reached: only waiting for a pool or for the pace can be interrupted
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    // Runs the blocks of each tick on the pool, or on the calling thread if it is null.
+    // Ticks are numbered on from an earlier run, so periods continue across runs.
+    private long runTicks(VirtualClock clock, long durationMillis, double speed, ExecutorService pool,
+                          OutputStrategy outputStrategy) throws InterruptedException {
+        output = outputStrategy;
+        long startMillis = clock.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        int firstTick = currentTick + 1;
+        int ticks = 0;
+        for (; (long) ticks * tickMillis < durationMillis; ticks++) {
+            int tick = firstTick + ticks;
+            clock.setTimeMillis(startMillis + ticks * tickMillis);
+            currentTick = tick;
+            if (pool == null) {
+                for (Block block : blocks) {
+                    generate(block, tick, outputStrategy);
+                }
+            } else {
+                List<Callable<Void>> jobs = new ArrayList<>(blocks.size());
+                for (Block block : blocks) {
+                    jobs.add(() -> {
+                        generate(block, tick, outputStrategy);
+                        return null;
+                    });
+                }
+                pool.invokeAll(jobs);
+            }
+
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos((ticks + 1) * tickMillis) / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+        }
+        clock.setTimeMillis(startMillis + ticks * tickMillis);
+        return ticks;
+    }
+
+    // Runs the signals due at the tick for the patients of the block
+    private void generate(Block block, int tick, OutputStrategy outputStrategy) {
+        // Holding the block's lock keeps discharges out until the tick is done
+        synchronized (block) {
+            Members members = block.members;
+            // An exception would cancel the periodic task, so it ends only this tick
+            try {
+                for (int s = 0; s < members.startTicks.length; s++) {
+                    Signal signal = signals.get(s);
+                    int[] startTicks = members.startTicks[s];
+                    for (int i = 0; i < members.patientIds.length; i++) {
+                        int sinceStart = tick - startTicks[i];
+                        if (sinceStart >= 0 && sinceStart % signal.periodTicks == 0) {
+                            signal.generator.generate(members.patientIds[i], outputStrategy);
+                        }
+                    }
+                }
+                blockRuns.incrementAndGet();
+            } catch (RuntimeException e) {
+                failedRuns.incrementAndGet();
+                System.err.println("Block of patients " + Arrays.toString(
+                        Arrays.copyOf(members.patientIds, Math.min(3, members.patientIds.length)))
+                        + ".. failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cancels the block tasks; a block that is running finishes its tick.
+     */
+    public synchronized void stop() {
+        for (ScheduledFuture<?> task : tasks) {
+            task.cancel(false);
+        }
+        tasks.clear();
+        scheduler = null;
+    }
+
+    /**
+     * @return the scheduling resolution in milliseconds
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * @return the number of blocks, including those opened for later admissions
+     */
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * @return the number of completed block ticks
+     */
+    public long getBlockRuns() {
+        return blockRuns.get();
+    }
+
+    /**
+     * @return the number of block ticks ended by an exception from a generator
+     */
+    public long getFailedRuns() {
+        return failedRuns.get();
+    }
+
+    /**
+     * @return the longest time a block tick started after its planned time, in milliseconds
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    // A generator with its period and the stream of its initial delays
+    private final class Signal {
+        final PatientDataGenerator generator;
+        final int periodTicks;
+        final String stream;
+        final long unitTicks;
+
+        Signal(PatientDataGenerator generator, int periodTicks, String stream, long unitTicks) {
+            this.generator = generator;
+            this.periodTicks = periodTicks;
+            this.stream = stream;
+            this.unitTicks = unitTicks;
+        }
+
+        // 0 to 4 of the period's unit after admission, the same for every run with the seed
+        int startTick(int patientId, int admittedTick) {
+            return admittedTick + (int) (streams.forPatient(stream, patientId).nextInt(5) * unitTicks);
+        }
+    }
+
+    // The patients of a block and, per signal, each patient's first tick; never changed
+    private static final class Members {
+        final int[] patientIds;
+        final int[] admittedTicks;
+        // Indexed by signal, then like patientIds
+        final int[][] startTicks;
+
+        Members(int[] patientIds, int[] admittedTicks, int[][] startTicks) {
+            this.patientIds = patientIds;
+            this.admittedTicks = admittedTicks;
+            this.startTicks = startTicks;
+        }
+
+        Members withSignal(Signal signal) {
+            int[][] ticks = Arrays.copyOf(startTicks, startTicks.length + 1);
+            ticks[startTicks.length] = new int[patientIds.length];
+            for (int i = 0; i < patientIds.length; i++) {
+                ticks[startTicks.length][i] = signal.startTick(patientIds[i], admittedTicks[i]);
+            }
+            return new Members(patientIds, admittedTicks, ticks);
+        }
+
+        Members with(int patientId, int admittedTick, List<Signal> signals) {
+            int size = patientIds.length;
+            int[] ids = Arrays.copyOf(patientIds, size + 1);
+            ids[size] = patientId;
+            int[] admitted = Arrays.copyOf(admittedTicks, size + 1);
+            admitted[size] = admittedTick;
+            int[][] ticks = new int[startTicks.length][];
+            for (int s = 0; s < ticks.length; s++) {
+                ticks[s] = Arrays.copyOf(startTicks[s], size + 1);
+                ticks[s][size] = signals.get(s).startTick(patientId, admittedTick);
+            }
+            return new Members(ids, admitted, ticks);
+        }
+
+        Members without(int patientId) {
+            int index = 0;
+            while (patientIds[index] != patientId) {
+                index++;
+            }
+            int[][] ticks = new int[startTicks.length][];
+            for (int s = 0; s < ticks.length; s++) {
+                ticks[s] = remove(startTicks[s], index);
+            }
+            return new Members(remove(patientIds, index), remove(admittedTicks, index), ticks);
+        }
+
+        private static int[] remove(int[] values, int index) {
+            int[] result = new int[values.length - 1];
+            System.arraycopy(values, 0, result, 0, index);
+            System.arraycopy(values, index + 1, result, index, result.length - index);
+            return result;
+        }
+    }
+
+    // A block of patients; run by one thread at a time
+    private class Block implements Runnable {
+        // Replaced under the block's lock when patients join or leave
+        volatile Members members;
+        // Live scheduling, set by startLive
+        private long firstTickNanos;
+        private long tickNanos;
+        private int firstTick;
+        private int tick;
+
+        Block(Members members) {
+            this.members = members;
+        }
+
+        void startLive(long firstTickNanos, int firstTick) {
+            this.firstTickNanos = firstTickNanos;
+            this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+            this.firstTick = firstTick;
+            this.tick = firstTick;
+        }
+
+        @Override
+        public void run() {
+            long planned = firstTickNanos + (tick - firstTick) * tickNanos;
+            long lagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - planned);
+            maxLagMillis.accumulateAndGet(lagMillis, Math::max);
+            if (tick > currentTick) {
+                currentTick = tick;
+            }
+            generate(this, tick, output);
+            tick++;
+        }
+    }
+}
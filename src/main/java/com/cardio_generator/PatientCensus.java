@@ -0,0 +1,28 @@
+package com.cardio_generator;
+
+import java.util.List;
+
+/**
+ * Admits patients to and discharges them from a running simulation. An admitted
+ * patient's signals start within their usual initial delay; a discharged patient's
+ * signals stop and the generators release the patient's state.
+ */
+public interface PatientCensus {
+
+    /**
+     * @param patientId the patient to admit; any positive id
+     * @return {@code false} if the patient is already admitted
+     */
+    boolean admit(int patientId);
+
+    /**
+     * @param patientId the patient to discharge
+     * @return {@code false} if the patient is not admitted
+     */
+    boolean discharge(int patientId);
+
+    /**
+     * @return the admitted patients, in no particular order
+     */
+    List<Integer> getPatientIds();
+}
@@ -0,0 +1,158 @@
+package com.cardio_generator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * {@code PatientControlServer} lets operators and test scripts change the census of a
+ * running simulator over a socket. It listens on the loopback interface only and takes
+ * one command per line:
+ * <ul>
+ *   <li>{@code admit <id>} or {@code admit <first>-<last>}: admits the patients.</li>
+ *   <li>{@code discharge <id>} or {@code discharge <first>-<last>}: discharges them.</li>
+ *   <li>{@code count}: the number of admitted patients.</li>
+ *   <li>{@code list}: the admitted patients, sorted.</li>
+ * </ul>
+ * Every command is answered with one line starting with {@code OK} or {@code ERROR}.
+ * For a range the answer gives the number of patients whose state changed.
+ */
+public class PatientControlServer implements AutoCloseable {
+
+    private static final int MAX_RANGE = 1_000_000;
+
+    private final PatientCensus census;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+
+    /**
+     * Starts listening.
+     *
+     * @param port   the port on the loopback interface, or 0 for any free port
+     * @param census the simulation the commands apply to
+     * @throws IOException if the port cannot be bound
+     */
+    public PatientControlServer(int port, PatientCensus census) throws IOException {
+        this.census = census;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.acceptThread = new Thread(this::acceptConnections, "patient-control-" + getPort());
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread connection = new Thread(() -> serve(socket), "patient-control-client");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Error accepting control connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(
+                     new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isBlank()) {
+                    out.println(execute(line.trim()));
+                }
+            }
+        } catch (SocketException e) {
+            // Closed by the client or by close()
+        } catch (IOException e) {
+            System.err.println("Error on control connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Executes one command.
+     *
+     * @param command the command line, e.g. {@code admit 12}
+     * @return the answer line
+     */
+    public String execute(String command) {
+        String[] parts = command.split("\\s+");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "admit":
+                case "discharge":
+                    if (parts.length != 2) {
+                        return "ERROR usage: " + parts[0] + " <id> | <first>-<last>";
+                    }
+                    return changeCensus(parts[0].equalsIgnoreCase("admit"), parts[1]);
+                case "count":
+                    return "OK " + census.getPatientIds().size();
+                case "list":
+                    List<Integer> ids = census.getPatientIds();
+                    ids.sort(null);
+                    StringBuilder answer = new StringBuilder("OK");
+                    for (int id : ids) {
+                        answer.append(' ').append(id);
+                    }
+                    return answer.toString();
+                default:
+                    return "ERROR unknown command '" + parts[0] + "'";
+            }
+        } catch (IllegalArgumentException e) {
+            return "ERROR " + e.getMessage();
+        }
+    }
+
+    private String changeCensus(boolean admit, String patients) {
+        int dash = patients.indexOf('-', 1);
+        int first = Integer.parseInt(dash < 0 ? patients : patients.substring(0, dash));
+        int last = dash < 0 ? first : Integer.parseInt(patients.substring(dash + 1));
+        if (first <= 0 || last < first || last - first >= MAX_RANGE) {
+            return "ERROR invalid patient range " + patients;
+        }
+        int changed = 0;
+        for (int id = first; id <= last; id++) {
+            if (admit ? census.admit(id) : census.discharge(id)) {
+                changed++;
+            }
+        }
+        if (dash < 0 && changed == 0) {
+            return "ERROR patient " + first + (admit ? " is already admitted" : " is not admitted");
+        }
+        return "OK " + (admit ? "admitted " : "discharged ") + changed;
+    }
+
+    /**
+     * Stops accepting connections; connections already open are served until the client closes them.
+     */
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing control socket: " + e.getMessage());
+        }
+    }
+}
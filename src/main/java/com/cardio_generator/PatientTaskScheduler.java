@@ -0,0 +1,125 @@
+package com.cardio_generator;
+
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code PatientTaskScheduler} runs every signal of every patient as a scheduled task of
+ * its own, the simulator's default scheduling. Each signal starts after a random delay of
+ * 0 to 4 of its period's time unit.
+ *
+ * Patients can be admitted and discharged at any time: admission schedules the
+ * patient's tasks, discharge cancels them and has the generators and the output
+ * strategy release the patient's state.
+ */
+public class PatientTaskScheduler implements PatientCensus {
+
+    private final ScheduledExecutorService scheduler;
+    private final OutputStrategy outputStrategy;
+    private final Random random;
+    private final List<Signal> signals = new ArrayList<>();
+    private final ConcurrentHashMap<Integer, Admission> admissions = new ConcurrentHashMap<>();
+
+    /**
+     * @param scheduler      the pool running the tasks
+     * @param outputStrategy where the generators send their samples
+     * @param random         source of the initial delays
+     */
+    public PatientTaskScheduler(ScheduledExecutorService scheduler, OutputStrategy outputStrategy, Random random) {
+        this.scheduler = scheduler;
+        this.outputStrategy = outputStrategy;
+        this.random = random;
+    }
+
+    /**
+     * Adds a generator to run for every patient at a fixed period. Signals are added
+     * before patients are admitted.
+     *
+     * @param generator the generator
+     * @param period    the time between two samples of a patient
+     * @param timeUnit  the unit of {@code period}, also the unit of the initial delay
+     */
+    public synchronized void addSignal(PatientDataGenerator generator, long period, TimeUnit timeUnit) {
+        signals.add(new Signal(generator, period, timeUnit));
+    }
+
+    @Override
+    public synchronized boolean admit(int patientId) {
+        if (patientId <= 0) {
+            throw new IllegalArgumentException("Patient ids must be positive");
+        }
+        if (admissions.containsKey(patientId)) {
+            return false;
+        }
+        Admission admission = new Admission();
+        for (Signal signal : signals) {
+            Runnable task = () -> {
+                // A run that got past the cancellation waits for the lock and must not
+                // generate once discharge has released it
+                synchronized (admission) {
+                    if (admission.active) {
+                        signal.generator.generate(patientId, outputStrategy);
+                    }
+                }
+            };
+            admission.tasks.add(scheduler.scheduleAtFixedRate(task, random.nextInt(5), signal.period, signal.timeUnit));
+        }
+        admissions.put(patientId, admission);
+        return true;
+    }
+
+    /**
+     * Cancels the patient's tasks, waits for one that is running and then has the
+     * generators release the patient's state.
+     */
+    @Override
+    public synchronized boolean discharge(int patientId) {
+        Admission admission = admissions.remove(patientId);
+        if (admission == null) {
+            return false;
+        }
+        for (ScheduledFuture<?> task : admission.tasks) {
+            task.cancel(false);
+        }
+        synchronized (admission) {
+            admission.active = false;
+            for (Signal signal : signals) {
+                signal.generator.discharge(patientId);
+            }
+            outputStrategy.discharge(patientId);
+        }
+        return true;
+    }
+
+    @Override
+    public List<Integer> getPatientIds() {
+        return new ArrayList<>(admissions.keySet());
+    }
+
+    private static final class Signal {
+        final PatientDataGenerator generator;
+        final long period;
+        final TimeUnit timeUnit;
+
+        Signal(PatientDataGenerator generator, long period, TimeUnit timeUnit) {
+            this.generator = generator;
+            this.period = period;
+            this.timeUnit = timeUnit;
+        }
+    }
+
+    // The tasks of one patient; its lock is held while one of them runs
+    private static final class Admission {
+        final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+        // Cleared by discharge; guarded by the admission's lock
+        boolean active = true;
+    }
+}
@@ -0,0 +1,381 @@
+package com.cardio_generator;
+
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.BinaryFrameCodec;
+import com.data_management.SampleBatch;
+import com.data_management.SignalCode;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@code TraceReplayer} plays a recorded trace back through an {@link OutputStrategy},
+ * so that the monitoring side can be driven with the same data run after run instead of
+ * with fresh random data.
+ *
+ * A trace is a {@code FileOutputStrategy} directory or a capture of binary frames, as
+ * written by {@code BinaryFileOutputStrategy} and the bulk dataset generator: a
+ * {@code *.bin} file or a directory of them. Every source is read as a stream in its own
+ * order: the segments of a label, oldest first and then the active file, or the frames
+ * of a {@code .bin} file. The streams are merged by timestamp with a k-way merge over a
+ * heap of their next samples, so only one sample per stream is held in memory.
+ *
+ * Samples are emitted at their trace time divided by the speed, counted from the first
+ * sample; a speed of 0 or less emits them as fast as the output accepts. Timestamps are
+ * kept as recorded, or shifted so that the trace starts now.
+ */
+public class TraceReplayer {
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    // "<label>-<sequence>.txt", optionally gzip compressed, or the active "<label>.txt"
+    private static final Pattern TEXT_FILE = Pattern.compile("(.+?)(-\\d{6})?\\.txt(\\.gz)?");
+    // Waits shorter than this are not worth parking for
+    private static final long MIN_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final Path path;
+    private final double speed;
+    private final boolean rebaseTimestamps;
+
+    private long replayedSamples;
+    private long skippedSamples;
+    private long maxLagNanos;
+    private long firstTimestamp;
+    private long lastTimestamp;
+
+    /**
+     * @param path             a {@code FileOutputStrategy} directory, a {@code .bin} file or a
+     *                         directory of {@code .bin} files
+     * @param speed            trace time per real time, e.g. 10 for ten times as fast as
+     *                         recorded; 0 or less for as fast as possible
+     * @param rebaseTimestamps whether to shift the timestamps so that the trace starts
+     *                         at the time of the replay
+     */
+    public TraceReplayer(Path path, double speed, boolean rebaseTimestamps) {
+        this.path = path;
+        this.speed = speed;
+        this.rebaseTimestamps = rebaseTimestamps;
+    }
+
+    /**
+     * Replays the whole trace. The output is not closed.
+     *
+     * @param output where the samples go
+     * @return the number of samples emitted
+     * @throws IOException if the trace cannot be found or read
+     */
+    public long replay(OutputStrategy output) throws IOException {
+        List<SampleStream> streams = openStreams();
+        PriorityQueue<SampleStream> heads = new PriorityQueue<>(
+                Math.max(1, streams.size()), Comparator.comparingLong((SampleStream stream) -> stream.timestamp));
+        try {
+            for (SampleStream stream : streams) {
+                if (stream.advance()) {
+                    heads.add(stream);
+                }
+            }
+            if (heads.isEmpty()) {
+                return 0;
+            }
+            firstTimestamp = heads.peek().timestamp;
+            lastTimestamp = firstTimestamp;
+            long offset = rebaseTimestamps ? System.currentTimeMillis() - firstTimestamp : 0;
+            long startNanos = System.nanoTime();
+
+            SampleStream stream;
+            while ((stream = heads.poll()) != null) {
+                // A sample recorded slightly out of order is not held back
+                lastTimestamp = Math.max(lastTimestamp, stream.timestamp);
+                if (speed > 0) {
+                    pace(startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(lastTimestamp - firstTimestamp) / speed));
+                }
+                emit(stream, offset, output);
+                if (stream.advance()) {
+                    heads.add(stream);
+                }
+            }
+            return replayedSamples;
+        } finally {
+            for (SampleStream open : streams) {
+                skippedSamples += open.malformed;
+                open.close();
+            }
+        }
+    }
+
+    private void pace(long dueNanos) {
+        long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos >= MIN_WAIT_NANOS) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (-waitNanos > maxLagNanos) {
+            maxLagNanos = -waitNanos;
+        }
+    }
+
+    private void emit(SampleStream stream, long offset, OutputStrategy output) {
+        if (Double.isNaN(stream.value)) {
+            skippedSamples++;
+            return;
+        }
+        SignalCode signalCode = SignalCode.of(stream.label);
+        long timestamp = stream.timestamp + offset;
+        if (signalCode != SignalCode.UNKNOWN) {
+            output.output(stream.patientId, timestamp, signalCode, stream.value);
+        } else {
+            output.output(stream.patientId, timestamp, stream.label, Double.toString(stream.value));
+        }
+        replayedSamples++;
+    }
+
+    // One stream per .bin file and one per label of the text files
+    private List<SampleStream> openStreams() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isRegularFile(path)) {
+            files.add(path);
+        } else if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    files.add(entry);
+                }
+            }
+        } else {
+            throw new IOException("Trace not found: " + path);
+        }
+        files.sort(null);
+
+        List<SampleStream> streams = new ArrayList<>();
+        Map<String, List<Path>> segmentsByLabel = new TreeMap<>();
+        Map<String, Path> activeByLabel = new TreeMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Matcher text = TEXT_FILE.matcher(name);
+            if (name.endsWith(".bin")) {
+                streams.add(new FrameStream(file));
+            } else if (text.matches()) {
+                if (text.group(3) == null && files.contains(file.resolveSibling(name + ".gz"))) {
+                    continue; // Compressed copy present; the original is about to be deleted
+                }
+                if (text.group(2) == null) {
+                    activeByLabel.put(text.group(1), file);
+                } else {
+                    // Zero-padded sequence numbers, so name order is segment order
+                    segmentsByLabel.computeIfAbsent(text.group(1), label -> new ArrayList<>()).add(file);
+                }
+            }
+        }
+        for (Map.Entry<String, Path> active : activeByLabel.entrySet()) {
+            segmentsByLabel.computeIfAbsent(active.getKey(), label -> new ArrayList<>()).add(active.getValue());
+        }
+        for (List<Path> segments : segmentsByLabel.values()) {
+            streams.add(new LineStream(segments));
+        }
+        if (streams.isEmpty()) {
+            throw new IOException("No trace files found in: " + path);
+        }
+        return streams;
+    }
+
+    /**
+     * @return the number of samples emitted
+     */
+    public long getReplayedSamples() {
+        return replayedSamples;
+    }
+
+    /**
+     * @return the number of lines or samples that did not hold a valid value
+     */
+    public long getSkippedSamples() {
+        return skippedSamples;
+    }
+
+    /**
+     * @return the time from the first to the last sample of the trace replayed
+     */
+    public long getTraceSpanMillis() {
+        return lastTimestamp - firstTimestamp;
+    }
+
+    /**
+     * @return the most a sample was emitted behind its time, i.e. how far the output
+     *         fell behind the requested speed; 0 when replaying as fast as possible
+     */
+    public long getMaxLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLagNanos);
+    }
+
+    // A source of samples in its own order; the current sample is in the fields
+    private abstract static class SampleStream implements Closeable {
+        int patientId;
+        long timestamp;
+        String label;
+        double value;
+        // Lines that could not be parsed at all
+        long malformed;
+
+        /**
+         * Moves to the next sample.
+         *
+         * @return {@code false} at the end of the stream
+         */
+        abstract boolean advance() throws IOException;
+    }
+
+    // The "Patient ID: .., Timestamp: .., Label: .., Data: .." lines of a label's files
+    private static final class LineStream extends SampleStream {
+        private final List<Path> files;
+        private int nextFile;
+        private BufferedReader reader;
+
+        LineStream(List<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            while (true) {
+                if (reader == null) {
+                    if (nextFile == files.size()) {
+                        return false;
+                    }
+                    reader = open(files.get(nextFile++));
+                }
+                String line = reader.readLine();
+                if (line == null) {
+                    reader.close();
+                    reader = null;
+                } else if (parse(line)) {
+                    return true;
+                }
+            }
+        }
+
+        private static BufferedReader open(Path file) throws IOException {
+            InputStream in = Files.newInputStream(file);
+            if (file.getFileName().toString().endsWith(".gz")) {
+                in = new GZIPInputStream(in, READ_BUFFER_SIZE);
+            }
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        }
+
+        // Malformed lines are counted and skipped; a blank line is not malformed
+        private boolean parse(String line) {
+            int time = line.indexOf(", Timestamp: ");
+            int label = line.indexOf(", Label: ", time);
+            int data = line.indexOf(", Data: ", label);
+            if (!line.startsWith("Patient ID: ") || time < 0 || label < 0 || data < 0) {
+                if (!line.isBlank()) {
+                    malformed++;
+                }
+                return false;
+            }
+            try {
+                patientId = Integer.parseInt(line.substring(12, time));
+                timestamp = Long.parseLong(line.substring(time + 13, label));
+            } catch (NumberFormatException e) {
+                malformed++;
+                return false;
+            }
+            this.label = line.substring(label + 9, data);
+            value = BinaryFrameCodec.toValue(line.substring(data + 8).trim());
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    // The samples of the frames of a .bin file, decoded one frame at a time
+    private static final class FrameStream extends SampleStream {
+        private final Path file;
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        // Holds a whole frame, so decoding never hands samples to a sink
+        private final SampleBatch frame = new SampleBatch(BinaryFrameCodec.MAX_SAMPLES + 1);
+        private int next;
+        private boolean endOfFile;
+
+        FrameStream(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            while (next == frame.size()) {
+                if (!readFrame()) {
+                    return false;
+                }
+            }
+            patientId = frame.getPatientId(next);
+            timestamp = frame.getTimestamp(next);
+            label = frame.getRecordType(next);
+            value = frame.getMeasurementValue(next);
+            next++;
+            return true;
+        }
+
+        private boolean readFrame() throws IOException {
+            frame.clear();
+            next = 0;
+            while (true) {
+                try {
+                    if (BinaryFrameCodec.decode(buffer, frame, null) >= 0) {
+                        return true;
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid frame in " + file + ": " + e.getMessage());
+                }
+                if (endOfFile) {
+                    if (buffer.hasRemaining()) {
+                        throw new IOException("Truncated frame at the end of " + file);
+                    }
+                    return false;
+                }
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // The frame is larger than the buffer
+                    ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                endOfFile = channel.read(buffer) < 0;
+                buffer.flip();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
 
 /**
  * Generates simulated alert data for patients.
@@ -19,11 +20,30 @@ import com.cardio_generator.outputs.OutputStrategy;
 
 public class AlertGenerator implements PatientDataGenerator {
 
-    public static final Random randomGenerator = new Random();
-    private boolean[] AlertStates; // false = resolved, true = pressed
+    private final SimulationClock clock;
+    // Each patient's random stream and alert state, from admission to discharge
+    private final PatientStates<State> states;
 
     public AlertGenerator(int patientCount) {
-        AlertStates = new boolean[patientCount + 1];
+        this(patientCount, SimulationClock.SYSTEM);
+    }
+
+    /**
+     * @param patientCount the number of patients
+     * @param clock        the time source for the sample timestamps
+     */
+    public AlertGenerator(int patientCount, SimulationClock clock) {
+        this(patientCount, clock, RandomStreams.unseeded());
+    }
+
+    /**
+     * @param patientCount the expected number of patients; others are added when first generated
+     * @param clock        the time source for the sample timestamps
+     * @param streams      the source of each patient's random stream
+     */
+    public AlertGenerator(int patientCount, SimulationClock clock, RandomStreams streams) {
+        this.clock = clock;
+        this.states = new PatientStates<>(patientCount, id -> new State(streams.forPatient("alert", id)));
     }
 
 /**
@@ -42,21 +62,22 @@ public class AlertGenerator implements PatientDataGenerator {
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
-            if (AlertStates[patientId]) {
-                if (randomGenerator.nextDouble() < 0.9) { // 90% chance to resolve
-                    AlertStates[patientId] = false;
+            State state = states.get(patientId);
+            if (state.alertActive) {
+                if (state.random.nextDouble() < 0.9) { // 90% chance to resolve
+                    state.alertActive = false;
                     // Output the alert
-                    outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "resolved");
+                    outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.ALERT, 0.0);
                 }
             } else {
                 double Lambda = 0.1; // Average rate (alerts per period), adjust based on desired frequency
                 double p = -Math.expm1(-Lambda); // Probability of at least one alert in the period
-                boolean alertTriggered = randomGenerator.nextDouble() < p;
+                boolean alertTriggered = state.random.nextDouble() < p;
 
                 if (alertTriggered) {
-                    AlertStates[patientId] = true;
+                    state.alertActive = true;
                     // Output the alert
-                    outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "triggered");
+                    outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.ALERT, 1.0);
                 }
             }
         } catch (Exception e) {
@@ -64,4 +85,18 @@ public class AlertGenerator implements PatientDataGenerator {
             e.printStackTrace();
         }
     }
+
+    @Override
+    public void discharge(int patientId) {
+        states.remove(patientId);
+    }
+
+    private static final class State {
+        final SplittableRandom random;
+        boolean alertActive; // false = resolved, true = pressed
+
+        State(SplittableRandom random) {
+            this.random = random;
+        }
+    }
 }
@@ -1,45 +1,73 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
 
 public class BloodLevelsDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
-    private final double[] baselineCholesterol;
-    private final double[] baselineWhiteCells;
-    private final double[] baselineRedCells;
+    private final SimulationClock clock;
+    // Each patient's random stream and baselines, from admission to discharge
+    private final PatientStates<State> states;
 
     public BloodLevelsDataGenerator(int patientCount) {
-       
-        baselineCholesterol = new double[patientCount + 1];
-        baselineWhiteCells = new double[patientCount + 1];
-        baselineRedCells = new double[patientCount + 1];
-
-        // Generate baseline values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            baselineCholesterol[i] = 150 + random.nextDouble() * 50; // Initial random baseline
-            baselineWhiteCells[i] = 4 + random.nextDouble() * 6; // Initial random baseline
-            baselineRedCells[i] = 4.5 + random.nextDouble() * 1.5; // Initial random baseline
-        }
+        this(patientCount, SimulationClock.SYSTEM);
+    }
+
+    /**
+     * @param patientCount the number of patients
+     * @param clock        the time source for the sample timestamps
+     */
+    public BloodLevelsDataGenerator(int patientCount, SimulationClock clock) {
+        this(patientCount, clock, RandomStreams.unseeded());
+    }
+
+    /**
+     * @param patientCount the expected number of patients; others are added when first generated
+     * @param clock        the time source for the sample timestamps
+     * @param streams      the source of each patient's random stream
+     */
+    public BloodLevelsDataGenerator(int patientCount, SimulationClock clock, RandomStreams streams) {
+        this.clock = clock;
+        this.states = new PatientStates<>(patientCount, id -> new State(streams.forPatient("levels", id)));
     }
 
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
             // Generate values around the baseline for realism
-            double cholesterol = baselineCholesterol[patientId] + (random.nextDouble() - 0.5) * 10; // Small variation
-            double whiteCells = baselineWhiteCells[patientId] + (random.nextDouble() - 0.5) * 1; // Small variation
-            double redCells = baselineRedCells[patientId] + (random.nextDouble() - 0.5) * 0.2; // Small variation
+            State state = states.get(patientId);
+            double cholesterol = state.baselineCholesterol + (state.random.nextDouble() - 0.5) * 10; // Small variation
+            double whiteCells = state.baselineWhiteCells + (state.random.nextDouble() - 0.5) * 1; // Small variation
+            double redCells = state.baselineRedCells + (state.random.nextDouble() - 0.5) * 0.2; // Small variation
 
             // Output the generated values
-            outputStrategy.output(patientId, System.currentTimeMillis(), "Cholesterol", Double.toString(cholesterol));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "WhiteBloodCells",
-                    Double.toString(whiteCells));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "RedBloodCells", Double.toString(redCells));
+            outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.CHOLESTEROL, cholesterol);
+            outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.WHITE_BLOOD_CELLS, whiteCells);
+            outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.RED_BLOOD_CELLS, redCells);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood levels data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
         }
     }
+
+    @Override
+    public void discharge(int patientId) {
+        states.remove(patientId);
+    }
+
+    private static final class State {
+        final SplittableRandom random;
+        final double baselineCholesterol;
+        final double baselineWhiteCells;
+        final double baselineRedCells;
+
+        // Generate baseline values for the patient
+        State(SplittableRandom random) {
+            this.random = random;
+            baselineCholesterol = 150 + random.nextDouble() * 50; // Initial random baseline
+            baselineWhiteCells = 4 + random.nextDouble() * 6; // Initial random baseline
+            baselineRedCells = 4.5 + random.nextDouble() * 1.5; // Initial random baseline
+        }
+    }
 }
@@ -1,46 +1,74 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
 
 public class BloodPressureDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
-
-    private int[] lastSystolicValues;
-    private int[] lastDiastolicValues;
+    private final SimulationClock clock;
+    // Each patient's random stream and last values, from admission to discharge
+    private final PatientStates<State> states;
 
     public BloodPressureDataGenerator(int patientCount) {
-        lastSystolicValues = new int[patientCount + 1];
-        lastDiastolicValues = new int[patientCount + 1];
+        this(patientCount, SimulationClock.SYSTEM);
+    }
 
-        // Initialize with baseline values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastSystolicValues[i] = 110 + random.nextInt(20); // Random baseline between 110 and 130
-            lastDiastolicValues[i] = 70 + random.nextInt(15); // Random baseline between 70 and 85
-        }
+    /**
+     * @param patientCount the number of patients
+     * @param clock        the time source for the sample timestamps
+     */
+    public BloodPressureDataGenerator(int patientCount, SimulationClock clock) {
+        this(patientCount, clock, RandomStreams.unseeded());
+    }
+
+    /**
+     * @param patientCount the expected number of patients; others are added when first generated
+     * @param clock        the time source for the sample timestamps
+     * @param streams      the source of each patient's random stream
+     */
+    public BloodPressureDataGenerator(int patientCount, SimulationClock clock, RandomStreams streams) {
+        this.clock = clock;
+        this.states = new PatientStates<>(patientCount, id -> new State(streams.forPatient("pressure", id)));
     }
 
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
-            int systolicVariation = random.nextInt(5) - 2; // -2, -1, 0, 1, or 2
-            int diastolicVariation = random.nextInt(5) - 2;
-            int newSystolicValue = lastSystolicValues[patientId] + systolicVariation;
-            int newDiastolicValue = lastDiastolicValues[patientId] + diastolicVariation;
+            State state = states.get(patientId);
+            int systolicVariation = state.random.nextInt(5) - 2; // -2, -1, 0, 1, or 2
+            int diastolicVariation = state.random.nextInt(5) - 2;
+            int newSystolicValue = state.lastSystolicValue + systolicVariation;
+            int newDiastolicValue = state.lastDiastolicValue + diastolicVariation;
             // Ensure the blood pressure stays within a realistic and safe range
             newSystolicValue = Math.min(Math.max(newSystolicValue, 90), 180);
             newDiastolicValue = Math.min(Math.max(newDiastolicValue, 60), 120);
-            lastSystolicValues[patientId] = newSystolicValue;
-            lastDiastolicValues[patientId] = newDiastolicValue;
+            state.lastSystolicValue = newSystolicValue;
+            state.lastDiastolicValue = newDiastolicValue;
 
-            outputStrategy.output(patientId, System.currentTimeMillis(), "SystolicPressure",
-                    Double.toString(newSystolicValue));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "DiastolicPressure",
-                    Double.toString(newDiastolicValue));
+            outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.SYSTOLIC_PRESSURE, newSystolicValue);
+            outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.DIASTOLIC_PRESSURE, newDiastolicValue);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood pressure data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
         }
     }
+
+    @Override
+    public void discharge(int patientId) {
+        states.remove(patientId);
+    }
+
+    private static final class State {
+        final SplittableRandom random;
+        int lastSystolicValue;
+        int lastDiastolicValue;
+
+        // Initialize with baseline values for the patient
+        State(SplittableRandom random) {
+            this.random = random;
+            lastSystolicValue = 110 + random.nextInt(20); // Random baseline between 110 and 130
+            lastDiastolicValue = 70 + random.nextInt(15); // Random baseline between 70 and 85
+        }
+    }
 }
@@ -1,8 +1,9 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
 
 /**
  * {@code BloodSaturationDataGenerator} is an implementation of the {@link PatientDataGenerator} interface
@@ -14,8 +15,9 @@ import com.cardio_generator.outputs.OutputStrategy;
  */
 
 public class BloodSaturationDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
-    private int[] lastSaturationValues;
+    private final SimulationClock clock;
+    // Each patient's random stream and last value, from admission to discharge
+    private final PatientStates<State> states;
 
 
 /**
@@ -28,12 +30,25 @@ public class BloodSaturationDataGenerator implements PatientDataGenerator {
  */
 
     public BloodSaturationDataGenerator(int patientCount) {
-        lastSaturationValues = new int[patientCount + 1];
+        this(patientCount, SimulationClock.SYSTEM);
+    }
 
-        // Initialize with baseline saturation values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastSaturationValues[i] = 95 + random.nextInt(6); // Initializes with a value between 95 and 100
-        }
+    /**
+     * @param patientCount the number of patients
+     * @param clock        the time source for the sample timestamps
+     */
+    public BloodSaturationDataGenerator(int patientCount, SimulationClock clock) {
+        this(patientCount, clock, RandomStreams.unseeded());
+    }
+
+    /**
+     * @param patientCount the expected number of patients; others are added when first generated
+     * @param clock        the time source for the sample timestamps
+     * @param streams      the source of each patient's random stream
+     */
+    public BloodSaturationDataGenerator(int patientCount, SimulationClock clock, RandomStreams streams) {
+        this.clock = clock;
+        this.states = new PatientStates<>(patientCount, id -> new State(streams.forPatient("saturation", id)));
     }
 
 /**
@@ -53,17 +68,33 @@ public class BloodSaturationDataGenerator implements PatientDataGenerator {
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
             // Simulate blood saturation values
-            int variation = random.nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
-            int newSaturationValue = lastSaturationValues[patientId] + variation;
+            State state = states.get(patientId);
+            int variation = state.random.nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
+            int newSaturationValue = state.lastSaturationValue + variation;
 
             // Ensure the saturation stays within a realistic and healthy range
             newSaturationValue = Math.min(Math.max(newSaturationValue, 90), 100);
-            lastSaturationValues[patientId] = newSaturationValue;
-            outputStrategy.output(patientId, System.currentTimeMillis(), "Saturation",
-                    Double.toString(newSaturationValue) + "%");
+            state.lastSaturationValue = newSaturationValue;
+            outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.SATURATION, newSaturationValue);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood saturation data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
         }
     }
+
+    @Override
+    public void discharge(int patientId) {
+        states.remove(patientId);
+    }
+
+    private static final class State {
+        final SplittableRandom random;
+        int lastSaturationValue;
+
+        // Initialize with a baseline saturation value for the patient
+        State(SplittableRandom random) {
+            this.random = random;
+            lastSaturationValue = 95 + random.nextInt(6); // Initializes with a value between 95 and 100
+        }
+    }
 }
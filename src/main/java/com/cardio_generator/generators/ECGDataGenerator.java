@@ -1,39 +1,62 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
 
 public class ECGDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
-    private double[] lastEcgValues;
+    private final SimulationClock clock;
+    // Each patient's random stream and last value, from admission to discharge
+    private final PatientStates<State> states;
     private static final double PI = Math.PI;
 
     public ECGDataGenerator(int patientCount) {
-        lastEcgValues = new double[patientCount + 1];
-        // Initialize the last ECG value for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastEcgValues[i] = 0; // Initial ECG value can be set to 0
-        }
+        this(patientCount, SimulationClock.SYSTEM);
+    }
+
+    /**
+     * @param patientCount the number of patients
+     * @param clock        the time source for the sample timestamps
+     */
+    public ECGDataGenerator(int patientCount, SimulationClock clock) {
+        this(patientCount, clock, RandomStreams.unseeded());
+    }
+
+    /**
+     * @param patientCount the expected number of patients; others are added when first generated
+     * @param clock        the time source for the sample timestamps
+     * @param streams      the source of each patient's random stream
+     */
+    public ECGDataGenerator(int patientCount, SimulationClock clock, RandomStreams streams) {
+        this.clock = clock;
+        // Initial ECG value can be set to 0
+        this.states = new PatientStates<>(patientCount, id -> new State(streams.forPatient("ecg", id)));
     }
 
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         // TODO Check how realistic this data is and make it more realistic if necessary
         try {
-            double ecgValue = simulateEcgWaveform(patientId, lastEcgValues[patientId]);
-            outputStrategy.output(patientId, System.currentTimeMillis(), "ECG", Double.toString(ecgValue));
-            lastEcgValues[patientId] = ecgValue;
+            State state = states.get(patientId);
+            double ecgValue = simulateEcgWaveform(state.random, state.lastEcgValue);
+            outputStrategy.output(patientId, clock.currentTimeMillis(), SignalCode.ECG, ecgValue);
+            state.lastEcgValue = ecgValue;
         } catch (Exception e) {
             System.err.println("An error occurred while generating ECG data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
         }
     }
 
-    private double simulateEcgWaveform(int patientId, double lastEcgValue) {
+    @Override
+    public void discharge(int patientId) {
+        states.remove(patientId);
+    }
+
+    private double simulateEcgWaveform(SplittableRandom random, double lastEcgValue) {
         // Simplified ECG waveform generation based on sinusoids
         double hr = 60.0 + random.nextDouble() * 20.0; // Simulate heart rate variability between 60 and 80 bpm
-        double t = System.currentTimeMillis() / 1000.0; // Use system time to simulate continuous time
+        double t = clock.currentTimeMillis() / 1000.0; // Use the simulation clock to simulate continuous time
         double ecgFrequency = hr / 60.0; // Convert heart rate to Hz
 
         // Simulate different components of the ECG signal
@@ -43,4 +66,13 @@ public class ECGDataGenerator implements PatientDataGenerator {
 
         return pWave + qrsComplex + tWave + random.nextDouble() * 0.05; // Add small noise
     }
+
+    private static final class State {
+        final SplittableRandom random;
+        double lastEcgValue;
+
+        State(SplittableRandom random) {
+            this.random = random;
+        }
+    }
 }
@@ -0,0 +1,162 @@
+package com.cardio_generator.generators;
+
+import java.util.SplittableRandom;
+
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
+
+/**
+ * {@code HighRateECGGenerator} produces an ECG at a monitor's sample rate, e.g. 250 or
+ * 500 Hz, instead of one sample per second.
+ *
+ * Each beat is read from a precomputed P-QRS-T template covering one RR interval, so a
+ * sample costs a table lookup rather than trigonometry. Every patient has a base heart
+ * rate between 60 and 80 bpm and an amplitude of its own; each beat's RR interval varies
+ * by up to 5% of the base, and a little noise is added.
+ *
+ * {@link #generate} is meant to be called periodically, e.g. every 50 ms. Each call emits
+ * all samples of the patient that are due up to the current time of the clock, as one
+ * block, so the generator keeps the sample rate whatever the call period and the output
+ * receives few large calls.
+ */
+public class HighRateECGGenerator implements PatientDataGenerator {
+
+    private static final int TEMPLATE_SIZE = 1024;
+    private static final double RR_VARIABILITY = 0.05;
+    private static final double NOISE = 0.02;
+    // Samples per output call when a call has fallen far behind
+    private static final int MAX_BLOCK_SAMPLES = 1024;
+
+    // One beat, indexed by phase within the RR interval; one extra point for interpolation
+    private static final double[] TEMPLATE = buildTemplate();
+
+    private final int sampleRateHz;
+    private final SimulationClock clock;
+    // Each patient's stream, rhythm and position, from admission to discharge
+    private final PatientStates<State> states;
+
+    /**
+     * @param patientCount the expected number of patients; others are added when first generated
+     * @param sampleRateHz the samples per second of each patient
+     * @param clock        the time source for the sample timestamps
+     * @param streams      the source of each patient's random stream
+     */
+    public HighRateECGGenerator(int patientCount, int sampleRateHz, SimulationClock clock, RandomStreams streams) {
+        if (sampleRateHz <= 0 || sampleRateHz > 1000) {
+            throw new IllegalArgumentException("Sample rate must be between 1 and 1000 Hz");
+        }
+        this.sampleRateHz = sampleRateHz;
+        this.clock = clock;
+        this.states = new PatientStates<>(patientCount, id -> new State(streams.forPatient("ecg-high-rate", id)));
+    }
+
+    @Override
+    public void generate(int patientId, OutputStrategy outputStrategy) {
+        try {
+            long now = clock.currentTimeMillis();
+            State state = states.get(patientId);
+            if (state.originMillis == Long.MIN_VALUE) {
+                state.originMillis = now;
+            }
+            long due = (now - state.originMillis) * sampleRateHz / 1000 + 1 - state.emittedSamples;
+            if (due <= 0) {
+                return;
+            }
+            int blockSize = (int) Math.min(due, MAX_BLOCK_SAMPLES);
+            long[] timestamps = new long[blockSize];
+            double[] values = new double[blockSize];
+            SplittableRandom random = state.random;
+            double phaseStep = 1.0 / sampleRateHz;
+            while (due > 0) {
+                int count = (int) Math.min(due, blockSize);
+                for (int i = 0; i < count; i++) {
+                    long sample = state.emittedSamples++;
+                    timestamps[i] = state.originMillis + sample * 1000 / sampleRateHz;
+                    values[i] = state.amplitude * lookup(state.phase)
+                            + (random.nextDouble() - 0.5) * NOISE;
+
+                    double phase = state.phase + phaseStep / state.rrSeconds;
+                    if (phase >= 1) {
+                        phase -= 1;
+                        state.rrSeconds = state.baseRrSeconds
+                                * (1 + RR_VARIABILITY * (2 * random.nextDouble() - 1));
+                    }
+                    state.phase = phase;
+                }
+                outputStrategy.output(patientId, SignalCode.ECG, timestamps, values, count);
+                due -= count;
+            }
+        } catch (Exception e) {
+            System.err.println("An error occurred while generating ECG data for patient " + patientId);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Also forgets the patient's position, so a readmitted patient does not receive
+     * the samples of the time away.
+     */
+    @Override
+    public void discharge(int patientId) {
+        states.remove(patientId);
+    }
+
+    /**
+     * @return the samples per second of each patient
+     */
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    // Linear interpolation between the template points around the phase
+    private static double lookup(double phase) {
+        double position = phase * TEMPLATE_SIZE;
+        int index = (int) position;
+        double fraction = position - index;
+        return TEMPLATE[index] + (TEMPLATE[index + 1] - TEMPLATE[index]) * fraction;
+    }
+
+    // P wave, Q, R and S deflections and T wave as Gaussians over the RR interval, in mV
+    private static double[] buildTemplate() {
+        double[][] waves = {
+                // position, amplitude, width (fractions of the RR interval)
+                {0.20, 0.15, 0.025},
+                {0.37, -0.12, 0.008},
+                {0.40, 1.20, 0.010},
+                {0.43, -0.25, 0.010},
+                {0.68, 0.30, 0.045},
+        };
+        double[] template = new double[TEMPLATE_SIZE + 1];
+        for (int i = 0; i <= TEMPLATE_SIZE; i++) {
+            double phase = (double) i / TEMPLATE_SIZE;
+            double value = 0;
+            for (double[] wave : waves) {
+                double distance = (phase - wave[0]) / wave[2];
+                value += wave[1] * Math.exp(-0.5 * distance * distance);
+            }
+            template[i] = value;
+        }
+        return template;
+    }
+
+    private static final class State {
+        final SplittableRandom random;
+        final double baseRrSeconds;
+        final double amplitude;
+        // Current beat
+        double phase;
+        double rrSeconds;
+        // Time of the patient's first sample and the number of samples emitted since
+        long originMillis = Long.MIN_VALUE;
+        long emittedSamples;
+
+        State(SplittableRandom random) {
+            this.random = random;
+            double heartRate = 60 + random.nextDouble() * 20;
+            baseRrSeconds = 60 / heartRate;
+            rrSeconds = baseRrSeconds;
+            amplitude = 0.8 + random.nextDouble() * 0.4;
+            phase = random.nextDouble();
+        }
+    }
+}
@@ -13,4 +13,14 @@ import com.cardio_generator.outputs.OutputStrategy;
 
 public interface PatientDataGenerator {
     void generate(int patientId, OutputStrategy outputStrategy);
+
+    /**
+     * Releases what the generator keeps for a patient who has left the simulation. If
+     * the patient is generated again later, it starts afresh, as a new admission.
+     * Generators without per-patient state need not override it.
+     *
+     * @param patientId the discharged patient
+     */
+    default void discharge(int patientId) {
+    }
 }
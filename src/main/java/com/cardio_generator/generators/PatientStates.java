@@ -0,0 +1,45 @@
+package com.cardio_generator.generators;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * The per-patient state of a generator, created when a patient is first generated and
+ * released when the patient is discharged, so patients can join and leave a running
+ * simulation.
+ *
+ * @param <S> the state of one patient
+ */
+final class PatientStates<S> {
+
+    private final ConcurrentHashMap<Integer, S> states;
+    private final IntFunction<S> factory;
+
+    /**
+     * @param expectedPatients the number of patients to size the map for
+     * @param factory          creates the state of a patient from its id
+     */
+    PatientStates(int expectedPatients, IntFunction<S> factory) {
+        this.states = new ConcurrentHashMap<>(Math.max(16, expectedPatients * 4 / 3 + 1));
+        this.factory = factory;
+    }
+
+    /**
+     * @return the state of the patient, created if the patient has none
+     */
+    S get(int patientId) {
+        S state = states.get(patientId);
+        return state != null ? state : states.computeIfAbsent(patientId, factory::apply);
+    }
+
+    void remove(int patientId) {
+        states.remove(patientId);
+    }
+
+    /**
+     * @return the number of patients with state
+     */
+    int size() {
+        return states.size();
+    }
+}
@@ -0,0 +1,71 @@
+package com.cardio_generator.generators;
+
+import java.util.SplittableRandom;
+
+/**
+ * Derives an independent random stream for every patient of every generator from one
+ * master seed.
+ *
+ * A stream depends only on the seed, the stream name and the patient id, not on the
+ * order in which streams are created or used. Runs with the same seed therefore produce
+ * the same data however patients are spread over threads, and threads never share a
+ * random number generator.
+ */
+public final class RandomStreams {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    /**
+     * @param seed the master seed
+     */
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return streams from a master seed that differs from run to run
+     */
+    public static RandomStreams unseeded() {
+        return new RandomStreams(new SplittableRandom().nextLong());
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the stream of one patient.
+     *
+     * @param stream    the name of the stream, e.g. the generator's signal
+     * @param patientId the patient
+     * @return a new generator, always starting at the same point for the same arguments
+     */
+    public SplittableRandom forPatient(String stream, int patientId) {
+        long streamSeed = mix(seed + stream.hashCode() * GOLDEN_GAMMA);
+        return new SplittableRandom(mix(streamSeed + patientId * GOLDEN_GAMMA));
+    }
+
+    /**
+     * Returns the streams of patients 1 to {@code patientCount}, indexed by patient id.
+     *
+     * @param stream       the name of the stream, e.g. the generator's signal
+     * @param patientCount the highest patient id
+     * @return the streams; index 0 is unused
+     */
+    public SplittableRandom[] forPatients(String stream, int patientCount) {
+        SplittableRandom[] streams = new SplittableRandom[patientCount + 1];
+        for (int i = 1; i <= patientCount; i++) {
+            streams[i] = forPatient(stream, i);
+        }
+        return streams;
+    }
+
+    // The SplitMix64 finalizer, so nearby inputs give unrelated seeds
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,18 @@
+package com.cardio_generator.generators;
+
+/**
+ * The time source the generators stamp their samples with. {@link #SYSTEM} follows the
+ * wall clock; a {@link VirtualClock} lets a simulation run ahead of it.
+ */
+public interface SimulationClock {
+
+    /**
+     * The wall clock, {@link System#currentTimeMillis()}.
+     */
+    SimulationClock SYSTEM = System::currentTimeMillis;
+
+    /**
+     * @return the current time in milliseconds since the epoch
+     */
+    long currentTimeMillis();
+}
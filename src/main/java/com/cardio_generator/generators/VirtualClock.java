@@ -0,0 +1,31 @@
+package com.cardio_generator.generators;
+
+/**
+ * A {@link SimulationClock} that stands still until it is moved, used to generate data
+ * for simulated time faster or slower than it passes.
+ */
+public class VirtualClock implements SimulationClock {
+
+    private volatile long millis;
+
+    /**
+     * @param startMillis the initial time in milliseconds since the epoch
+     */
+    public VirtualClock(long startMillis) {
+        this.millis = startMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return millis;
+    }
+
+    /**
+     * Sets the time returned from now on.
+     *
+     * @param millis the time in milliseconds since the epoch
+     */
+    public void setTimeMillis(long millis) {
+        this.millis = millis;
+    }
+}
@@ -0,0 +1,173 @@
+package com.cardio_generator.outputs;
+
+import com.data_management.BoundedLane;
+import com.data_management.OverflowPolicy;
+import com.data_management.SignalCode;
+import com.data_management.SignalPriority;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@code AsyncOutputStrategy} decorates another {@link OutputStrategy} so that
+ * {@code output} never waits for the wrapped sink. Samples are put into a
+ * {@link BoundedLane} and a dedicated thread hands them to the wrapped strategy in
+ * batches. A slow console, disk or socket then delays only that thread, not the
+ * generators and their timing.
+ *
+ * When the buffer is full the {@link OverflowPolicy} decides whether the caller waits,
+ * the oldest sample is dropped, or low priority samples are dropped. Queue depth,
+ * drop counts and the time samples spend in the queue are exposed as metrics.
+ */
+public class AsyncOutputStrategy implements OutputStrategy {
+
+    private static final int BATCH_SIZE = 512;
+
+    private final OutputStrategy delegate;
+    private final BoundedLane<Sample> queue;
+    private final Thread drainer;
+
+    private final AtomicLong deliveredSamples = new AtomicLong();
+    private final AtomicLong failedSamples = new AtomicLong();
+    // Written by the drainer thread only
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+
+    /**
+     * Wraps a strategy and starts the thread that feeds it.
+     *
+     * @param delegate       the strategy receiving the samples
+     * @param capacity       the number of samples the buffer holds
+     * @param overflowPolicy what to do when the buffer is full
+     */
+    public AsyncOutputStrategy(OutputStrategy delegate, int capacity, OverflowPolicy overflowPolicy) {
+        this.delegate = delegate;
+        this.queue = new BoundedLane<>(capacity, overflowPolicy,
+                sample -> SignalPriority.of(sample.label) == SignalPriority.LOW);
+        this.drainer = new Thread(() -> queue.drainUntilClosed(this::deliver, BATCH_SIZE),
+                "async-output-" + delegate.getClass().getSimpleName());
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        queue.offer(new Sample(patientId, timestamp, label, data, SignalCode.UNKNOWN, Double.NaN, System.nanoTime()));
+    }
+
+    // Numeric samples stay numeric until the wrapped strategy decides how to write them
+    @Override
+    public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+        queue.offer(new Sample(patientId, timestamp, signalCode.requireLabel(), null, signalCode, value,
+                System.nanoTime()));
+    }
+
+    /**
+     * Passed on at once rather than in order with the queued samples, so a strategy
+     * that keeps per-patient state belongs in front of the queue, not behind it.
+     */
+    @Override
+    public void discharge(int patientId) {
+        delegate.discharge(patientId);
+    }
+
+    private void deliver(Sample sample) {
+        try {
+            if (sample.data != null) {
+                delegate.output(sample.patientId, sample.timestamp, sample.label, sample.data);
+            } else {
+                delegate.output(sample.patientId, sample.timestamp, sample.signalCode, sample.value);
+            }
+            deliveredSamples.incrementAndGet();
+        } catch (Exception e) {
+            failedSamples.incrementAndGet();
+        }
+        long latency = System.nanoTime() - sample.enqueuedAt;
+        totalLatencyNanos += latency;
+        if (latency > maxLatencyNanos) {
+            maxLatencyNanos = latency;
+        }
+    }
+
+    /**
+     * Stops accepting samples, delivers everything still queued and closes the
+     * wrapped strategy.
+     */
+    @Override
+    public void close() {
+        if (queue.isClosed()) {
+            return;
+        }
+        queue.close();
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    /**
+     * @return the number of samples waiting in the buffer
+     */
+    public int getDepth() {
+        return queue.size();
+    }
+
+    public long getEnqueuedSamples() {
+        return queue.getEnqueued();
+    }
+
+    public long getDeliveredSamples() {
+        return deliveredSamples.get();
+    }
+
+    public long getDroppedSamples() {
+        return queue.getDropped();
+    }
+
+    /**
+     * @return the number of samples the wrapped strategy threw an exception for
+     */
+    public long getFailedSamples() {
+        return failedSamples.get();
+    }
+
+    /**
+     * @return the average time between enqueueing and delivering a sample, in microseconds
+     */
+    public double getAverageLatencyMicros() {
+        long handled = deliveredSamples.get() + failedSamples.get();
+        return handled == 0 ? 0 : totalLatencyNanos / 1000.0 / handled;
+    }
+
+    /**
+     * @return the longest time a sample spent in the buffer, in microseconds
+     */
+    public double getMaxLatencyMicros() {
+        return maxLatencyNanos / 1000.0;
+    }
+
+    // A queued sample and the time it was enqueued; data is null for numeric samples
+    private static class Sample {
+        final int patientId;
+        final long timestamp;
+        final String label;
+        final String data;
+        final SignalCode signalCode;
+        final double value;
+        final long enqueuedAt;
+
+        Sample(int patientId, long timestamp, String label, String data, SignalCode signalCode, double value,
+               long enqueuedAt) {
+            this.patientId = patientId;
+            this.timestamp = timestamp;
+            this.label = label;
+            this.data = data;
+            this.signalCode = signalCode;
+            this.value = value;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.cardio_generator.outputs;
+
+import com.data_management.OverflowPolicy;
+import com.data_management.SignalCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code CompositeOutputStrategy} sends every sample to several output strategies,
+ * e.g. a file archive and a live WebSocket stream at the same time.
+ *
+ * Each sink gets its own lane: an {@link AsyncOutputStrategy} with its own buffer and
+ * thread. A slow sink therefore only fills its own buffer and, depending on the
+ * {@link OverflowPolicy}, drops its own samples; the other sinks and the generators
+ * are not delayed. With {@link OverflowPolicy#BLOCK} a full lane does make the
+ * generators wait, so the live sinks are only isolated under the drop policies.
+ */
+public class CompositeOutputStrategy implements OutputStrategy {
+
+    private final List<String> names;
+    private final List<AsyncOutputStrategy> lanes;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Starts one lane per sink.
+     *
+     * @param sinks          the sinks by name, e.g. the {@code --output} argument; the
+     *                       map's iteration order is the order of the metrics
+     * @param laneCapacity   the number of samples each lane buffers
+     * @param overflowPolicy what a lane does when its buffer is full
+     */
+    public CompositeOutputStrategy(Map<String, OutputStrategy> sinks, int laneCapacity,
+                                   OverflowPolicy overflowPolicy) {
+        List<String> names = new ArrayList<>(sinks.size());
+        List<AsyncOutputStrategy> lanes = new ArrayList<>(sinks.size());
+        for (Map.Entry<String, OutputStrategy> sink : sinks.entrySet()) {
+            names.add(sink.getKey());
+            lanes.add(new AsyncOutputStrategy(sink.getValue(), laneCapacity, overflowPolicy));
+        }
+        this.names = Collections.unmodifiableList(names);
+        this.lanes = Collections.unmodifiableList(lanes);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        for (AsyncOutputStrategy lane : lanes) {
+            lane.output(patientId, timestamp, label, data);
+        }
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+        for (AsyncOutputStrategy lane : lanes) {
+            lane.output(patientId, timestamp, signalCode, value);
+        }
+    }
+
+    @Override
+    public void discharge(int patientId) {
+        for (AsyncOutputStrategy lane : lanes) {
+            lane.discharge(patientId);
+        }
+    }
+
+    /**
+     * Closes every lane, each delivering what it still holds and closing its sink.
+     */
+    @Override
+    public void close() {
+        for (AsyncOutputStrategy lane : lanes) {
+            lane.close();
+        }
+    }
+
+    /**
+     * @return the sink names, in lane order
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return the lanes, in the order of {@link #getNames()}, for their queue metrics
+     */
+    public List<AsyncOutputStrategy> getLanes() {
+        return lanes;
+    }
+
+    /**
+     * @param lane the index of the lane
+     * @return the samples the lane's sink accepted per second since this strategy started
+     */
+    public double getThroughput(int lane) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds == 0 ? 0 : lanes.get(lane).getDeliveredSamples() / seconds;
+    }
+
+    /**
+     * Describes every lane on one line: throughput, delivered, dropped and failed
+     * samples, queue depth and maximum queueing latency.
+     *
+     * @return the metrics, one line per sink
+     */
+    public String formatMetrics() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < lanes.size(); i++) {
+            AsyncOutputStrategy lane = lanes.get(i);
+            out.append(String.format("%s: %.0f samples/s, delivered %d, dropped %d, failed %d, depth %d, max latency %.0f us%n",
+                    names.get(i), getThroughput(i), lane.getDeliveredSamples(), lane.getDroppedSamples(),
+                    lane.getFailedSamples(), lane.getDepth(), lane.getMaxLatencyMicros()));
+        }
+        return out.toString();
+    }
+}
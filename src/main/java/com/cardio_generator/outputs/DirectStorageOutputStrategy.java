@@ -0,0 +1,217 @@
+package com.cardio_generator.outputs;
+
+import com.data_management.BinaryFrameCodec;
+import com.data_management.DataStorageSingleton;
+import com.data_management.IngestQueue;
+import com.data_management.OverflowPolicy;
+import com.data_management.PatientDataSink;
+import com.data_management.SampleBatch;
+import com.data_management.SignalCode;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code DirectStorageOutputStrategy} hands generated samples straight to a
+ * {@link PatientDataSink} such as {@code DataStorage} or {@code DataStorageSingleton}
+ * in the same JVM, so the simulator and the monitoring side can run together without
+ * formatting text on one side and parsing it on the other.
+ *
+ * Samples are collected in {@link SampleBatch}es and stored with one call per batch.
+ * There is one batch per stripe of patients, each with its own lock, so generator
+ * threads rarely wait for each other and the samples of a patient stay in order. A
+ * batch is stored when it is full or, at the latest, after the flush interval.
+ *
+ * With a hand-off queue the batches go to an {@link IngestQueue} whose writer threads
+ * do the storing, so generator threads never wait for storage.
+ *
+ * It is meant for programs that run the simulator next to their own alert evaluation on
+ * the same storage. The simulator's command line does not offer it: on its own the
+ * simulator would only fill a storage that nothing reads.
+ */
+public class DirectStorageOutputStrategy implements OutputStrategy {
+
+    private static final int BATCH_SIZE = 256;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+
+    private final PatientDataSink sink;
+    // The queue created by this strategy, closed with it; null without a hand-off queue
+    private final IngestQueue handOff;
+    private final Stripe[] stripes;
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    private final AtomicLong storedSamples = new AtomicLong();
+    private final AtomicLong rejectedSamples = new AtomicLong();
+
+    /**
+     * Stores into the {@code DataStorageSingleton}.
+     */
+    public DirectStorageOutputStrategy() {
+        this(DataStorageSingleton.getInstance());
+    }
+
+    /**
+     * Stores into the given sink on the generator threads.
+     *
+     * @param sink where samples are stored
+     */
+    public DirectStorageOutputStrategy(PatientDataSink sink) {
+        this(sink, null, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Stores into the given sink through a hand-off queue drained by writer threads.
+     *
+     * @param sink           where samples are stored
+     * @param queueCapacity  capacity of each writer's lane
+     * @param writerThreads  number of writer threads
+     * @param overflowPolicy what to do when a lane is full
+     */
+    public DirectStorageOutputStrategy(PatientDataSink sink, int queueCapacity, int writerThreads,
+                                       OverflowPolicy overflowPolicy) {
+        this(sink, new IngestQueue(sink, queueCapacity, writerThreads, overflowPolicy), DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    private DirectStorageOutputStrategy(PatientDataSink sink, IngestQueue handOff, long flushIntervalMillis) {
+        this.handOff = handOff;
+        if (handOff != null) {
+            handOff.start();
+        }
+        this.sink = handOff != null ? handOff : sink;
+
+        stripes = new Stripe[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "direct-storage-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Converts the text data back to a number; "97.0%" and alert states are accepted.
+     * Samples that are not numeric are counted as rejected.
+     */
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        double value = BinaryFrameCodec.toValue(data);
+        if (Double.isNaN(value)) {
+            rejectedSamples.incrementAndGet();
+            return;
+        }
+        add(patientId, timestamp, label, value);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+        add(patientId, timestamp, signalCode.requireLabel(), value);
+    }
+
+    // A block goes into the batch under one lock, so it is not interleaved with other samples
+    @Override
+    public void output(int patientId, SignalCode signalCode, long[] timestamps, double[] values, int count) {
+        String label = signalCode.requireLabel();
+        Stripe stripe = stripes[Math.floorMod(patientId, stripes.length)];
+        synchronized (stripe) {
+            if (closed) {
+                rejectedSamples.addAndGet(count);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                stripe.batch.add(patientId, values[i], label, timestamps[i]);
+                if (stripe.batch.isFull()) {
+                    store(stripe.batch);
+                }
+            }
+        }
+    }
+
+    private void add(int patientId, long timestamp, String label, double value) {
+        Stripe stripe = stripes[Math.floorMod(patientId, stripes.length)];
+        synchronized (stripe) {
+            // Checked under the lock so that close() cannot miss a sample added after its flush
+            if (closed) {
+                rejectedSamples.incrementAndGet();
+                return;
+            }
+            stripe.batch.add(patientId, value, label, timestamp);
+            if (stripe.batch.isFull()) {
+                store(stripe.batch);
+            }
+        }
+    }
+
+    // Caller holds the stripe's lock
+    private void store(SampleBatch batch) {
+        sink.addPatientData(batch);
+        storedSamples.addAndGet(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * Stores every batch that is not yet full.
+     */
+    public void flush() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.batch.isEmpty()) {
+                    store(stripe.batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the remaining samples and, with a hand-off queue, waits until its writers
+     * have stored them too.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (handOff != null) {
+            handOff.close();
+        }
+    }
+
+    /**
+     * @return the number of samples passed to the sink or hand-off queue
+     */
+    public long getStoredSamples() {
+        return storedSamples.get();
+    }
+
+    /**
+     * @return the number of samples rejected as not numeric or arriving after close
+     */
+    public long getRejectedSamples() {
+        return rejectedSamples.get();
+    }
+
+    /**
+     * @return the hand-off queue, for its depth and drop metrics, or null without one
+     */
+    public IngestQueue getHandOffQueue() {
+        return handOff;
+    }
+
+    // Batch of the patients whose id maps to this stripe; guarded by the stripe
+    private static class Stripe {
+        final SampleBatch batch = new SampleBatch(BATCH_SIZE);
+    }
+}
@@ -1,32 +1,99 @@
 package com.cardio_generator.outputs;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * {@code FileOutputStrategy} is an implementation of the {@link OutputStrategy} interface that 
- * handles outputting patient data. It writes the data into files within a specified 
- * directory. If the directory does not exist, it will be created. Each output file is named 
+ * {@code FileOutputStrategy} is an implementation of the {@link OutputStrategy} interface that
+ * handles outputting patient data. It writes the data into files within a specified
+ * directory. If the directory does not exist, it will be created. Each output file is named
  * according to a label, and data is added to the file.
  *
+ * Each label file is opened once and kept open. Lines are buffered and written to disk
+ * when the buffer fills up, at least once per flush interval, and when the strategy is
+ * closed or the JVM shuts down.
+ *
+ * With a rotating {@link SegmentPolicy} the active {@code <label>.txt} file is closed
+ * once it is large or old enough and renamed to {@code <label>-<sequence>.txt}, which
+ * is optionally gzip compressed in the background. Every closed segment is recorded
+ * with its time range in the directory's {@link SegmentManifest}.
+ *
  * @param baseDirectory The base directory where the output files will be stored.
  * @throws IOException If there is an error while creating the directory or writing to the file.
  */
 
 public class FileOutputStrategy implements OutputStrategy {
 
-    // Changed the name to lowerCamelCase 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    // Length of the fixed text of a line: "Patient ID: , Timestamp: , Label: , Data: " plus line separator
+    private static final int LINE_OVERHEAD = 42 + System.lineSeparator().length();
+
+    // Changed the name to lowerCamelCase
     private String baseDirectory;
 
     public final ConcurrentHashMap<String, String> file_map = new ConcurrentHashMap<>();
 
+    // One open writer per label
+    private final ConcurrentHashMap<String, LabelWriter> writers = new ConcurrentHashMap<>();
+    private final SegmentPolicy segmentPolicy;
+    private final SegmentManifest manifest;
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService compressor;
+    private final Thread shutdownHook = new Thread(this::flushAndCloseWriters, "file-output-shutdown");
+    private volatile boolean closed;
+
     public FileOutputStrategy(String baseDirectory) {
+        this(baseDirectory, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public FileOutputStrategy(String baseDirectory, long flushIntervalMillis) {
+        this(baseDirectory, flushIntervalMillis, SegmentPolicy.none());
+    }
+
+    /**
+     * Creates a file output that flushes buffered lines at least every
+     * {@code flushIntervalMillis} milliseconds.
+     *
+     * @param baseDirectory       the directory for the label files
+     * @param flushIntervalMillis the maximum time a line stays in the buffer
+     * @param segmentPolicy       when label files are rotated into segments
+     */
+    public FileOutputStrategy(String baseDirectory, long flushIntervalMillis, SegmentPolicy segmentPolicy) {
 
         this.baseDirectory = baseDirectory;
+        this.segmentPolicy = segmentPolicy;
+        this.manifest = new SegmentManifest(Paths.get(baseDirectory));
+        this.compressor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-output-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-output-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
     }
 
 /**
@@ -45,23 +112,252 @@ public class FileOutputStrategy implements OutputStrategy {
 
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
+        if (closed) {
+            return;
+        }
+        LabelWriter labelWriter;
+        try {
+            labelWriter = writers.computeIfAbsent(label, this::openWriter);
+        } catch (UncheckedIOException e) {
+            System.err.println("Error opening file for label " + label + ": " + e.getCause().getMessage());
+            return;
+        } catch (IllegalStateException e) {
+            return; // Closed meanwhile
+        }
+
+        // Write the data to the buffer; the writer goes to disk when the buffer is full
+        synchronized (labelWriter) {
+            if (closed) {
+                // Rejected; the writer may have been opened after close() closed the others
+                closeWriter(labelWriter);
+                return;
+            }
+            try {
+                String patient = Integer.toString(patientId);
+                String time = Long.toString(timestamp);
+                BufferedWriter out = labelWriter.writer;
+                out.write("Patient ID: ");
+                out.write(patient);
+                out.write(", Timestamp: ");
+                out.write(time);
+                out.write(", Label: ");
+                out.write(label);
+                out.write(", Data: ");
+                out.write(data);
+                out.write(System.lineSeparator());
+                labelWriter.dirty = true;
+                labelWriter.record(timestamp, LINE_OVERHEAD + patient.length() + time.length() + label.length() + data.length());
+                if (segmentPolicy.getMaxSegmentBytes() > 0 && labelWriter.bytes >= segmentPolicy.getMaxSegmentBytes()) {
+                    rotate(label, labelWriter);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing to file " + labelWriter.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes all buffered lines to disk and rotates segments that have reached their
+     * maximum age.
+     */
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, LabelWriter> entry : writers.entrySet()) {
+            LabelWriter labelWriter = entry.getValue();
+            synchronized (labelWriter) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    if (segmentPolicy.getMaxSegmentMillis() > 0 && labelWriter.bytes > 0
+                            && now - labelWriter.openedAt >= segmentPolicy.getMaxSegmentMillis()) {
+                        rotate(entry.getKey(), labelWriter);
+                    } else if (labelWriter.dirty) {
+                        labelWriter.writer.flush();
+                        labelWriter.dirty = false;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error flushing file " + labelWriter.path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the active segment of a label, renames it to the next sequence number,
+     * records it in the manifest (after compressing it, if enabled) and opens a new
+     * active file. Must be called while holding the label writer's lock.
+     * The label always gets an open active file again: if the segment cannot be renamed,
+     * writing continues in the old one and the next rotation tries again.
+     */
+    private void rotate(String label, LabelWriter labelWriter) throws IOException {
+        labelWriter.writer.close();
+        Path segment = labelWriter.path.resolveSibling(String.format("%s-%06d.txt", label, labelWriter.sequence + 1));
+        boolean moved = false;
+        try {
+            Files.move(labelWriter.path, segment);
+            moved = true;
+            labelWriter.sequence++;
+            SegmentManifest.Entry entry = new SegmentManifest.Entry(segment.getFileName().toString(), label,
+                    labelWriter.minTimestamp, labelWriter.maxTimestamp, labelWriter.lines);
+            if (segmentPolicy.isCompress()) {
+                compressor.submit(() -> compress(segment, entry));
+            } else {
+                manifest.append(entry);
+            }
+        } finally {
+            if (moved) {
+                labelWriter.open(newWriter(labelWriter.path), 0, false);
+            } else {
+                // Same segment, statistics and all
+                labelWriter.writer = newWriter(labelWriter.path);
+            }
+        }
+    }
+
+    // Compresses a closed segment next to the original, then records and deletes it
+    private void compress(Path segment, SegmentManifest.Entry entry) {
+        Path compressed = segment.resolveSibling(segment.getFileName() + ".gz");
+        Path temp = segment.resolveSibling(segment.getFileName() + ".gz.tmp");
+        try {
+            try (InputStream in = Files.newInputStream(segment);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+                in.transferTo(out);
+            }
+            Files.move(temp, compressed, StandardCopyOption.ATOMIC_MOVE);
+            manifest.append(new SegmentManifest.Entry(compressed.getFileName().toString(), entry.getLabel(),
+                    entry.getMinTimestamp(), entry.getMaxTimestamp(), entry.getLines()));
+            Files.delete(segment);
+        } catch (IOException e) {
+            System.err.println("Error compressing segment " + segment + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flushes and closes every label file. Later output is rejected: it is dropped and
+     * opens no new files.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flushAndCloseWriters();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+        }
+    }
+
+    private void flushAndCloseWriters() {
+        closed = true;
+        flusher.shutdownNow();
+        for (LabelWriter labelWriter : writers.values()) {
+            synchronized (labelWriter) {
+                closeWriter(labelWriter);
+            }
+        }
+        // Let pending compressions finish
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Closing a closed writer again does nothing; caller holds the writer's lock
+    private static void closeWriter(LabelWriter labelWriter) {
+        try {
+            labelWriter.writer.close();
+        } catch (IOException e) {
+            System.err.println("Error closing file " + labelWriter.path + ": " + e.getMessage());
+        }
+    }
+
+    private LabelWriter openWriter(String label) {
+        if (closed) {
+            throw new IllegalStateException("FileOutputStrategy is closed");
+        }
         try {
             // Create the directory
             Files.createDirectories(Paths.get(baseDirectory));
+            // Set the FilePath variable
+            Path filePath = Paths.get(file_map.computeIfAbsent(label, k -> Paths.get(baseDirectory, label + ".txt").toString()));
+            LabelWriter labelWriter = new LabelWriter(filePath);
+            long existingBytes = Files.exists(filePath) ? Files.size(filePath) : 0;
+            labelWriter.open(newWriter(filePath), existingBytes, existingBytes > 0);
+            if (segmentPolicy.isRotating()) {
+                labelWriter.sequence = lastSequence(label);
+            }
+            return labelWriter;
         } catch (IOException e) {
-            System.err.println("Error creating base directory: " + e.getMessage());
-            return;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private BufferedWriter newWriter(Path filePath) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(filePath, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    // Highest segment number already present for a label, so numbering continues after a restart
+    private int lastSequence(String label) throws IOException {
+        int last = 0;
+        String prefix = label + "-";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(baseDirectory), prefix + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                int end = name.indexOf(".txt", prefix.length());
+                if (end < 0) {
+                    continue;
+                }
+                try {
+                    last = Math.max(last, Integer.parseInt(name.substring(prefix.length(), end)));
+                } catch (NumberFormatException e) {
+                    // Not a segment of this label
+                }
+            }
+        }
+        return last;
+    }
+
+    // Open file of one label and the statistics of its current segment; guarded by its own monitor
+    private static class LabelWriter {
+        final Path path;
+        BufferedWriter writer;
+        boolean dirty;
+        int sequence;
+        long openedAt;
+        long bytes;
+        long lines;
+        long minTimestamp;
+        long maxTimestamp;
+
+        LabelWriter(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Starts a new segment. A segment continuing a file from an earlier run has an
+         * unknown time range, so it is given the widest possible one.
+         */
+        void open(BufferedWriter writer, long existingBytes, boolean inherited) {
+            this.writer = writer;
+            this.openedAt = System.currentTimeMillis();
+            this.bytes = existingBytes;
+            this.lines = 0;
+            this.minTimestamp = inherited ? Long.MIN_VALUE : Long.MAX_VALUE;
+            this.maxTimestamp = inherited ? Long.MAX_VALUE : Long.MIN_VALUE;
         }
-        // Set the FilePath variable
-        // Changed the name to lowerCamelCase
-        String filePath = file_map.computeIfAbsent(label, k -> Paths.get(baseDirectory, label + ".txt").toString());
 
-        // Write the data to the file
-        try (PrintWriter out = new PrintWriter(
-                Files.newBufferedWriter(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
-            out.printf("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s%n", patientId, timestamp, label, data);
-        } catch (Exception e) {
-            System.err.println("Error writing to file " + filePath + ": " + e.getMessage());
+        void record(long timestamp, int lineBytes) {
+            bytes += lineBytes;
+            lines++;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.SignalCode;
 
 /**
  * Interface for defining strategies to output patient data. 
@@ -9,6 +10,57 @@ package com.cardio_generator.outputs;
  * @param label A label for data.
  * @param data The actual data to be output.
  */
-public interface OutputStrategy {
+public interface OutputStrategy extends AutoCloseable {
     void output(int patientId, long timestamp, String label, String data);
+
+    /**
+     * Outputs a numeric sample. The generators use this variant so that no text is
+     * produced unless the strategy needs it; strategies that work with numbers override
+     * it. The default formats the value with {@link SignalCode#format(double)} and
+     * calls {@link #output(int, long, String, String)}.
+     *
+     * @param patientId  The ID of the patient whose data is being output.
+     * @param timestamp  The timestamp indicating when the data was recorded.
+     * @param signalCode The {@link SignalCode} of the data; must not be {@code UNKNOWN}.
+     * @param value      The measured value; 1.0 or 0.0 for a triggered or resolved alert.
+     */
+    default void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+        output(patientId, timestamp, signalCode.requireLabel(), signalCode.format(value));
+    }
+
+    /**
+     * Outputs consecutive samples of one signal of a patient at once, e.g. a block of a
+     * high-rate waveform. The default outputs them one by one; strategies that can store
+     * or send a block in one step override it.
+     *
+     * @param patientId  The ID of the patient whose data is being output.
+     * @param signalCode The {@link SignalCode} of the data; must not be {@code UNKNOWN}.
+     * @param timestamps The timestamps of the samples, in order.
+     * @param values     The measured values.
+     * @param count      The number of samples, from index 0 of both arrays.
+     */
+    default void output(int patientId, SignalCode signalCode, long[] timestamps, double[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            output(patientId, timestamps[i], signalCode, values[i]);
+        }
+    }
+
+    /**
+     * Releases what the strategy keeps for a patient who has left the simulation; called
+     * by the scheduler once the patient's generators have stopped. Decorators pass it on
+     * to the strategies they wrap. Strategies without per-patient state need not
+     * override it.
+     *
+     * @param patientId the discharged patient
+     */
+    default void discharge(int patientId) {
+    }
+
+    /**
+     * Flushes buffered data and releases the resources held by the strategy.
+     * Strategies without buffers or connections need not override it.
+     */
+    @Override
+    default void close() {
+    }
 }
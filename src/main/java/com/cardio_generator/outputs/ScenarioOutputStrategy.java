@@ -0,0 +1,412 @@
+package com.cardio_generator.outputs;
+
+import com.cardio_generator.generators.RandomStreams;
+import com.data_management.SignalCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code ScenarioOutputStrategy} decorates another {@link OutputStrategy} and overlays
+ * clinical episodes on the samples passing through it. The generators keep their values
+ * in healthy ranges, so without episodes the alert strategies hardly ever fire; with
+ * them the alert path can be measured under a chosen incident rate.
+ *
+ * Episodes are either scripted for a patient at an offset from the start of the
+ * simulation, or drawn at random: every patient then has incidents at the given rate
+ * per patient-hour, with a random {@link Scenario} each. Episodes are placed by the
+ * sample timestamps, so they work in real and in virtual time, and random episodes come
+ * from the patient's own stream of {@link RandomStreams}, so a seeded run places the
+ * same episodes.
+ *
+ * During an episode the affected values move from the generated value to the
+ * episode's level over the first minutes, which also trips the trend alerts:
+ * <ul>
+ *   <li>{@link Scenario#HYPOTENSION}: systolic pressure falls to 70, diastolic to 45 mmHg.</li>
+ *   <li>{@link Scenario#DESATURATION}: saturation falls by 10 points.</li>
+ *   <li>{@link Scenario#HYPOTENSIVE_HYPOXEMIA}: both of the above at once.</li>
+ *   <li>{@link Scenario#TACHYCARDIA}: a {@code HeartRate} sample rising to 140 to 170 bpm
+ *       is added at most once per second of ECG.</li>
+ *   <li>{@link Scenario#ECG_SPIKES}: an ECG sample every two seconds gets a 3 mV spike.</li>
+ * </ul>
+ */
+public class ScenarioOutputStrategy implements OutputStrategy {
+
+    /**
+     * The kinds of episode.
+     */
+    public enum Scenario {
+        HYPOTENSION,
+        DESATURATION,
+        TACHYCARDIA,
+        HYPOTENSIVE_HYPOXEMIA,
+        ECG_SPIKES
+    }
+
+    /**
+     * One episode of one patient.
+     */
+    public static final class Episode {
+        private final int patientId;
+        private final Scenario scenario;
+        private final long startOffsetMillis;
+        private final long durationMillis;
+
+        /**
+         * @param patientId         the patient
+         * @param scenario          what happens
+         * @param startOffsetMillis the start, relative to the start of the simulation
+         * @param durationMillis    how long it lasts
+         */
+        public Episode(int patientId, Scenario scenario, long startOffsetMillis, long durationMillis) {
+            if (durationMillis <= 0) {
+                throw new IllegalArgumentException("Episode duration must be positive");
+            }
+            this.patientId = patientId;
+            this.scenario = scenario;
+            this.startOffsetMillis = startOffsetMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * Parses {@code <scenario>:<patient>:<start seconds>[:<duration seconds>]}, e.g.
+         * {@code hypotension:12:300:600}.
+         *
+         * @param spec                  the episode description
+         * @param defaultDurationMillis the duration if the description has none
+         * @throws IllegalArgumentException if the description is invalid
+         */
+        public static Episode parse(String spec, long defaultDurationMillis) {
+            String[] parts = spec.split(":");
+            if (parts.length < 3 || parts.length > 4) {
+                throw new IllegalArgumentException("Expected <scenario>:<patient>:<start>[:<duration>]: " + spec);
+            }
+            Scenario scenario = Scenario.valueOf(parts[0].toUpperCase().replace('-', '_'));
+            int patientId = Integer.parseInt(parts[1]);
+            long start = TimeUnit.SECONDS.toMillis(Long.parseLong(parts[2]));
+            long duration = parts.length == 4
+                    ? TimeUnit.SECONDS.toMillis(Long.parseLong(parts[3])) : defaultDurationMillis;
+            return new Episode(patientId, scenario, start, duration);
+        }
+
+        public int getPatientId() {
+            return patientId;
+        }
+
+        public Scenario getScenario() {
+            return scenario;
+        }
+
+        public long getStartOffsetMillis() {
+            return startOffsetMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+
+    private static final long MAX_RAMP_MILLIS = TimeUnit.MINUTES.toMillis(3);
+    private static final double HYPOTENSIVE_SYSTOLIC = 70;
+    private static final double HYPOTENSIVE_DIASTOLIC = 45;
+    private static final double DESATURATION_DROP = 10;
+    private static final double RESTING_HEART_RATE = 80;
+    private static final long HEART_RATE_INTERVAL_MILLIS = 1000;
+    private static final double SPIKE_MV = 3.0;
+    private static final long SPIKE_INTERVAL_MILLIS = 2000;
+
+    private final OutputStrategy delegate;
+    private final long originMillis;
+    private final double incidentsPerMilli;
+    private final long episodeMillis;
+    private final RandomStreams streams;
+    private final Scenario[] scenarios = Scenario.values();
+    // The scripted episodes by patient; not changed after construction
+    private final Map<Integer, List<Episode>> scripted = new HashMap<>();
+    // Patients with scripted episodes, and with an incident rate every patient seen,
+    // from their first sample to their discharge
+    private final ConcurrentHashMap<Integer, PatientEpisodes> patients;
+
+    private final AtomicLong startedEpisodes = new AtomicLong();
+    private final AtomicLong modifiedSamples = new AtomicLong();
+    private final AtomicLong addedSamples = new AtomicLong();
+
+    /**
+     * @param delegate                the strategy receiving the samples
+     * @param patientCount            the expected number of patients
+     * @param originMillis            the start of the simulation, to which episode offsets refer
+     * @param scripted                the scripted episodes
+     * @param incidentsPerPatientHour the rate of random episodes, or 0 for scripted episodes only
+     * @param episodeMillis           the duration of random episodes
+     * @param streams                 the source of each patient's random episodes
+     */
+    public ScenarioOutputStrategy(OutputStrategy delegate, int patientCount, long originMillis,
+                                  List<Episode> scripted, double incidentsPerPatientHour, long episodeMillis,
+                                  RandomStreams streams) {
+        if (incidentsPerPatientHour < 0 || episodeMillis <= 0) {
+            throw new IllegalArgumentException("Incident rate must not be negative and episodes must have a duration");
+        }
+        this.delegate = delegate;
+        this.originMillis = originMillis;
+        this.incidentsPerMilli = incidentsPerPatientHour / TimeUnit.HOURS.toMillis(1);
+        this.episodeMillis = episodeMillis;
+        this.streams = streams;
+        this.patients = new ConcurrentHashMap<>(Math.max(16, patientCount * 4 / 3 + 1));
+        for (Episode episode : scripted) {
+            int id = episode.getPatientId();
+            if (id < 1) {
+                System.err.println("Ignoring episode for unknown patient " + id);
+                continue;
+            }
+            this.scripted.computeIfAbsent(id, patient -> new ArrayList<>()).add(episode);
+        }
+    }
+
+    // Random incidents of a patient follow from the seed, whenever the patient is first
+    // seen; a readmitted patient gets the same ones and its scripted episodes again
+    private PatientEpisodes createEpisodes(int patientId) {
+        PatientEpisodes state;
+        if (incidentsPerMilli == 0) {
+            state = new PatientEpisodes(null);
+        } else {
+            state = new PatientEpisodes(streams.forPatient("scenario", patientId));
+            state.nextIncidentMillis = originMillis + nextInterval(state.random);
+        }
+        for (Episode episode : scripted.getOrDefault(patientId, Collections.emptyList())) {
+            state.episodes.add(new ActiveEpisode(episode.getScenario(),
+                    originMillis + episode.getStartOffsetMillis(), episode.getDurationMillis(), 0));
+        }
+        return state;
+    }
+
+    /**
+     * Text samples pass unchanged; the generators send their values as numbers.
+     */
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        delegate.output(patientId, timestamp, label, data);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+        PatientEpisodes state = stateOf(patientId);
+        if (state == null) {
+            delegate.output(patientId, timestamp, signalCode, value);
+            return;
+        }
+        double heartRate;
+        double result;
+        synchronized (state) {
+            advance(state, timestamp);
+            result = apply(state, signalCode, timestamp, value);
+            heartRate = signalCode == SignalCode.ECG ? heartRate(state, timestamp) : Double.NaN;
+        }
+        if (result != value) {
+            modifiedSamples.incrementAndGet();
+        }
+        delegate.output(patientId, timestamp, signalCode, result);
+        if (!Double.isNaN(heartRate)) {
+            addedSamples.incrementAndGet();
+            delegate.output(patientId, timestamp, SignalCode.HEART_RATE, heartRate);
+        }
+    }
+
+    /**
+     * Changes a copy of the block if an episode affects it; the caller's arrays are left as they are.
+     */
+    @Override
+    public void output(int patientId, SignalCode signalCode, long[] timestamps, double[] values, int count) {
+        PatientEpisodes state = stateOf(patientId);
+        if (state == null || count == 0) {
+            delegate.output(patientId, signalCode, timestamps, values, count);
+            return;
+        }
+        double[] results = values;
+        int modified = 0;
+        long heartRateTimestamp = 0;
+        double heartRate = Double.NaN;
+        synchronized (state) {
+            for (int i = 0; i < count; i++) {
+                advance(state, timestamps[i]);
+                double result = apply(state, signalCode, timestamps[i], values[i]);
+                if (result != values[i]) {
+                    if (results == values) {
+                        results = values.clone();
+                    }
+                    results[i] = result;
+                    modified++;
+                }
+            }
+            if (signalCode == SignalCode.ECG) {
+                heartRateTimestamp = timestamps[count - 1];
+                heartRate = heartRate(state, heartRateTimestamp);
+            }
+        }
+        modifiedSamples.addAndGet(modified);
+        delegate.output(patientId, signalCode, timestamps, results, count);
+        if (!Double.isNaN(heartRate)) {
+            addedSamples.incrementAndGet();
+            delegate.output(patientId, heartRateTimestamp, SignalCode.HEART_RATE, heartRate);
+        }
+    }
+
+    // Null if the patient has nothing to overlay
+    private PatientEpisodes stateOf(int patientId) {
+        PatientEpisodes state = patients.get(patientId);
+        if (state == null && patientId > 0 && (incidentsPerMilli > 0 || scripted.containsKey(patientId))) {
+            state = patients.computeIfAbsent(patientId, this::createEpisodes);
+        }
+        return state;
+    }
+
+    // Caller holds the patient's lock: starts due random episodes, drops ended ones
+    private void advance(PatientEpisodes state, long timestamp) {
+        while (state.random != null && timestamp >= state.nextIncidentMillis) {
+            long start = state.nextIncidentMillis;
+            Scenario scenario = scenarios[state.random.nextInt(scenarios.length)];
+            state.episodes.add(new ActiveEpisode(scenario, start, episodeMillis, state.random.nextDouble()));
+            state.nextIncidentMillis = start + episodeMillis + nextInterval(state.random);
+        }
+        Iterator<ActiveEpisode> episodes = state.episodes.iterator();
+        while (episodes.hasNext()) {
+            ActiveEpisode episode = episodes.next();
+            if (timestamp >= episode.endMillis) {
+                episodes.remove();
+            } else if (!episode.started && timestamp >= episode.startMillis) {
+                episode.started = true;
+                startedEpisodes.incrementAndGet();
+            }
+        }
+    }
+
+    // Caller holds the patient's lock
+    private double apply(PatientEpisodes state, SignalCode signalCode, long timestamp, double value) {
+        for (ActiveEpisode episode : state.episodes) {
+            if (timestamp < episode.startMillis) {
+                continue;
+            }
+            double progress = episode.progress(timestamp);
+            boolean hypotensive = episode.scenario == Scenario.HYPOTENSION
+                    || episode.scenario == Scenario.HYPOTENSIVE_HYPOXEMIA;
+            boolean hypoxemic = episode.scenario == Scenario.DESATURATION
+                    || episode.scenario == Scenario.HYPOTENSIVE_HYPOXEMIA;
+            if (hypotensive && signalCode == SignalCode.SYSTOLIC_PRESSURE) {
+                value += (HYPOTENSIVE_SYSTOLIC - value) * progress;
+            } else if (hypotensive && signalCode == SignalCode.DIASTOLIC_PRESSURE) {
+                value += (HYPOTENSIVE_DIASTOLIC - value) * progress;
+            } else if (hypoxemic && signalCode == SignalCode.SATURATION) {
+                value -= DESATURATION_DROP * progress;
+            } else if (episode.scenario == Scenario.ECG_SPIKES && signalCode == SignalCode.ECG
+                    && timestamp >= state.nextSpikeMillis) {
+                value += SPIKE_MV;
+                state.nextSpikeMillis = timestamp + SPIKE_INTERVAL_MILLIS;
+            }
+        }
+        return value;
+    }
+
+    // Caller holds the patient's lock; NaN unless a heart rate sample is due
+    private double heartRate(PatientEpisodes state, long timestamp) {
+        for (ActiveEpisode episode : state.episodes) {
+            if (episode.scenario == Scenario.TACHYCARDIA && timestamp >= episode.startMillis
+                    && timestamp >= state.nextHeartRateMillis) {
+                state.nextHeartRateMillis = timestamp + HEART_RATE_INTERVAL_MILLIS;
+                double peak = 140 + 30 * episode.severity;
+                return Math.round(RESTING_HEART_RATE + (peak - RESTING_HEART_RATE) * episode.progress(timestamp));
+            }
+        }
+        return Double.NaN;
+    }
+
+    // Exponentially distributed time to the next incident
+    private long nextInterval(SplittableRandom random) {
+        return (long) (-Math.log(1 - random.nextDouble()) / incidentsPerMilli);
+    }
+
+    /**
+     * Forgets the patient's episodes and passes the discharge on.
+     */
+    @Override
+    public void discharge(int patientId) {
+        patients.remove(patientId);
+        delegate.discharge(patientId);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * @return the number of patients whose episodes are currently held
+     */
+    public int getTrackedPatients() {
+        return patients.size();
+    }
+
+    /**
+     * @return the number of episodes that have started so far
+     */
+    public long getStartedEpisodes() {
+        return startedEpisodes.get();
+    }
+
+    /**
+     * @return the number of samples whose value an episode changed
+     */
+    public long getModifiedSamples() {
+        return modifiedSamples.get();
+    }
+
+    /**
+     * @return the number of heart rate samples added for tachycardia
+     */
+    public long getAddedSamples() {
+        return addedSamples.get();
+    }
+
+    // The episodes of one patient; guarded by its own lock
+    private static final class PatientEpisodes {
+        // Null if the patient has scripted episodes only
+        final SplittableRandom random;
+        final List<ActiveEpisode> episodes = new ArrayList<>(2);
+        long nextIncidentMillis = Long.MAX_VALUE;
+        long nextSpikeMillis;
+        long nextHeartRateMillis;
+
+        PatientEpisodes(SplittableRandom random) {
+            this.random = random;
+        }
+    }
+
+    private static final class ActiveEpisode {
+        final Scenario scenario;
+        final long startMillis;
+        final long endMillis;
+        final long rampMillis;
+        // Between 0 and 1, scales the peak of a random episode
+        final double severity;
+        boolean started;
+
+        ActiveEpisode(Scenario scenario, long startMillis, long durationMillis, double severity) {
+            this.scenario = scenario;
+            this.startMillis = startMillis;
+            this.endMillis = startMillis + durationMillis;
+            this.rampMillis = Math.max(1, Math.min(durationMillis / 2, MAX_RAMP_MILLIS));
+            this.severity = severity;
+        }
+
+        // 0 at the start, 1 once the ramp is over
+        double progress(long timestamp) {
+            return Math.min(1.0, (double) (timestamp - startMillis) / rampMillis);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.cardio_generator.outputs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the closed segments in a {@link FileOutputStrategy} directory. Every closed
+ * segment gets one "file,label,minTimestamp,maxTimestamp,lines" line in
+ * {@value #FILE_NAME}, which lets readers skip segments outside a time window without
+ * opening them.
+ */
+public class SegmentManifest {
+
+    public static final String FILE_NAME = "manifest.csv";
+
+    private final Path file;
+
+    public SegmentManifest(Path directory) {
+        this.file = directory.resolve(FILE_NAME);
+    }
+
+    /**
+     * Appends the entry of a segment that has just been closed.
+     */
+    public synchronized void append(Entry entry) throws IOException {
+        String line = entry.getFileName() + "," + entry.getLabel() + "," + entry.getMinTimestamp() + ","
+                + entry.getMaxTimestamp() + "," + entry.getLines() + System.lineSeparator();
+        Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads the manifest of a directory.
+     *
+     * @return the entries, empty if the directory has no manifest
+     */
+    public static List<Entry> read(Path directory) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length != 5) {
+                    continue;
+                }
+                try {
+                    entries.add(new Entry(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                            Long.parseLong(parts[4])));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping malformed manifest line: " + line);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * A closed segment and the range of timestamps it contains.
+     */
+    public static class Entry {
+        private final String fileName;
+        private final String label;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+        private final long lines;
+
+        public Entry(String fileName, String label, long minTimestamp, long maxTimestamp, long lines) {
+            this.fileName = fileName;
+            this.label = label;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.lines = lines;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getMinTimestamp() {
+            return minTimestamp;
+        }
+
+        public long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * @return whether the segment may contain samples between the two timestamps
+         */
+        public boolean overlaps(long startTime, long endTime) {
+            return minTimestamp <= endTime && maxTimestamp >= startTime;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.cardio_generator.outputs;
+
+/**
+ * Rotation settings for {@link FileOutputStrategy}. The active file of a label is closed
+ * and renamed to a numbered segment once it reaches {@code maxSegmentBytes} or has been
+ * open for {@code maxSegmentMillis}; a limit of 0 disables that trigger. Closed segments
+ * can optionally be compressed with gzip.
+ */
+public class SegmentPolicy {
+
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    private final boolean compress;
+
+    /**
+     * @param maxSegmentBytes  size after which a segment is closed, or 0
+     * @param maxSegmentMillis age after which a segment is closed, or 0
+     * @param compress         whether closed segments are gzip compressed
+     */
+    public SegmentPolicy(long maxSegmentBytes, long maxSegmentMillis, boolean compress) {
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentMillis = maxSegmentMillis;
+        this.compress = compress;
+    }
+
+    /**
+     * @return a policy that never rotates, i.e. one unbounded file per label
+     */
+    public static SegmentPolicy none() {
+        return new SegmentPolicy(0, 0, false);
+    }
+
+    public boolean isRotating() {
+        return maxSegmentBytes > 0 || maxSegmentMillis > 0;
+    }
+
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public long getMaxSegmentMillis() {
+        return maxSegmentMillis;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+}
@@ -0,0 +1,100 @@
+package com.cardio_generator.outputs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps (patient, label) pairs to the subscribers interested in them. A subscriber
+ * registers a set of patient ids and a set of labels, where {@code null} stands for
+ * every patient or every label. Finding the subscribers of a sample costs six hash
+ * lookups at most, however many subscribers there are.
+ *
+ * Not thread-safe; callers synchronize.
+ *
+ * @param <S> the subscriber type
+ */
+final class SubscriptionIndex<S> {
+
+    // patient id (null = any) -> label (null = any) -> subscribers
+    private final Map<Integer, Map<String, List<S>>> index = new HashMap<>();
+    private int size;
+
+    /**
+     * Registers a subscriber for every combination of the given patients and labels.
+     *
+     * @param subscriber the subscriber
+     * @param patients   the patient ids, or {@code null} for all patients
+     * @param labels     the labels, or {@code null} for all labels
+     */
+    void add(S subscriber, Set<Integer> patients, Set<String> labels) {
+        for (Integer patientId : patients != null ? patients : Collections.<Integer>singleton(null)) {
+            Map<String, List<S>> byLabel = index.computeIfAbsent(patientId, p -> new HashMap<>());
+            for (String label : labels != null ? labels : Collections.<String>singleton(null)) {
+                byLabel.computeIfAbsent(label, l -> new ArrayList<>(2)).add(subscriber);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Removes every registration of a subscriber.
+     */
+    void remove(S subscriber) {
+        boolean removed = false;
+        Iterator<Map<String, List<S>>> patients = index.values().iterator();
+        while (patients.hasNext()) {
+            Map<String, List<S>> byLabel = patients.next();
+            Iterator<List<S>> labels = byLabel.values().iterator();
+            while (labels.hasNext()) {
+                List<S> subscribers = labels.next();
+                removed |= subscribers.remove(subscriber);
+                if (subscribers.isEmpty()) {
+                    labels.remove();
+                }
+            }
+            if (byLabel.isEmpty()) {
+                patients.remove();
+            }
+        }
+        if (removed) {
+            size--;
+        }
+    }
+
+    /**
+     * Adds every subscriber interested in the given sample to {@code matches}, once each.
+     */
+    void collectMatches(int patientId, String label, List<S> matches) {
+        if (size == 0) {
+            return;
+        }
+        collectLabel(index.get(patientId), label, matches);
+        collectLabel(index.get(null), label, matches);
+    }
+
+    private void collectLabel(Map<String, List<S>> byLabel, String label, List<S> matches) {
+        if (byLabel == null) {
+            return;
+        }
+        List<S> subscribers = byLabel.get(label);
+        if (subscribers != null) {
+            matches.addAll(subscribers);
+        }
+        subscribers = byLabel.get(null);
+        if (subscribers != null) {
+            matches.addAll(subscribers);
+        }
+    }
+
+    /**
+     * @return the number of registered subscribers
+     */
+    int size() {
+        return size;
+    }
+}
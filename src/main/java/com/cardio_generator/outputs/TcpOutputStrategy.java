@@ -1,53 +1,176 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.BinaryFrameCodec;
+import com.data_management.SampleBatch;
+import com.data_management.SignalCode;
+import com.data_management.TcpDataReader;
+import com.data_management.WireFormat;
+
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.Executors;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * {@code TcpOutputStrategy} is an implementation of the {@link OutputStrategy} interface.
- * It creates a TCP server that listens for client connections on a specified port. 
- * Once a client connects, patient data is transmitted to the client as a formatted string.
+ * It creates a TCP server that accepts any number of client connections on a specified port
+ * and streams every sample to all of them as a "patientId,timestamp,label,data" line.
+ *
+ * A single selector thread accepts clients and does all socket writes. Each sample is
+ * formatted once and appended to a bounded outbound buffer per client, so generator threads
+ * never wait on the network, and samples that pile up while a write is in progress go out
+ * together in the next write. When a client reads too slowly to keep its buffer from filling
+ * up, the {@link SlowClientPolicy} decides whether further samples for it are dropped or the
+ * client is disconnected.
  *
- * The {@code output} method sends a message containing patient data to the connected client 
- * over the TCP connection. 
+ * With {@link WireFormat#BINARY} samples are collected into {@link BinaryFrameCodec} frames
+ * of up to 1024 samples, which are encoded once and sent when full or 20 ms after their
+ * first sample.
+ *
+ * Instead of listening, the strategy can push to an aggregator: it then keeps a single
+ * outbound connection to the given address, reconnecting a second after it fails, and
+ * treats it like a client. Several simulators can so feed one {@code TcpDataReader}
+ * that listens for them. Every connection starts with a hello line carrying an id that
+ * stays the same across reconnects, so the reader counts this simulator once.
  */
 
 public class TcpOutputStrategy implements OutputStrategy {
 
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private PrintWriter out;
+    /**
+     * What to do with a client whose outbound buffer is full.
+     */
+    public enum SlowClientPolicy {
+        /** Discard samples for the client until its buffer has room again. */
+        DROP,
+        /** Close the connection; the client can reconnect and catch up. */
+        DISCONNECT
+    }
 
-/**
- * Constructs a {@code TcpOutputStrategy} that listens for incoming client connections
- * on the specified TCP port. Once a client connects, data can be streamed to the client.
- *
- * This constructor starts a new thread to accept the client connection.
- *
- * @param port the port number on which the TCP server socket listens
- *
- * @throws IOException if the server socket fails to open or bind to the specified port
- */
+    private static final int DEFAULT_BUFFER_BYTES = 1 << 20;
+    private static final int FRAME_SAMPLES = 1024;
+    private static final long FRAME_INTERVAL_MILLIS = 20;
+    private static final int RECONNECT_DELAY_MILLIS = 1000;
+
+    private final int bufferBytes;
+    private final SlowClientPolicy slowClientPolicy;
+    private final WireFormat wireFormat;
+    // The address pushed to, or null when listening for clients
+    private final InetSocketAddress aggregator;
+    // Sent first on every connection to the aggregator
+    private final byte[] hello;
+    // When the selector thread next tries to connect to the aggregator
+    private volatile long reconnectAt;
+    // Samples of the binary frame being collected; guarded by itself
+    private final SampleBatch frame = new SampleBatch(FRAME_SAMPLES);
+    private long frameStartedMillis;
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
 
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    // Clients that received data since the selector thread last looked at them
+    private final Queue<Client> pendingClients = new ConcurrentLinkedQueue<>();
 
+    private final AtomicLong sentSamples = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private final AtomicLong disconnectedClients = new AtomicLong();
+
+    /**
+     * Constructs a {@code TcpOutputStrategy} that listens on the specified TCP port, gives
+     * every client a 1 MB outbound buffer and drops samples for clients that fall behind.
+     *
+     * @param port the port number on which the TCP server socket listens
+     */
     public TcpOutputStrategy(int port) {
+        this(port, DEFAULT_BUFFER_BYTES, SlowClientPolicy.DROP);
+    }
+
+    /**
+     * Constructs a {@code TcpOutputStrategy} that listens on the specified TCP port.
+     * The server socket is opened and the selector thread started before returning.
+     *
+     * @param port             the port number on which the TCP server socket listens,
+     *                         or 0 for any free port
+     * @param bufferBytes      the size of each client's outbound buffer
+     * @param slowClientPolicy what to do with a client whose buffer is full
+     */
+    public TcpOutputStrategy(int port, int bufferBytes, SlowClientPolicy slowClientPolicy) {
+        this(port, bufferBytes, slowClientPolicy, WireFormat.TEXT);
+    }
+
+    /**
+     * Constructs a {@code TcpOutputStrategy} that listens on the specified TCP port and
+     * sends samples in the given wire format.
+     *
+     * @param port             the port number on which the TCP server socket listens,
+     *                         or 0 for any free port
+     * @param bufferBytes      the size of each client's outbound buffer
+     * @param slowClientPolicy what to do with a client whose buffer is full
+     * @param wireFormat       text lines or binary frames
+     */
+    public TcpOutputStrategy(int port, int bufferBytes, SlowClientPolicy slowClientPolicy, WireFormat wireFormat) {
+        this.bufferBytes = bufferBytes;
+        this.slowClientPolicy = slowClientPolicy;
+        this.wireFormat = wireFormat;
+        this.aggregator = null;
+        this.hello = null;
         try {
-            serverSocket = new ServerSocket(port);
-            System.out.println("TCP Server started on port " + port);
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            running = true;
+            selectorThread = new Thread(this::runSelector, "tcp-output-" + getLocalPort());
+            selectorThread.setDaemon(true);
+            selectorThread.start();
+            System.out.println("TCP Server started on port " + getLocalPort());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            // Accept clients in a new thread to not block the main thread
-            Executors.newSingleThreadExecutor().submit(() -> {
-                try {
-                    clientSocket = serverSocket.accept();
-                    out = new PrintWriter(clientSocket.getOutputStream(), true);
-                    System.out.println("Client connected: " + clientSocket.getInetAddress());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
+    /**
+     * Constructs a {@code TcpOutputStrategy} that pushes samples to an aggregator instead
+     * of listening. The first connection attempt is made before returning, so that no
+     * samples are lost to a slow start; if it fails, the selector thread keeps trying.
+     * Samples generated while there is no connection are discarded.
+     *
+     * @param aggregator       the address of the listening reader
+     * @param bufferBytes      the size of the outbound buffer
+     * @param slowClientPolicy what to do when the buffer is full; with
+     *                         {@link SlowClientPolicy#DISCONNECT} the connection is
+     *                         re-established a second later
+     * @param wireFormat       text lines or binary frames
+     */
+    public TcpOutputStrategy(InetSocketAddress aggregator, int bufferBytes, SlowClientPolicy slowClientPolicy,
+                             WireFormat wireFormat) {
+        this.bufferBytes = bufferBytes;
+        this.slowClientPolicy = slowClientPolicy;
+        this.wireFormat = wireFormat;
+        this.aggregator = aggregator;
+        this.hello = (TcpDataReader.HELLO_PREFIX + UUID.randomUUID() + "\n").getBytes(StandardCharsets.US_ASCII);
+        try {
+            selector = Selector.open();
+            connectToAggregator();
+            running = true;
+            selectorThread = new Thread(this::runSelector, "tcp-push-" + aggregator.getPort());
+            selectorThread.setDaemon(true);
+            selectorThread.start();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -55,9 +178,352 @@ public class TcpOutputStrategy implements OutputStrategy {
 
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        if (out != null) {
-            String message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
-            out.println(message);
+        if (clients.isEmpty()) {
+            return;
+        }
+        if (wireFormat == WireFormat.BINARY) {
+            addToFrame(patientId, timestamp, label, BinaryFrameCodec.toValue(data));
+            return;
+        }
+        StringBuilder line = new StringBuilder(label.length() + data.length() + 32)
+                .append(patientId).append(',')
+                .append(timestamp).append(',')
+                .append(label).append(',')
+                .append(data).append('\n');
+        publish(line.toString().getBytes(StandardCharsets.UTF_8), 1);
+    }
+
+    // Binary frames take the value as is; text lines format it straight into the line
+    @Override
+    public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        String label = signalCode.requireLabel();
+        if (wireFormat == WireFormat.BINARY) {
+            addToFrame(patientId, timestamp, label, value);
+            return;
+        }
+        StringBuilder line = new StringBuilder(label.length() + 56)
+                .append(patientId).append(',')
+                .append(timestamp).append(',')
+                .append(label).append(',');
+        signalCode.appendValue(line, value).append('\n');
+        publish(line.toString().getBytes(StandardCharsets.UTF_8), 1);
+    }
+
+    private void addToFrame(int patientId, long timestamp, String label, double value) {
+        synchronized (frame) {
+            if (frame.isEmpty()) {
+                frameStartedMillis = System.currentTimeMillis();
+            }
+            frame.add(patientId, value, label, timestamp);
+            if (frame.isFull()) {
+                publishFrame();
+            }
+        }
+    }
+
+    // Caller holds the frame lock
+    private void publishFrame() {
+        if (!frame.isEmpty()) {
+            publish(BinaryFrameCodec.encode(frame, true), frame.size());
+            frame.clear();
+        }
+    }
+
+    // Sends a binary frame whose first sample has waited long enough
+    private void publishFrameIfDue() {
+        synchronized (frame) {
+            if (!frame.isEmpty() && System.currentTimeMillis() - frameStartedMillis >= FRAME_INTERVAL_MILLIS) {
+                publishFrame();
+            }
+        }
+    }
+
+    // Appends encoded samples to every client's buffer
+    private void publish(byte[] bytes, int samples) {
+        boolean wakeup = false;
+        for (Client client : clients) {
+            switch (client.enqueue(bytes)) {
+                case QUEUED:
+                    sentSamples.addAndGet(samples);
+                    break;
+                case SCHEDULED:
+                    sentSamples.addAndGet(samples);
+                    pendingClients.add(client);
+                    wakeup = true;
+                    break;
+                case FULL:
+                    droppedSamples.addAndGet(samples);
+                    if (slowClientPolicy == SlowClientPolicy.DISCONNECT) {
+                        disconnect(client, "outbound buffer full");
+                    }
+                    break;
+            }
+        }
+        if (wakeup) {
+            selector.wakeup();
+        }
+    }
+
+    // Selector loop: accepts clients, flushes pending output and notices disconnects
+    private void runSelector() {
+        ByteBuffer discard = ByteBuffer.allocate(512);
+        while (running) {
+            try {
+                if (wireFormat == WireFormat.BINARY) {
+                    selector.select(FRAME_INTERVAL_MILLIS);
+                    publishFrameIfDue();
+                } else {
+                    selector.select(aggregator != null ? RECONNECT_DELAY_MILLIS : 0);
+                }
+                if (aggregator != null && clients.isEmpty() && System.currentTimeMillis() >= reconnectAt) {
+                    connectToAggregator();
+                }
+                Client pending;
+                while ((pending = pendingClients.poll()) != null) {
+                    flush(pending);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    if (key.isReadable() && !readDiscarding(client, discard)) {
+                        continue;
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(client);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Client client = new Client(channel, bufferBytes);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        System.out.println("Client connected: " + channel.getRemoteAddress());
+    }
+
+    // Connects in blocking mode, which for the one connection of the push mode costs
+    // the selector thread no more than the connect timeout
+    private void connectToAggregator() {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.socket().connect(aggregator, RECONNECT_DELAY_MILLIS);
+            channel.configureBlocking(false);
+            Client client = new Client(channel, bufferBytes);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            client.enqueue(hello);
+            pendingClients.add(client);
+            clients.add(client);
+            System.out.println("Connected to aggregator at " + aggregator);
+        } catch (IOException e) {
+            reconnectAt = System.currentTimeMillis() + RECONNECT_DELAY_MILLIS;
+            System.err.println("Could not connect to aggregator at " + aggregator + ": " + e.getMessage());
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already failed
+                }
+            }
+        }
+    }
+
+    // Clients are not expected to send anything; read only to notice EOF and resets
+    private boolean readDiscarding(Client client, ByteBuffer discard) {
+        try {
+            discard.clear();
+            if (client.channel.read(discard) >= 0) {
+                return true;
+            }
+            disconnect(client, "closed by client");
+        } catch (IOException e) {
+            disconnect(client, e.getMessage());
+        }
+        return false;
+    }
+
+    // Writes as much buffered data as the socket takes and waits for OP_WRITE if it stalls
+    private void flush(Client client) {
+        try {
+            boolean drained = client.write();
+            if (client.key.isValid()) {
+                client.key.interestOps(drained
+                        ? SelectionKey.OP_READ
+                        : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            disconnect(client, e.getMessage());
+        }
+    }
+
+    private void disconnect(Client client, String reason) {
+        if (clients.remove(client)) {
+            disconnectedClients.incrementAndGet();
+            System.out.println("Client disconnected (" + reason + ")");
+            if (aggregator != null) {
+                reconnectAt = System.currentTimeMillis() + RECONNECT_DELAY_MILLIS;
+                selector.wakeup();
+            }
+        }
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Stops the selector thread and closes the server socket, or the connection to the
+     * aggregator, and all client connections.
+     * Output still buffered for clients is discarded, except that the aggregator is
+     * given up to a second to take what is buffered for it.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (aggregator != null) {
+            drainToAggregator();
+        }
+        for (Client client : clients) {
+            disconnect(client, "server closed");
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // A pushing simulator that finishes, e.g. after a virtual-time run, should not lose its tail
+    private void drainToAggregator() {
+        synchronized (frame) {
+            publishFrame();
+        }
+        long deadline = System.currentTimeMillis() + RECONNECT_DELAY_MILLIS;
+        for (Client client : clients) {
+            try {
+                while (!client.write() && System.currentTimeMillis() < deadline) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            } catch (IOException e) {
+                disconnect(client, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the port the server socket is bound to, or -1 if it could not be opened or
+     *         the strategy pushes to an aggregator
+     */
+    public int getLocalPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * @return the number of sample copies queued for clients (one per client per sample)
+     */
+    public long getSentSamples() {
+        return sentSamples.get();
+    }
+
+    /**
+     * @return the number of sample copies discarded because a client's buffer was full
+     */
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    public long getDisconnectedClients() {
+        return disconnectedClients.get();
+    }
+
+    private enum EnqueueResult { QUEUED, SCHEDULED, FULL }
+
+    // One connected client and the bytes not yet written to it
+    private static class Client {
+        final SocketChannel channel;
+        final ByteBuffer outbound;
+        SelectionKey key;
+        // True while the selector thread owes this client a flush; guarded by outbound
+        private boolean scheduled;
+
+        Client(SocketChannel channel, int bufferBytes) {
+            this.channel = channel;
+            this.outbound = ByteBuffer.allocate(bufferBytes);
+        }
+
+        /**
+         * Appends a line. Returns SCHEDULED when the selector thread must be told about
+         * the new data, QUEUED when a flush is already on its way.
+         */
+        EnqueueResult enqueue(byte[] line) {
+            synchronized (outbound) {
+                if (outbound.remaining() < line.length) {
+                    return EnqueueResult.FULL;
+                }
+                outbound.put(line);
+                if (scheduled) {
+                    return EnqueueResult.QUEUED;
+                }
+                scheduled = true;
+                return EnqueueResult.SCHEDULED;
+            }
+        }
+
+        /**
+         * Writes buffered bytes without blocking.
+         *
+         * @return true if everything was written
+         */
+        boolean write() throws IOException {
+            synchronized (outbound) {
+                outbound.flip();
+                channel.write(outbound);
+                boolean drained = !outbound.hasRemaining();
+                outbound.compact();
+                scheduled = !drained;
+                return drained;
+            }
         }
     }
 }
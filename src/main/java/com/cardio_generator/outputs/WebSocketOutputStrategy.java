@@ -1,48 +1,649 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.BinaryFrameCodec;
+import com.data_management.SampleBatch;
+import com.data_management.SignalCode;
+import com.data_management.WireFormat;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
 import org.java_websocket.server.WebSocketServer;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * {@code WebSocketOutputStrategy} broadcasts every sample to all connected WebSocket
+ * clients as a "patientId,timestamp,label,data" line.
+ *
+ * Each sample is formatted once. Samples produced within a short coalescing interval are
+ * joined with newlines and broadcast as a single text frame, which the server frames
+ * once and hands to every connection, so the number of frames no longer grows with
+ * samples times clients. With an interval of 0 every sample is broadcast on its own.
+ * Clients that negotiate it can receive permessage-deflate compressed frames. With
+ * {@link WireFormat#BINARY} the samples of a frame are sent as one binary message holding
+ * a {@link BinaryFrameCodec} frame instead of text lines.
+ *
+ * A client that only needs some of the data can send
+ * {@code {"type":"subscribe","patients":[1,2],"labels":["ECG"],"rate":10}}. All fields
+ * are optional: a missing {@code patients} or {@code labels} means all of them, and
+ * {@code rate} limits each patient and label to that many samples per second of sample
+ * time. Subscribed clients are found through an index from (patient, label) to
+ * subscribers, so a sample only costs work for the connections that want it.
+ * {@code {"type":"unsubscribe"}} goes back to receiving everything.
+ *
+ * The most recent samples are kept in a replay history of configurable size. A client
+ * that reconnects can send {@code {"type":"resume","since":<timestamp>}} to receive every
+ * sample with a timestamp at or after {@code since} that is still in the history, so
+ * short outages leave no gaps. A history size of 0 keeps no history.
+ *
+ * Frames are encoded under the lock that orders samples, but sent outside it: they go
+ * to an outbox that one thread at a time empties, so a generator thread never waits
+ * for another one's sends. A replay is encoded from a copy of the history on the
+ * thread that received the resume request.
+ */
 public class WebSocketOutputStrategy implements OutputStrategy {
 
-    private WebSocketServer server;
+    /** The number of samples kept for replay unless another size is given. */
+    public static final int DEFAULT_HISTORY_SIZE = 500_000;
+    // Samples older than this are dropped from the history whatever its size
+    private static final long HISTORY_MILLIS = 5 * 60 * 1000;
 
+    // Every sample is its own frame unless batching is asked for
+    private static final long DEFAULT_COALESCE_MILLIS = 0;
+    // A pending frame is sent early once it reaches this many characters or samples
+    private static final int MAX_FRAME_CHARS = 64 * 1024;
+    private static final int MAX_FRAME_SAMPLES = 4096;
+
+    private final WebSocketServer server;
+    private final long coalesceMillis;
+    private final boolean compress;
+    private final WireFormat wireFormat;
+    private final ScheduledExecutorService flusher;
+    private final int historySize;
+
+    // Sent messages, oldest first; also guards ordering between broadcasts and replays
+    private final Deque<HistoryEntry> history = new ArrayDeque<>();
+    // Encoded frames in the order they must go out; guarded by history
+    private final Deque<Outgoing> outbox = new ArrayDeque<>();
+    // Held by the one thread that empties the outbox
+    private final ReentrantLock sending = new ReentrantLock();
+    // Samples waiting for the next frame to unsubscribed clients; guarded by history
+    private final FrameBuffer pending;
+    // Connections without a subscription, which receive every sample; guarded by history
+    private final Set<WebSocket> firehose = new HashSet<>();
+    // Guarded by history
+    private final Map<WebSocket, Subscription> subscriptions = new HashMap<>();
+    private final SubscriptionIndex<Subscription> subscriptionIndex = new SubscriptionIndex<>();
+    private final List<Subscription> matches = new ArrayList<>();
+    private long broadcastFrames;
+    private long broadcastSamples;
+
+    /**
+     * Creates a server on the given port that sends every sample as its own frame and
+     * does not compress.
+     *
+     * @param port the port to listen on
+     */
     public WebSocketOutputStrategy(int port) {
-        server = new SimpleWebSocketServer(new InetSocketAddress(port));
+        this(port, DEFAULT_COALESCE_MILLIS, false);
+    }
+
+    /**
+     * Creates a server on the given port.
+     *
+     * @param port           the port to listen on
+     * @param coalesceMillis how long samples are collected into one frame; 0 sends every
+     *                       sample as its own frame
+     * @param compress       whether to offer permessage-deflate to clients
+     */
+    public WebSocketOutputStrategy(int port, long coalesceMillis, boolean compress) {
+        this(port, coalesceMillis, compress, WireFormat.TEXT);
+    }
+
+    /**
+     * Creates a server on the given port that sends samples in the given wire format.
+     *
+     * @param port           the port to listen on
+     * @param coalesceMillis how long samples are collected into one frame; 0 sends every
+     *                       sample as its own frame
+     * @param compress       whether to offer permessage-deflate to clients
+     * @param wireFormat     text lines or binary frames
+     */
+    public WebSocketOutputStrategy(int port, long coalesceMillis, boolean compress, WireFormat wireFormat) {
+        this(port, coalesceMillis, compress, wireFormat, DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * Creates a server on the given port that keeps the given number of samples for
+     * clients that resume.
+     *
+     * @param port           the port to listen on
+     * @param coalesceMillis how long samples are collected into one frame; 0 sends every
+     *                       sample as its own frame
+     * @param compress       whether to offer permessage-deflate to clients
+     * @param wireFormat     text lines or binary frames
+     * @param historySize    the number of samples kept for replay, 0 for none
+     */
+    public WebSocketOutputStrategy(int port, long coalesceMillis, boolean compress, WireFormat wireFormat,
+                                   int historySize) {
+        if (historySize < 0) {
+            throw new IllegalArgumentException("History size must not be negative");
+        }
+        this.historySize = historySize;
+        this.coalesceMillis = coalesceMillis;
+        this.compress = compress;
+        this.wireFormat = wireFormat;
+        this.pending = new FrameBuffer(wireFormat);
+        List<Draft> drafts = compress
+                ? Collections.singletonList(new Draft_6455(new PerMessageDeflateExtension()))
+                : Collections.singletonList(new Draft_6455());
+        server = new SimpleWebSocketServer(new InetSocketAddress(port), drafts);
         System.out.println("WebSocket server created on port: " + port + ", listening for connections...");
         server.start();
+
+        if (coalesceMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "websocket-output-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(this::flush, coalesceMillis, coalesceMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
     }
 
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        String message = String.format("%d,%d,%s,%s", patientId, data, label, timestamp);
-        // Broadcast the message to all connected clients
-        for (WebSocket conn : server.getConnections()) {
-            conn.send(message);
+        HistoryEntry entry;
+        if (wireFormat == WireFormat.BINARY) {
+            entry = new HistoryEntry(patientId, timestamp, label, BinaryFrameCodec.toValue(data), null);
+        } else {
+            String message = new StringBuilder(label.length() + data.length() + 32)
+                    .append(patientId).append(',')
+                    .append(timestamp).append(',')
+                    .append(label).append(',')
+                    .append(data)
+                    .toString();
+            entry = new HistoryEntry(patientId, timestamp, label, Double.NaN, message);
         }
+        publish(entry);
     }
 
-    private static class SimpleWebSocketServer extends WebSocketServer {
+    // Binary frames take the value as is; text lines format it straight into the line
+    @Override
+    public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+        String label = signalCode.requireLabel();
+        HistoryEntry entry;
+        if (wireFormat == WireFormat.BINARY) {
+            entry = new HistoryEntry(patientId, timestamp, label, value, null);
+        } else {
+            StringBuilder message = new StringBuilder(label.length() + 56)
+                    .append(patientId).append(',')
+                    .append(timestamp).append(',')
+                    .append(label).append(',');
+            entry = new HistoryEntry(patientId, timestamp, label, Double.NaN,
+                    signalCode.appendValue(message, value).toString());
+        }
+        publish(entry);
+    }
+
+    // Adds a sample to the history and to the frames of every interested connection
+    private void publish(HistoryEntry entry) {
+        int patientId = entry.patientId;
+        long timestamp = entry.timestamp;
+        String label = entry.label;
+        synchronized (history) {
+            if (historySize > 0) {
+                history.addLast(entry);
+                while (history.size() > historySize || history.peekFirst().timestamp < timestamp - HISTORY_MILLIS) {
+                    history.removeFirst();
+                }
+            }
+            broadcastSamples++;
+            if (!firehose.isEmpty()) {
+                pending.add(entry);
+                if (coalesceMillis == 0 || pending.isFull()) {
+                    sendFirehose();
+                }
+            }
 
-        public SimpleWebSocketServer(InetSocketAddress address) {
-            super(address);
+            matches.clear();
+            subscriptionIndex.collectMatches(patientId, label, matches);
+            for (Subscription subscription : matches) {
+                if (subscription.admit(patientId, label, timestamp)) {
+                    subscription.pending.add(entry);
+                    if (coalesceMillis == 0 || subscription.pending.isFull()) {
+                        sendSubscription(subscription);
+                    }
+                }
+            }
+        }
+        drainOutbox();
+    }
+
+    /**
+     * Broadcasts the samples collected since the last frame.
+     */
+    public void flush() {
+        synchronized (history) {
+            flushPending();
+        }
+        drainOutbox();
+    }
+
+    // Caller holds the history lock
+    private void flushPending() {
+        sendFirehose();
+        for (Subscription subscription : subscriptions.values()) {
+            sendSubscription(subscription);
+        }
+    }
+
+    private void sendFirehose() {
+        send(pending, firehose);
+    }
+
+    private void sendSubscription(Subscription subscription) {
+        send(subscription.pending, Collections.singletonList(subscription.conn));
+    }
+
+    // Encodes the collected samples once, queues them for the connections and clears the
+    // buffer; caller holds the history lock
+    private void send(FrameBuffer frame, Collection<WebSocket> conns) {
+        if (frame.isEmpty()) {
+            return;
+        }
+        if (!conns.isEmpty()) {
+            outbox.addLast(new Outgoing(frame.encode(), new ArrayList<>(conns)));
+            broadcastFrames++;
+        }
+        frame.clear();
+    }
+
+    /**
+     * Sends the queued frames, unless another thread is already doing so; that thread
+     * then sends them. Called without the history lock.
+     */
+    private void drainOutbox() {
+        while (sending.tryLock()) {
+            try {
+                sendQueued();
+            } finally {
+                sending.unlock();
+            }
+            synchronized (history) {
+                // Frames queued while the lock was released would otherwise wait for the next sample
+                if (outbox.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Caller holds the sending lock
+    private void sendQueued() {
+        while (true) {
+            Outgoing next;
+            synchronized (history) {
+                next = outbox.pollFirst();
+            }
+            if (next == null) {
+                return;
+            }
+            transmit(next.message, next.conns);
+        }
+    }
+
+    // Sends an encoded frame, a String or a byte array, to the connections
+    private void transmit(Object message, Collection<WebSocket> conns) {
+        if (compress || conns.size() == 1) {
+            // Every connection has its own deflate context, so frames cannot be shared
+            for (WebSocket conn : conns) {
+                if (!conn.isOpen()) {
+                    continue;
+                }
+                if (message instanceof byte[]) {
+                    conn.send((byte[]) message);
+                } else {
+                    conn.send((String) message);
+                }
+            }
+        } else if (message instanceof byte[]) {
+            server.broadcast((byte[]) message, conns);
+        } else {
+            server.broadcast((String) message, conns);
+        }
+    }
+
+    /**
+     * Replaces the subscription of a connection. Samples already collected for it are
+     * sent first, under the old subscription.
+     */
+    private void subscribe(WebSocket conn, Set<Integer> patients, Set<String> labels, double rate) {
+        synchronized (history) {
+            flushPending();
+            removeSubscription(conn);
+            firehose.remove(conn);
+            double minIntervalMillis = rate > 0 ? 1000 / rate : 0;
+            Subscription subscription = new Subscription(conn, patients, labels, minIntervalMillis, wireFormat);
+            subscriptions.put(conn, subscription);
+            subscriptionIndex.add(subscription, patients, labels);
+        }
+        drainOutbox();
+        System.out.println("Subscription from " + conn.getRemoteSocketAddress() + ": patients="
+                + (patients != null ? patients : "all") + ", labels=" + (labels != null ? labels : "all")
+                + (rate > 0 ? ", rate=" + rate + "/s" : ""));
+    }
+
+    private void unsubscribe(WebSocket conn) {
+        synchronized (history) {
+            flushPending();
+            removeSubscription(conn);
+            if (conn.isOpen()) {
+                firehose.add(conn);
+            }
+        }
+        drainOutbox();
+    }
+
+    // Caller holds the history lock
+    private void removeSubscription(WebSocket conn) {
+        Subscription subscription = subscriptions.remove(conn);
+        if (subscription != null) {
+            subscriptionIndex.remove(subscription);
+        }
+    }
+
+    /**
+     * Sends the buffered samples with a timestamp at or after {@code since} to one
+     * client, several lines per frame. The history is copied under its lock and the
+     * replay sent from the copy while holding the sending lock: frames queued before it
+     * go out first, and live frames queued meanwhile wait in the outbox until it is done.
+     */
+    private void replay(WebSocket conn, long since) {
+        HistoryEntry[] snapshot;
+        Subscription subscription;
+        synchronized (history) {
+            // Pending lines would otherwise arrive after the replay and out of order
+            flushPending();
+            snapshot = history.toArray(new HistoryEntry[0]);
+            subscription = subscriptions.get(conn);
+        }
+        int replayed = 0;
+        sending.lock();
+        try {
+            sendQueued();
+            List<WebSocket> target = Collections.singletonList(conn);
+            FrameBuffer frame = new FrameBuffer(wireFormat);
+            for (HistoryEntry entry : snapshot) {
+                if (!conn.isOpen()) {
+                    // Closed mid-replay: nothing more can be sent
+                    break;
+                }
+                // The subscription's fields are final, so the copy can be matched unlocked
+                if (entry.timestamp >= since && (subscription == null || subscription.matches(entry))) {
+                    frame.add(entry);
+                    replayed++;
+                    if (frame.isFull()) {
+                        transmit(frame.encode(), target);
+                        frame.clear();
+                    }
+                }
+            }
+            if (conn.isOpen() && !frame.isEmpty()) {
+                transmit(frame.encode(), target);
+            }
+        } finally {
+            sending.unlock();
+        }
+        drainOutbox();
+        System.out.println("Replayed " + replayed + " samples to " + conn.getRemoteSocketAddress());
+    }
+
+    /**
+     * Sends any pending samples and stops the server.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+        try {
+            server.stop(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of frames sent, counting a frame broadcast to several clients once
+     */
+    public long getBroadcastFrames() {
+        synchronized (history) {
+            return broadcastFrames;
+        }
+    }
+
+    /**
+     * @return the number of connections with a subscription
+     */
+    public int getSubscriberCount() {
+        synchronized (history) {
+            return subscriptions.size();
+        }
+    }
+
+    /**
+     * @return the number of samples passed to {@code output}
+     */
+    public long getBroadcastSamples() {
+        synchronized (history) {
+            return broadcastSamples;
+        }
+    }
+
+    // A sent sample; text mode keeps the formatted line, binary mode the value
+    private static class HistoryEntry {
+        final int patientId;
+        final long timestamp;
+        final String label;
+        final double value;
+        final String message;
+
+        HistoryEntry(int patientId, long timestamp, String label, double value, String message) {
+            this.patientId = patientId;
+            this.timestamp = timestamp;
+            this.label = label;
+            this.value = value;
+            this.message = message;
+        }
+    }
+
+    // An encoded frame waiting in the outbox
+    private static class Outgoing {
+        final Object message;
+        final List<WebSocket> conns;
+
+        Outgoing(Object message, List<WebSocket> conns) {
+            this.message = message;
+            this.conns = conns;
+        }
+    }
+
+    // Samples collected for the next frame, as newline separated lines or a binary batch
+    private static class FrameBuffer {
+        final StringBuilder text;
+        final SampleBatch batch;
+
+        FrameBuffer(WireFormat wireFormat) {
+            text = wireFormat == WireFormat.TEXT ? new StringBuilder() : null;
+            batch = wireFormat == WireFormat.BINARY ? new SampleBatch(MAX_FRAME_SAMPLES) : null;
+        }
+
+        // A binary frame as a byte array, otherwise the text
+        Object encode() {
+            return batch != null ? BinaryFrameCodec.encode(batch, true) : text.toString();
+        }
+
+        void add(HistoryEntry entry) {
+            if (batch != null) {
+                batch.add(entry.patientId, entry.value, entry.label, entry.timestamp);
+            } else {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(entry.message);
+            }
+        }
+
+        boolean isEmpty() {
+            return batch != null ? batch.isEmpty() : text.length() == 0;
+        }
+
+        boolean isFull() {
+            return batch != null ? batch.isFull() : text.length() >= MAX_FRAME_CHARS;
+        }
+
+        void clear() {
+            if (batch != null) {
+                batch.clear();
+            } else {
+                text.setLength(0);
+            }
+        }
+    }
+
+    // The filter and downsampling state of one subscribed connection; guarded by history
+    private static class Subscription {
+        final WebSocket conn;
+        final Set<Integer> patients;
+        final Set<String> labels;
+        // Not rounded, so a rate above 1000/s still limits and others are met exactly
+        final double minIntervalMillis;
+        // label -> patient id -> sample time at which the next sample is due
+        final Map<String, Map<Integer, Double>> nextDue = new HashMap<>();
+        final FrameBuffer pending;
+
+        Subscription(WebSocket conn, Set<Integer> patients, Set<String> labels, double minIntervalMillis,
+                     WireFormat wireFormat) {
+            this.conn = conn;
+            this.pending = new FrameBuffer(wireFormat);
+            this.patients = patients;
+            this.labels = labels;
+            this.minIntervalMillis = minIntervalMillis;
+        }
+
+        // Applies the rate limit to a sample the index already matched. The due times
+        // advance by the interval, so samples at whole milliseconds average out to the rate
+        boolean admit(int patientId, String label, long timestamp) {
+            if (minIntervalMillis == 0) {
+                return true;
+            }
+            Map<Integer, Double> byPatient = nextDue.computeIfAbsent(label, l -> new HashMap<>());
+            Double due = byPatient.get(patientId);
+            if (due != null && timestamp < due) {
+                return false;
+            }
+            // A signal that fell a whole interval behind starts again from this sample
+            boolean onTime = due != null && timestamp - due < minIntervalMillis;
+            byPatient.put(patientId, (onTime ? due : timestamp) + minIntervalMillis);
+            return true;
+        }
+
+        // Checks a history entry against the filter
+        boolean matches(HistoryEntry entry) {
+            return (patients == null || patients.contains(entry.patientId))
+                    && (labels == null || labels.contains(entry.label));
+        }
+    }
+
+    private class SimpleWebSocketServer extends WebSocketServer {
+
+        private final ObjectMapper objectMapper = new ObjectMapper();
+
+        public SimpleWebSocketServer(InetSocketAddress address, List<Draft> drafts) {
+            super(address, drafts);
         }
 
         @Override
         public void onOpen(WebSocket conn, org.java_websocket.handshake.ClientHandshake handshake) {
+            synchronized (history) {
+                firehose.add(conn);
+            }
             System.out.println("New connection: " + conn.getRemoteSocketAddress());
         }
 
         @Override
         public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+            synchronized (history) {
+                firehose.remove(conn);
+                removeSubscription(conn);
+            }
             System.out.println("Closed connection: " + conn.getRemoteSocketAddress());
         }
 
+        // Handles control messages from clients: subscribe, unsubscribe and resume
         @Override
         public void onMessage(WebSocket conn, String message) {
-            // Not used in this context
+            try {
+                JsonNode request = objectMapper.readTree(message);
+                switch (request.path("type").asText()) {
+                    case "subscribe":
+                        subscribe(conn, patientSet(request.get("patients")), labelSet(request.get("labels")),
+                                request.path("rate").asDouble(0));
+                        break;
+                    case "unsubscribe":
+                        unsubscribe(conn);
+                        break;
+                    case "resume":
+                        if (request.hasNonNull("since")) {
+                            replay(conn, request.get("since").asLong());
+                        }
+                        break;
+                    default:
+                        System.err.println("Ignoring unknown client message: " + message);
+                }
+            } catch (Exception e) {
+                System.err.println("Ignoring invalid client message: " + message);
+            }
+        }
+
+        // A missing or null field means no filter
+        private Set<Integer> patientSet(JsonNode node) {
+            if (node == null || node.isNull()) {
+                return null;
+            }
+            Set<Integer> patients = new HashSet<>();
+            node.forEach(id -> patients.add(id.asInt()));
+            return patients;
+        }
+
+        private Set<String> labelSet(JsonNode node) {
+            if (node == null || node.isNull()) {
+                return null;
+            }
+            Set<String> labels = new HashSet<>();
+            node.forEach(label -> labels.add(label.asText()));
+            return labels;
         }
 
         @Override
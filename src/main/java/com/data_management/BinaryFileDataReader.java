@@ -0,0 +1,160 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports files of {@link BinaryFrameCodec} frames, as written by
+ * {@code BinaryFileOutputStrategy} and the bulk dataset generator, into a
+ * {@link PatientDataSink}.
+ *
+ * The path is either one file or a directory, in which case every {@code *.bin} file in
+ * it is imported, several in parallel. Samples are decoded straight into
+ * {@link SampleBatch}es without any text parsing.
+ */
+public class BinaryFileDataReader implements DataReader {
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int BATCH_SIZE = 4096;
+
+    private final Path path;
+    private final AtomicLong samplesRead = new AtomicLong();
+
+    /**
+     * @param path a frame file, or a directory of {@code *.bin} frame files
+     */
+    public BinaryFileDataReader(String path) {
+        this.path = Paths.get(path);
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        readData((PatientDataSink) dataStorage);
+    }
+
+    /**
+     * Imports every sample into the sink.
+     *
+     * @param sink where the samples are stored; called from several threads for a directory
+     * @throws IOException if the path does not exist, a file cannot be read or does not
+     *                     hold valid frames
+     */
+    public void readData(PatientDataSink sink) throws IOException {
+        List<Path> files = listFiles();
+        if (files.size() == 1) {
+            readFile(files.get(0), sink);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Void>> imports = new ArrayList<>();
+            for (Path file : files) {
+                imports.add(pool.submit(() -> {
+                    readFile(file, sink);
+                    return null;
+                }));
+            }
+            for (Future<Void> fileImport : imports) {
+                fileImport.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing frame files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error importing frame files", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the files to import, sorted by name
+     */
+    List<Path> listFiles() throws IOException {
+        if (Files.isRegularFile(path)) {
+            return List.of(path);
+        }
+        if (!Files.isDirectory(path)) {
+            throw new IOException("Frame file or directory not found: " + path);
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path, "*.bin")) {
+            for (Path entry : entries) {
+                files.add(entry);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IOException("No frame files found in directory: " + path);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private void readFile(Path file, PatientDataSink sink) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        SampleBatch batch = new SampleBatch(BATCH_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                int count;
+                try {
+                    while ((count = BinaryFrameCodec.decode(buffer, batch, sink)) >= 0) {
+                        samplesRead.addAndGet(count);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid frame in " + file + ": " + e.getMessage());
+                }
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // The frame in the buffer is larger than the buffer
+                    ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        }
+        if (buffer.position() > 0) {
+            throw new IOException("Truncated frame at the end of " + file);
+        }
+        if (!batch.isEmpty()) {
+            sink.addPatientData(batch);
+        }
+    }
+
+    /**
+     * Does nothing: frame files are imported once with {@link #readData}, there is
+     * nothing to follow.
+     */
+    @Override
+    public void startReading() {
+    }
+
+    @Override
+    public void stopReading() {
+    }
+
+    /**
+     * @return the number of samples imported so far
+     */
+    public long getSamplesRead() {
+        return samplesRead.get();
+    }
+}
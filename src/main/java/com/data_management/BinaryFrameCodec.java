@@ -0,0 +1,216 @@
+package com.data_management;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes the binary wire format used by the simulator's TCP and WebSocket
+ * outputs when {@link WireFormat#BINARY} is chosen.
+ *
+ * A frame carries up to 65535 samples. All numbers are big-endian:
+ * <pre>
+ *   header:  u16 magic 'S''F' | u8 version | u8 flags | u32 body length
+ *            | u16 sample count | i64 base timestamp
+ *   sample:  i32 patient id | timestamp | u8 signal code | [u8 length, label bytes] | f64 value
+ * </pre>
+ * The timestamp is an i64, or with {@link #FLAG_DELTA_TIMESTAMPS} an i32 difference to
+ * the previous sample's timestamp (the base timestamp for the first sample). The label
+ * bytes are present exactly when the code is that of {@link SignalCode#UNKNOWN}; any other
+ * code a decoder does not know makes the frame invalid, so new codes need a new version.
+ * A sample of a known signal takes 17 bytes with delta timestamps and 21 without,
+ * compared with 40 to 80 bytes as text. The body length lets a reader wait for a whole frame before decoding it.
+ *
+ * Alert states are sent as values: 1.0 for "triggered" and 0.0 for "resolved".
+ */
+public final class BinaryFrameCodec {
+
+    public static final int VERSION = 1;
+    public static final int FLAG_DELTA_TIMESTAMPS = 1;
+    public static final int MAX_SAMPLES = 0xFFFF;
+
+    private static final short MAGIC = 0x5346;
+    // Magic, version, flags and body length
+    private static final int PREFIX_BYTES = 8;
+    // Bytes of a sample apart from its timestamp and label
+    private static final int SAMPLE_FIXED_BYTES = 4 + 1 + 8;
+
+    private BinaryFrameCodec() {
+    }
+
+    /**
+     * Encodes a batch as one frame.
+     *
+     * @param batch           the samples, at most {@link #MAX_SAMPLES}
+     * @param deltaTimestamps whether to send timestamp differences; ignored for a batch
+     *                        whose differences do not fit in 32 bits
+     * @return the frame
+     */
+    public static byte[] encode(SampleBatch batch, boolean deltaTimestamps) {
+        int count = batch.size();
+        if (count > MAX_SAMPLES) {
+            throw new IllegalArgumentException("A frame holds at most " + MAX_SAMPLES + " samples");
+        }
+        boolean delta = deltaTimestamps && deltasFit(batch);
+        int bodyBytes = 2 + 8 + count * (SAMPLE_FIXED_BYTES + (delta ? 4 : 8));
+        for (int i = 0; i < count; i++) {
+            if (SignalCode.of(batch.getRecordType(i)) == SignalCode.UNKNOWN) {
+                bodyBytes += 1 + labelBytes(batch.getRecordType(i)).length;
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(PREFIX_BYTES + bodyBytes);
+        out.putShort(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) (delta ? FLAG_DELTA_TIMESTAMPS : 0));
+        out.putInt(bodyBytes);
+        out.putShort((short) count);
+        long previous = count > 0 ? batch.getTimestamp(0) : 0;
+        out.putLong(previous);
+        for (int i = 0; i < count; i++) {
+            out.putInt(batch.getPatientId(i));
+            long timestamp = batch.getTimestamp(i);
+            if (delta) {
+                out.putInt((int) (timestamp - previous));
+                previous = timestamp;
+            } else {
+                out.putLong(timestamp);
+            }
+            String label = batch.getRecordType(i);
+            SignalCode signal = SignalCode.of(label);
+            out.put((byte) signal.code());
+            if (signal == SignalCode.UNKNOWN) {
+                byte[] bytes = labelBytes(label);
+                out.put((byte) bytes.length);
+                out.put(bytes);
+            }
+            out.putDouble(batch.getMeasurementValue(i));
+        }
+        return out.array();
+    }
+
+    /**
+     * Decodes the frame at the buffer's position. Samples are added to {@code out}; when it
+     * fills up it is handed to {@code sink} and cleared, so frames larger than the batch
+     * can be decoded. The last samples stay in {@code out}. The whole frame is validated
+     * first, so an invalid frame adds none of its samples.
+     *
+     * @return the number of samples in the frame, or -1 if the buffer does not yet hold
+     *         the whole frame, in which case its position is unchanged
+     * @throws IllegalArgumentException if the bytes are not a frame of a supported version
+     */
+    public static int decode(ByteBuffer in, SampleBatch out, PatientDataSink sink) {
+        if (in.remaining() < PREFIX_BYTES) {
+            return -1;
+        }
+        int start = in.position();
+        if (in.getShort(start) != MAGIC) {
+            throw new IllegalArgumentException("Not a sample frame");
+        }
+        int version = in.get(start + 2) & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported frame version " + version);
+        }
+        boolean delta = (in.get(start + 3) & FLAG_DELTA_TIMESTAMPS) != 0;
+        int bodyBytes = in.getInt(start + 4);
+        if (bodyBytes < 10 || bodyBytes > (MAX_SAMPLES + 1) * 512) {
+            throw new IllegalArgumentException("Invalid frame length " + bodyBytes);
+        }
+        if (in.remaining() < PREFIX_BYTES + bodyBytes) {
+            return -1;
+        }
+
+        int end = start + PREFIX_BYTES + bodyBytes;
+        int limit = in.limit();
+        in.position(start + PREFIX_BYTES).limit(end);
+        try {
+            validate(in, delta);
+            int count = in.getShort() & 0xFFFF;
+            long timestamp = in.getLong();
+            for (int i = 0; i < count; i++) {
+                int patientId = in.getInt();
+                timestamp = delta ? timestamp + in.getInt() : in.getLong();
+                SignalCode signal = SignalCode.fromCode(in.get() & 0xFF);
+                String label = signal.label();
+                if (signal == SignalCode.UNKNOWN) {
+                    byte[] bytes = new byte[in.get() & 0xFF];
+                    in.get(bytes);
+                    label = new String(bytes, StandardCharsets.UTF_8);
+                }
+                double value = in.getDouble();
+                if (out.isFull()) {
+                    sink.addPatientData(out);
+                    out.clear();
+                }
+                out.add(patientId, value, label, timestamp);
+            }
+            return count;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Frame shorter than its samples");
+        } finally {
+            in.limit(limit).position(end);
+        }
+    }
+
+    // Walks the samples of the frame body at the buffer's position, leaving the position unchanged
+    private static void validate(ByteBuffer in, boolean delta) {
+        int start = in.position();
+        int count = in.getShort() & 0xFFFF;
+        skip(in, 8);
+        int timestampBytes = delta ? 4 : 8;
+        for (int i = 0; i < count; i++) {
+            skip(in, 4 + timestampBytes);
+            if (SignalCode.fromCode(in.get() & 0xFF) == SignalCode.UNKNOWN) {
+                skip(in, in.get() & 0xFF);
+            }
+            skip(in, 8);
+        }
+        in.position(start);
+    }
+
+    private static void skip(ByteBuffer in, int bytes) {
+        if (in.remaining() < bytes) {
+            throw new BufferUnderflowException();
+        }
+        in.position(in.position() + bytes);
+    }
+
+    /**
+     * Converts the text data of a sample to the value sent in a frame.
+     *
+     * @param data e.g. "-0.25", "97.0%" or "triggered"
+     * @return the value, or NaN if the data is not a number or alert state
+     */
+    public static double toValue(String data) {
+        switch (data) {
+            case "triggered":
+                return 1.0;
+            case "resolved":
+                return 0.0;
+            default:
+                try {
+                    return Double.parseDouble(data.endsWith("%") ? data.substring(0, data.length() - 1) : data);
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+        }
+    }
+
+    private static boolean deltasFit(SampleBatch batch) {
+        for (int i = 1; i < batch.size(); i++) {
+            long delta = batch.getTimestamp(i) - batch.getTimestamp(i - 1);
+            if (delta != (int) delta) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] labelBytes(String label) {
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 255) {
+            throw new IllegalArgumentException("Label longer than 255 bytes: " + label);
+        }
+        return bytes;
+    }
+}
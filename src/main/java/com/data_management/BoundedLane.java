@@ -0,0 +1,171 @@
+package com.data_management;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A bounded hand-off from any number of producers to one consumer thread, shared by
+ * the queues on the generator and on the receiving side. Elements go into a lock-free
+ * {@link RingBuffer}; when it is full the {@link OverflowPolicy} decides whether the
+ * producer waits or what is dropped. The consumer drains the buffer in batches and
+ * backs off while it is empty.
+ *
+ * @param <E> the element type
+ */
+public class BoundedLane<E> {
+
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RingBuffer<E> buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final Predicate<? super E> lowPriority;
+    private final int lowPriorityLimit;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    // Producers inside offer, which may still add an element after close
+    private final AtomicInteger producers = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param capacity       the number of elements the lane holds
+     * @param overflowPolicy what to do when the lane is full
+     * @param lowPriority    tells which elements are low priority under
+     *                       {@link OverflowPolicy#DROP_LOW_PRIORITY}
+     */
+    public BoundedLane(int capacity, OverflowPolicy overflowPolicy, Predicate<? super E> lowPriority) {
+        this.buffer = new RingBuffer<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.lowPriority = lowPriority;
+        this.lowPriorityLimit = buffer.capacity() / 4 * 3;
+    }
+
+    /**
+     * Adds an element, applying the overflow policy when the lane is full. Elements
+     * offered after {@link #close()} are dropped.
+     *
+     * @return {@code false} if the element was dropped
+     */
+    public boolean offer(E element) {
+        producers.incrementAndGet();
+        try {
+            return enqueue(element);
+        } finally {
+            producers.decrementAndGet();
+        }
+    }
+
+    private boolean enqueue(E element) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        boolean low = overflowPolicy == OverflowPolicy.DROP_LOW_PRIORITY && lowPriority.test(element);
+        if (low && buffer.size() >= lowPriorityLimit) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        long parkNanos = 1;
+        while (!buffer.offer(element)) {
+            if (low) {
+                dropped.incrementAndGet();
+                return false;
+            } else if (overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+                // Blocking, or an element more important than the ones it would push out
+                if (closed) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_IDLE_PARK_NANOS);
+            } else if (buffer.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Consumer loop: hands the elements to the consumer in batches until the lane is
+     * closed and empty. Run it on the lane's consumer thread. After the close it waits
+     * for producers still inside {@link #offer}, so every element counted as enqueued
+     * is drained.
+     *
+     * @param consumer  receives every element
+     * @param batchSize the most elements drained at once
+     */
+    public void drainUntilClosed(Consumer<? super E> consumer, int batchSize) {
+        drainUntilClosed(consumer, () -> { }, batchSize);
+    }
+
+    /**
+     * Consumer loop as {@link #drainUntilClosed(Consumer, int)}, telling the consumer
+     * when a batch is complete, e.g. to store what it collected with one call.
+     *
+     * @param consumer   receives every element
+     * @param endOfBatch runs after the elements of each batch were handed over
+     * @param batchSize  the most elements drained at once
+     */
+    public void drainUntilClosed(Consumer<? super E> consumer, Runnable endOfBatch, int batchSize) {
+        long parkNanos = 1;
+        while (true) {
+            int count = buffer.drain(consumer, batchSize);
+            if (count > 0) {
+                endOfBatch.run();
+                drained.addAndGet(count);
+                parkNanos = 1;
+            } else if (closed && producers.get() == 0) {
+                // Whatever the last producers added before leaving offer
+                while ((count = buffer.drain(consumer, batchSize)) > 0) {
+                    endOfBatch.run();
+                    drained.addAndGet(count);
+                }
+                return;
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting elements; the consumer loop returns once the lane is empty.
+     * Unpark the consumer thread to let it notice at once.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of elements waiting in the lane
+     */
+    public int size() {
+        return buffer.size();
+    }
+
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of elements handed to the consumer
+     */
+    public long getDrained() {
+        return drained.get();
+    }
+}
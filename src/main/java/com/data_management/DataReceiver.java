@@ -0,0 +1,149 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code DataReceiver} is the receiving side on the command line: it runs one of the
+ * continuous readers into the {@code DataStorageSingleton} until the process is stopped.
+ * With {@code --latency-probe} a {@link LatencyProbe} sits in front of the storage and
+ * reports the ingest latency of the simulator's load mode samples once per interval.
+ *
+ * The receiver supports the following arguments:
+ *
+ *   {@code --source <source>}: Where to read from, one of
+ *   {@code tcp:<host>:<port>}: Connect to a simulator's TCP output.
+ *   {@code tcp-listen:<port>}: Accept simulators pushing with {@code --output tcp-push}.
+ *   {@code websocket:<url>}: Connect to a simulator's WebSocket output, e.g. ws://localhost:8080.
+ *   {@code file:<directory>}: Follow a simulator's file output directory.
+ *   {@code --wire-format <text|binary>}: Encoding of the TCP stream, as given to the simulator.
+ *   {@code --latency-probe}: Record the latency of LoadProbe samples.
+ *   {@code --report-interval <seconds>}: How often the latency is reported and reset, the default is 10.
+ */
+public final class DataReceiver {
+
+    private DataReceiver() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String source = null;
+        WireFormat wireFormat = WireFormat.TEXT;
+        boolean latencyProbe = false;
+        long reportMillis = TimeUnit.SECONDS.toMillis(10);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--source":
+                    if (i + 1 < args.length) {
+                        source = args[++i];
+                    }
+                    break;
+                case "--wire-format":
+                    if (i + 1 < args.length) {
+                        try {
+                            wireFormat = WireFormat.valueOf(args[++i].toUpperCase());
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Error: Unknown wire format. Using default value: " + wireFormat);
+                        }
+                    }
+                    break;
+                case "--latency-probe":
+                    latencyProbe = true;
+                    break;
+                case "--report-interval":
+                    if (i + 1 < args.length) {
+                        try {
+                            reportMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid report interval. Using 10 seconds.");
+                        }
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown option '" + args[i] + "'");
+                    printHelp();
+                    System.exit(1);
+            }
+        }
+        if (source == null) {
+            printHelp();
+            System.exit(1);
+        }
+
+        PatientDataSink storage = DataStorageSingleton.getInstance();
+        LatencyProbe probe = latencyProbe ? new LatencyProbe(storage) : null;
+        DataReader reader;
+        try {
+            reader = createReader(source, probe != null ? probe : storage, wireFormat);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printHelp();
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(reader::stopReading));
+        reader.startReading();
+        System.out.println("Receiving from " + source);
+
+        try {
+            while (true) {
+                Thread.sleep(reportMillis);
+                if (probe != null) {
+                    System.out.println("Ingest latency: " + probe.formatSummary());
+                    probe.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the reader described by a {@code --source} argument.
+     *
+     * @param source     e.g. {@code tcp:localhost:9000} or {@code file:output}
+     * @param sink       where the reader stores the samples in continuous mode
+     * @param wireFormat the encoding of a TCP source
+     * @return the reader, not yet started
+     * @throws IllegalArgumentException if the source is not valid
+     * @throws IOException              if a listening port cannot be bound
+     */
+    public static DataReader createReader(String source, PatientDataSink sink, WireFormat wireFormat)
+            throws IOException {
+        try {
+            if (source.startsWith("tcp:")) {
+                String address = source.substring(4);
+                int colon = address.lastIndexOf(':');
+                InetSocketAddress endpoint = new InetSocketAddress(address.substring(0, colon),
+                        Integer.parseInt(address.substring(colon + 1)));
+                return new TcpDataReader(Collections.singletonList(endpoint), sink, wireFormat);
+            } else if (source.startsWith("tcp-listen:")) {
+                return new TcpDataReader(Integer.parseInt(source.substring(11)), 0, sink, wireFormat);
+            } else if (source.startsWith("websocket:")) {
+                return new RealTimeDataReader(source.substring(10), sink);
+            } else if (source.startsWith("file:")) {
+                return new FileDataReader(source.substring(5), sink);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            // Thrown by RealTimeDataReader for an invalid URL
+            throw new IllegalArgumentException("Invalid source '" + source + "': " + e.getMessage());
+        }
+        throw new IllegalArgumentException("Unknown source '" + source + "'");
+    }
+
+    private static void printHelp() {
+        System.out.println("Usage: java com.cardio_generator.Main Receiver --source <source> [options]");
+        System.out.println("Options:");
+        System.out.println("  --source <source>        Where to read from:");
+        System.out.println("                             'tcp:<host>:<port>' to connect to a simulator's TCP output,");
+        System.out.println("                             'tcp-listen:<port>' to accept simulators using tcp-push,");
+        System.out.println("                             'websocket:<url>' to connect to a WebSocket output,");
+        System.out.println("                             'file:<directory>' to follow a file output directory.");
+        System.out.println("  --wire-format <format>   'text' (default) or 'binary', as sent by the simulator over TCP.");
+        System.out.println("  --latency-probe          Report the ingest latency of the simulator's --load samples.");
+        System.out.println("  --report-interval <sec>  How often the latency is reported and reset (default: 10).");
+    }
+}
@@ -1,25 +1,26 @@
 package com.data_management;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import com.alerts.AlertGeneratorWeek3;
 
 /**
  * Manages storage and retrieval of patient data within a healthcare monitoring
  * system.
  * This class serves as a repository for all patient records, organized by
- * patient IDs.
+ * patient IDs. It is safe to fill from a background reader thread while other
+ * threads query it.
  */
-public class DataStorage {
+public class DataStorage implements PatientDataSink {
     private Map<Integer, Patient> patientMap; 
     /**
      * Constructs a new instance of DataStorage, initializing the underlying storage
      * structure.
      */
     public DataStorage() {
-        this.patientMap = new HashMap<>();
+        this.patientMap = new ConcurrentHashMap<>();
     }
 
     /**
@@ -35,13 +36,33 @@ public class DataStorage {
      * @param timestamp        the time at which the measurement was taken, in
      *                         milliseconds since the Unix epoch
      */
+    @Override
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
-        Patient patient = patientMap.get(patientId);
-        if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
+        Patient patient = patientMap.computeIfAbsent(patientId, Patient::new);
+        synchronized (patient) {
+            patient.addRecord(measurementValue, recordType, timestamp);
+        }
+    }
+
+    /**
+     * Adds a batch of patient data. Consecutive samples of the same patient are added
+     * under a single lock.
+     *
+     * @param batch the measurements to add
+     */
+    @Override
+    public void addPatientData(SampleBatch batch) {
+        int i = 0;
+        while (i < batch.size()) {
+            int patientId = batch.getPatientId(i);
+            Patient patient = patientMap.computeIfAbsent(patientId, Patient::new);
+            synchronized (patient) {
+                do {
+                    patient.addRecord(batch.getMeasurementValue(i), batch.getRecordType(i), batch.getTimestamp(i));
+                    i++;
+                } while (i < batch.size() && batch.getPatientId(i) == patientId);
+            }
         }
-        patient.addRecord(measurementValue, recordType, timestamp);
     }
 
     /**
@@ -60,7 +81,9 @@ public class DataStorage {
     public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
         Patient patient = patientMap.get(patientId);
         if (patient != null) {
-            return patient.getRecords(startTime, endTime);
+            synchronized (patient) {
+                return patient.getRecords(startTime, endTime);
+            }
         }
         return new ArrayList<>();
     }
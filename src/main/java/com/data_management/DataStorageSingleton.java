@@ -9,7 +9,7 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Singleton version of the DataStorage class that manages patient records.
  */
-public class DataStorageSingleton {
+public class DataStorageSingleton implements PatientDataSink {
     private static DataStorageSingleton instance;
     private Map<Integer, Patient> patientMap;
 
@@ -34,6 +34,7 @@ public class DataStorageSingleton {
      * @param recordType       the type of record, e.g., "HeartRate", "BloodPressure"
      * @param timestamp        the time at which the measurement was taken, in milliseconds since the Unix epoch
      */
+    @Override
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
        
         patientMap.compute(patientId, (id, patient) -> {
@@ -2,64 +2,715 @@ package com.data_management;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
+import com.cardio_generator.outputs.SegmentManifest;
+
+/**
+ * Reads the label files written by {@code FileOutputStrategy}.
+ *
+ * {@link #readData(DataStorage)} performs a one-shot import of every {@code *.txt} file
+ * in the directory. {@link #startReading()} follows the same files continuously: only
+ * newly appended bytes are read, new files are picked up, and truncated, replaced or
+ * renamed files are detected. The byte offset reached in each file is persisted, so a
+ * restarted reader resumes where the previous one stopped instead of importing the
+ * files again.
+ *
+ * Closed segments written by a rotating {@code FileOutputStrategy}, including gzip
+ * compressed ones, are imported as well. {@link #readData(PatientDataSink, long, long)}
+ * uses the segment manifest to skip segments outside the requested time window and
+ * imports the remaining closed segments in parallel, one label per thread, so the
+ * segments of a label are still read in order. The follower continues a segment that
+ * was compressed before it was read to the end in the {@code .gz} file, from the
+ * offset it had reached. A closed segment that is in the manifest and has been read to
+ * its end is no longer tracked: only the highest such segment number per label is kept,
+ * and lower ones are skipped, so the offsets do not grow with the number of segments.
+ *
+ * Data values are read as in the binary wire format, so alert states become 1 and 0.
+ */
 public class FileDataReader implements DataReader {
 
+    private static final String OFFSETS_FILE_NAME = ".offsets";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // "<label>-<sequence>.txt", the name of a closed segment
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(.+)-(\\d{6})\\.txt");
+    // Suffix of the offsets entry holding a label's last segment read and forgotten
+    private static final String COMPLETED_SUFFIX = ".done";
+
     private final String outputDir;
+    private final PatientDataSink target;
+    private final Path offsetsFile;
+
+    // Files currently being followed, keyed by file name
+    private final Map<String, TrackedFile> trackedFiles = new HashMap<>();
+    // Files missing from the last scan, kept for one more in case the listing missed them
+    private final Map<String, TrackedFile> vanishedFiles = new HashMap<>();
+    // Per label, the sequence number up to which closed segments have been read and forgotten
+    private final Map<String, Integer> completedSegments = new HashMap<>();
+    // Set when files were added to or removed from tracking since the offsets were saved
+    private boolean trackingChanged;
+    // File names in the segment manifest, read again when the manifest grows
+    private final Set<String> manifestNames = new HashSet<>();
+    private long manifestSize = -1;
+    private long pollIntervalMillis = 1000;
+    private volatile boolean running;
+    private Thread followerThread;
 
     public FileDataReader(String outputDir) {
+        this(outputDir, null);
+    }
+
+    /**
+     * Creates a reader that can also follow the directory continuously.
+     *
+     * @param outputDir directory containing the label files
+     * @param target    sink that receives the records read in continuous mode, e.g. a
+     *                  storage or a {@link LatencyProbe} in front of one
+     */
+    public FileDataReader(String outputDir, PatientDataSink target) {
+        this(outputDir, target, Paths.get(outputDir, OFFSETS_FILE_NAME).toString());
+    }
+
+    /**
+     * Creates a reader that can also follow the directory continuously.
+     *
+     * @param outputDir   directory containing the label files
+     * @param target      sink that receives the records read in continuous mode
+     * @param offsetsFile file where the per-file byte offsets are persisted
+     */
+    public FileDataReader(String outputDir, PatientDataSink target, String offsetsFile) {
         this.outputDir = outputDir;
+        this.target = target;
+        this.offsetsFile = Paths.get(offsetsFile);
     }
 
     @Override
     public void readData(DataStorage dataStorage) throws IOException {
+        readData(dataStorage, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Imports the samples with a timestamp between {@code startTime} and {@code endTime}
+     * (inclusive). Closed segments whose manifest range lies outside the window are not
+     * opened; the other closed segments are imported in parallel per label, oldest
+     * first, then the active files.
+     *
+     * @param dataStorage the storage or other sink where data will be stored
+     * @param startTime   the start of the time window, in milliseconds since the Unix epoch
+     * @param endTime     the end of the time window, in milliseconds since the Unix epoch
+     * @throws IOException if the directory is missing or a file cannot be read
+     */
+    public void readData(PatientDataSink dataStorage, long startTime, long endTime) throws IOException {
         File dir = new File(outputDir);
         if (!dir.exists() || !dir.isDirectory()) {
             throw new IOException("Output directory not found: " + outputDir);
         }
 
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".txt"));
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".txt") || name.endsWith(".txt.gz"));
         if (files == null || files.length == 0) {
             throw new IOException("No data files found in directory: " + outputDir);
         }
 
+        Map<String, SegmentManifest.Entry> segments = new HashMap<>();
+        for (SegmentManifest.Entry entry : SegmentManifest.read(dir.toPath())) {
+            segments.put(entry.getFileName(), entry);
+        }
+        // Zero-padded sequence numbers, so name order is segment order
+        Set<String> names = new HashSet<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        Map<String, List<File>> closedSegments = new TreeMap<>();
+        List<File> activeFiles = new ArrayList<>();
         for (File file : files) {
-            readFile(file, dataStorage);
+            String name = file.getName();
+            if (names.contains(name + ".gz")) {
+                continue; // Compressed copy present; the original is about to be deleted
+            }
+            SegmentManifest.Entry entry = segments.get(name);
+            if (entry == null) {
+                activeFiles.add(file);
+            } else if (entry.overlaps(startTime, endTime)) {
+                closedSegments.computeIfAbsent(entry.getLabel(), label -> new ArrayList<>()).add(file);
+            }
+        }
+        for (List<File> labelSegments : closedSegments.values()) {
+            labelSegments.sort(null);
+        }
+
+        readInParallel(closedSegments, dataStorage, startTime, endTime);
+        for (File file : activeFiles) {
+            readFile(file, dataStorage, startTime, endTime);
         }
     }
 
-    private void readFile(File file, DataStorage dataStorage) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+    // One task per label, reading that label's segments in order
+    private void readInParallel(Map<String, List<File>> segmentsByLabel, PatientDataSink dataStorage,
+                                long startTime, long endTime) throws IOException {
+        if (segmentsByLabel.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(segmentsByLabel.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Void>> imports = new ArrayList<>();
+            for (List<File> files : segmentsByLabel.values()) {
+                imports.add(pool.submit(() -> {
+                    for (File file : files) {
+                        readFile(file, dataStorage, startTime, endTime);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> fileImport : imports) {
+                fileImport.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing segments", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error importing segments", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void readFile(File file, PatientDataSink dataStorage, long startTime, long endTime) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, READ_BUFFER_SIZE);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
             String line;
 
             while ((line = reader.readLine()) != null) {
-                try {
+                parseLine(line, dataStorage, startTime, endTime);
+            }
+        }
+    }
 
-                    String[] parts = line.split(", ");
-                    if (parts.length != 4) continue;
+    /**
+     * Parses one "Patient ID: .., Timestamp: .., Label: .., Data: .." line and stores it
+     * if its timestamp lies in the window. Malformed lines are reported and skipped.
+     */
+    private void parseLine(String line, PatientDataSink dataStorage, long startTime, long endTime) {
+        try {
 
-                    int patientId = Integer.parseInt(parts[0].split(": ")[1].trim());
-                    long timestamp = Long.parseLong(parts[1].split(": ")[1].trim());
-                    String label = parts[2].split(": ")[1].trim();
-                    double data = Double.parseDouble(parts[3].split(": ")[1].trim());
+            String[] parts = line.split(", ");
+            if (parts.length != 4) return;
 
-                    dataStorage.addPatientData(patientId, data, label, timestamp);
-                } catch (Exception e) {
-                    System.err.println("Skipping malformed line: " + line);
-                }
+            int patientId = Integer.parseInt(parts[0].split(": ")[1].trim());
+            long timestamp = Long.parseLong(parts[1].split(": ")[1].trim());
+            String label = parts[2].split(": ")[1].trim();
+            double data = BinaryFrameCodec.toValue(parts[3].split(": ")[1].trim());
+            if (Double.isNaN(data)) {
+                throw new NumberFormatException("Not a value");
             }
+            if (timestamp < startTime || timestamp > endTime) {
+                return;
+            }
+
+            dataStorage.addPatientData(patientId, data, label, timestamp);
+        } catch (Exception e) {
+            System.err.println("Skipping malformed line: " + line);
         }
     }
 
+    /**
+     * Sets how often the directory is checked when no file system events arrive, and
+     * how often it is scanned when the platform offers no {@link WatchService}.
+     *
+     * @param pollIntervalMillis the poll interval in milliseconds
+     */
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Starts following every {@code *.txt} file and compressed segment in the directory
+     * on a background thread.
+     * Previously persisted offsets are loaded first, so only data appended since the last
+     * run is imported.
+     *
+     * @throws IllegalStateException if the reader was created without a target sink
+     */
     @Override
-    public void startReading(){
-        
+    public synchronized void startReading() {
+        if (target == null) {
+            throw new IllegalStateException("No target sink configured for continuous reading");
+        }
+        if (running) {
+            return;
+        }
+        loadOffsets();
+        running = true;
+        followerThread = new Thread(this::follow, "file-data-reader");
+        followerThread.setDaemon(true);
+        followerThread.start();
     }
 
+    /**
+     * Stops the follower thread and persists the offsets reached so far.
+     */
     @Override
-    public void stopReading(){
-        
+    public synchronized void stopReading() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        followerThread.interrupt();
+        try {
+            followerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        followerThread = null;
+    }
+
+    // Follower loop: reacts to file system events and falls back to polling
+    private void follow() {
+        Path dir = Paths.get(outputDir);
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            scanDirectory();
+            while (running) {
+                WatchKey key = watchService.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // No events: rescan the listing in case some were missed
+                    scanDirectory();
+                    continue;
+                }
+                boolean rescan = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                        String name = event.context().toString();
+                        if (trackedFiles.containsKey(name)) {
+                            // After a rotation the name belongs to a new file; only a scan can tell
+                            rescan |= !readTrackedFile(name);
+                        } else if (name.endsWith(".txt") || name.endsWith(".txt.gz")) {
+                            rescan = true;
+                        }
+                    } else {
+                        // Creation, deletion or overflow: files may have been added or rotated
+                        rescan = true;
+                    }
+                }
+                if (rescan) {
+                    scanDirectory();
+                }
+                saveOffsets();
+                if (!key.reset()) {
+                    System.err.println("Directory is no longer accessible: " + outputDir);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stop requested
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("File watching unavailable, polling " + outputDir + ": " + e.getMessage());
+            poll();
+        } finally {
+            saveOffsets();
+        }
+    }
+
+    // Polling fallback when no WatchService is available
+    private void poll() {
+        while (running) {
+            scanDirectory();
+            saveOffsets();
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lists the directory and reconciles it with the tracked files. A file whose name
+     * now points at a different file (rotation) starts again from offset zero, a tracked
+     * file found under a new name keeps its offset, and a file shorter than its offset
+     * (truncation) is read again from the start. A tracked segment that has since been
+     * compressed continues in its {@code .gz} file at the same offset. A listing can miss
+     * a file renamed while it is read, so a file is only forgotten once two scans in a
+     * row did not find it. Every file is then read up to its end.
+     */
+    private void scanDirectory() {
+        Map<String, TrackedFile> byKey = new HashMap<>();
+        for (TrackedFile tracked : vanishedFiles.values()) {
+            if (tracked.fileKey != null) {
+                byKey.put(tracked.fileKey, tracked);
+            }
+        }
+        for (TrackedFile tracked : trackedFiles.values()) {
+            if (tracked.fileKey != null) {
+                byKey.put(tracked.fileKey, tracked);
+            }
+        }
+
+        Map<String, TrackedFile> current = new HashMap<>();
+        List<Path> compressed = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(outputDir), "*.{txt,txt.gz}")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (isCompletedSegment(name)) {
+                    continue;
+                }
+                if (name.endsWith(".gz")) {
+                    compressed.add(file);
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue; // Removed while listing
+                }
+                String fileKey = attributes.fileKey() == null ? null : attributes.fileKey().toString();
+
+                TrackedFile tracked = fileKey == null ? trackedFiles.get(name) : byKey.get(fileKey);
+                if (tracked == null && fileKey != null) {
+                    TrackedFile sameName = trackedFiles.get(name);
+                    // Offsets loaded from disk may lack a key; otherwise a new key means a new file
+                    if (sameName != null && sameName.fileKey == null) {
+                        tracked = sameName;
+                    }
+                }
+                if (tracked == null) {
+                    tracked = new TrackedFile(0);
+                }
+                tracked.fileKey = fileKey;
+                if (attributes.size() < tracked.offset) {
+                    tracked.offset = 0;
+                }
+                current.put(name, tracked);
+            }
+        } catch (IOException e) {
+            System.err.println("Error listing directory " + outputDir + ": " + e.getMessage());
+            return;
+        }
+        Map<String, TrackedFile> vanished = new HashMap<>(trackedFiles);
+        vanished.values().removeAll(current.values());
+        vanishedFiles.values().removeAll(current.values());
+        trackCompressedSegments(compressed, current, vanished);
+
+        vanishedFiles.clear();
+        vanishedFiles.putAll(vanished);
+        trackingChanged |= !current.keySet().equals(trackedFiles.keySet());
+        trackedFiles.clear();
+        trackedFiles.putAll(current);
+        for (String name : current.keySet()) {
+            readTrackedFile(name);
+        }
+        forgetCompletedSegments();
+    }
+
+    /**
+     * Stops tracking the closed segments that are in the manifest and have been read to
+     * their end, remembering only the highest segment number per label.
+     */
+    private void forgetCompletedSegments() {
+        Iterator<Map.Entry<String, TrackedFile>> entries = trackedFiles.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, TrackedFile> entry = entries.next();
+            TrackedFile tracked = entry.getValue();
+            String name = entry.getKey();
+            Matcher segment = SEGMENT_NAME.matcher(uncompressedName(name));
+            if (!(tracked.compressed ? tracked.complete : tracked.atEnd) || !segment.matches()
+                    || !manifestNames().contains(name)) {
+                continue;
+            }
+            completedSegments.merge(segment.group(1), Integer.parseInt(segment.group(2)), Math::max);
+            entries.remove();
+            trackingChanged = true;
+        }
+    }
+
+    // A closed segment at or below the last one forgotten for its label
+    private boolean isCompletedSegment(String name) {
+        Matcher segment = SEGMENT_NAME.matcher(uncompressedName(name));
+        if (!segment.matches()) {
+            return false;
+        }
+        Integer completed = completedSegments.get(segment.group(1));
+        return completed != null && Integer.parseInt(segment.group(2)) <= completed;
+    }
+
+    private static String uncompressedName(String name) {
+        return name.endsWith(".gz") ? name.substring(0, name.length() - ".gz".length()) : name;
+    }
+
+    private Set<String> manifestNames() {
+        Path file = Paths.get(outputDir, SegmentManifest.FILE_NAME);
+        try {
+            long size = Files.size(file);
+            if (size != manifestSize) {
+                manifestNames.clear();
+                for (SegmentManifest.Entry entry : SegmentManifest.read(Paths.get(outputDir))) {
+                    manifestNames.add(entry.getFileName());
+                }
+                manifestSize = size;
+            }
+        } catch (IOException e) {
+            // No manifest yet: no closed segments
+        }
+        return manifestNames;
+    }
+
+    /**
+     * Adds the compressed segments to the files found by a scan. A segment whose
+     * original is still listed is left to the original. The first compressed segment of
+     * a label takes over the offset of a tracked file that disappeared: the segment's
+     * own {@code .txt} name, or the label's active file if the segment was renamed and
+     * compressed between two scans.
+     */
+    private void trackCompressedSegments(List<Path> compressed, Map<String, TrackedFile> current,
+                                         Map<String, TrackedFile> vanished) {
+        compressed.sort(null);
+        for (Path file : compressed) {
+            String name = file.getFileName().toString();
+            String original = name.substring(0, name.length() - ".gz".length());
+            if (current.containsKey(original)) {
+                continue;
+            }
+            TrackedFile tracked = claimVanished(vanished, name);
+            if (tracked == null) {
+                tracked = claimVanished(vanished, original);
+            }
+            Matcher segment = SEGMENT_NAME.matcher(original);
+            if (tracked == null && !trackedFiles.containsKey(name) && segment.matches()) {
+                tracked = claimVanished(vanished, segment.group(1) + ".txt");
+            }
+            if (tracked == null) {
+                tracked = new TrackedFile(0);
+            }
+            try {
+                Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+                tracked.fileKey = fileKey == null ? null : fileKey.toString();
+            } catch (IOException e) {
+                continue; // Removed while listing
+            }
+            tracked.compressed = true;
+            current.put(name, tracked);
+        }
+    }
+
+    // Takes a file that disappeared in this scan or the one before
+    private TrackedFile claimVanished(Map<String, TrackedFile> vanished, String name) {
+        TrackedFile tracked = vanished.remove(name);
+        return tracked != null ? tracked : vanishedFiles.remove(name);
+    }
+
+    /**
+     * Reads what was appended to a tracked file. A compressed segment no longer
+     * changes, so it is read once from its offset to the end.
+     *
+     * @return {@code false} if the name no longer refers to the tracked file, in which
+     *         case nothing is read and the directory must be scanned
+     */
+    private boolean readTrackedFile(String name) {
+        TrackedFile tracked = trackedFiles.get(name);
+        Path file = Paths.get(outputDir, name);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey();
+            if (tracked.fileKey != null && (fileKey == null || !tracked.fileKey.equals(fileKey.toString()))) {
+                return false;
+            }
+            if (tracked.compressed) {
+                if (!tracked.complete) {
+                    try (InputStream in = new GZIPInputStream(Files.newInputStream(file), READ_BUFFER_SIZE)) {
+                        tracked.offset = readLines(in, tracked.offset);
+                    }
+                    tracked.complete = true;
+                    tracked.dirty = true;
+                }
+                return true;
+            }
+            long size = attributes.size();
+            if (size < tracked.offset) {
+                tracked.offset = 0;
+            }
+            if (size > tracked.offset) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    channel.position(tracked.offset);
+                    tracked.offset = readLines(Channels.newInputStream(channel), tracked.offset);
+                }
+                tracked.dirty = true;
+            }
+            tracked.atEnd = tracked.offset == size;
+            return true;
+        } catch (IOException e) {
+            // The file was rotated away; the next scan reconciles it
+            return false;
+        }
+    }
+
+    /**
+     * Skips to {@code offset} and reads the complete lines after it. A trailing partial
+     * line is left for the next read.
+     *
+     * @param in     the file's content, positioned at {@code offset} or at its start
+     * @param offset the offset of the first unread byte
+     * @return the offset just past the last complete line read
+     */
+    private long readLines(InputStream in, long offset) throws IOException {
+        if (in instanceof GZIPInputStream) {
+            for (long skipped = 0; skipped < offset; ) {
+                long count = in.skip(offset - skipped);
+                if (count <= 0) {
+                    return skipped; // Shorter than the offset
+                }
+                skipped += count;
+            }
+        }
+        byte[] bytes = new byte[READ_BUFFER_SIZE];
+        int limit = 0;
+        long position = offset;
+        int read;
+        while ((read = in.read(bytes, limit, bytes.length - limit)) > 0) {
+            limit += read;
+            int lineStart = 0;
+            for (int i = 0; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    parseLine(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8), target,
+                            Long.MIN_VALUE, Long.MAX_VALUE);
+                    position += i + 1 - lineStart;
+                    lineStart = i + 1;
+                }
+            }
+            System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+            limit -= lineStart;
+            if (limit == bytes.length) {
+                // A single line longer than the buffer
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+        return position;
+    }
+
+    private void loadOffsets() {
+        trackedFiles.clear();
+        vanishedFiles.clear();
+        completedSegments.clear();
+        if (!Files.exists(offsetsFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(offsetsFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("Error loading offsets from " + offsetsFile + ": " + e.getMessage());
+            return;
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (name.endsWith(".key")) {
+                continue;
+            }
+            try {
+                if (name.endsWith(COMPLETED_SUFFIX)) {
+                    completedSegments.put(name.substring(0, name.length() - COMPLETED_SUFFIX.length()),
+                            Integer.parseInt(properties.getProperty(name)));
+                    continue;
+                }
+                TrackedFile tracked = new TrackedFile(Long.parseLong(properties.getProperty(name)));
+                tracked.fileKey = properties.getProperty(name + ".key");
+                trackedFiles.put(name, tracked);
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid offset for " + name);
+            }
+        }
+    }
+
+    // Writes the offsets to a temporary file and moves it into place
+    private void saveOffsets() {
+        boolean dirty = trackingChanged;
+        for (TrackedFile tracked : trackedFiles.values()) {
+            dirty |= tracked.dirty;
+        }
+        if (!dirty) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, TrackedFile> entry : trackedFiles.entrySet()) {
+            properties.setProperty(entry.getKey(), Long.toString(entry.getValue().offset));
+            if (entry.getValue().fileKey != null) {
+                properties.setProperty(entry.getKey() + ".key", entry.getValue().fileKey);
+            }
+        }
+        for (Map.Entry<String, Integer> completed : completedSegments.entrySet()) {
+            properties.setProperty(completed.getKey() + COMPLETED_SUFFIX, Integer.toString(completed.getValue()));
+        }
+        Path temp = offsetsFile.resolveSibling(offsetsFile.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "FileDataReader offsets");
+            }
+            Files.move(temp, offsetsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (TrackedFile tracked : trackedFiles.values()) {
+                tracked.dirty = false;
+            }
+            trackingChanged = false;
+        } catch (IOException e) {
+            System.err.println("Error saving offsets to " + offsetsFile + ": " + e.getMessage());
+        }
+    }
+
+    // Read position and identity of a followed file; the offset of a compressed file counts uncompressed bytes
+    private static class TrackedFile {
+        long offset;
+        String fileKey;
+        boolean dirty;
+        boolean compressed;
+        // A compressed file read to its end
+        boolean complete;
+        // A plain file read up to its size at the last read
+        boolean atEnd;
+
+        TrackedFile(long offset) {
+            this.offset = offset;
+        }
     }
-}
\ No newline at end of file
+}
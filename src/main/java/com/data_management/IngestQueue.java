@@ -0,0 +1,183 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous hand-off between the threads receiving data (for example the WebSocket
+ * read thread) and the storage. Producers only enqueue into {@link BoundedLane}s and
+ * return; a pool of writer threads drains the lanes in batches into the target sink.
+ * Each writer collects a drained batch in its own {@link SampleBatch} and stores it with
+ * one call, so a storage that takes batches locks once per run of a patient's samples.
+ *
+ * Each writer owns one lane and samples are routed to a lane by patient ID, so the
+ * samples of one patient are always written in arrival order. When a lane is full the
+ * configured {@link OverflowPolicy} decides what is dropped. Queue depth and the
+ * number of enqueued, written and dropped samples are exposed as metrics.
+ */
+public class IngestQueue implements PatientDataSink {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final PatientDataSink target;
+    private final List<BoundedLane<Sample>> lanes = new ArrayList<>();
+    private final List<Thread> writers = new ArrayList<>();
+
+    // Samples offered before start
+    private final AtomicLong rejectedSamples = new AtomicLong();
+    private volatile boolean running;
+
+    /**
+     * Creates a queue; call {@link #start()} to start the writers.
+     *
+     * @param target         sink the writers store the samples into
+     * @param capacity       capacity of each writer's lane
+     * @param writerThreads  number of writer threads
+     * @param overflowPolicy what to do when a lane is full
+     */
+    public IngestQueue(PatientDataSink target, int capacity, int writerThreads, OverflowPolicy overflowPolicy) {
+        if (writerThreads < 1) {
+            throw new IllegalArgumentException("At least one writer thread is required: " + writerThreads);
+        }
+        this.target = target;
+        for (int i = 0; i < writerThreads; i++) {
+            lanes.add(new BoundedLane<>(capacity, overflowPolicy,
+                    sample -> SignalPriority.of(sample.recordType) == SignalPriority.LOW));
+        }
+    }
+
+    /**
+     * Starts the writer threads. A closed queue cannot be started again.
+     */
+    public synchronized void start() {
+        if (running || lanes.get(0).isClosed()) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < lanes.size(); i++) {
+            BoundedLane<Sample> lane = lanes.get(i);
+            SampleBatch batch = new SampleBatch(BATCH_SIZE);
+            Thread writer = new Thread(() -> lane.drainUntilClosed(
+                    sample -> batch.add(sample.patientId, sample.measurementValue, sample.recordType, sample.timestamp),
+                    () -> write(batch), BATCH_SIZE), "ingest-writer-" + i);
+            writer.setDaemon(true);
+            writers.add(writer);
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops accepting samples, lets the writers store everything still queued and waits
+     * for them to finish. A queue closed before it was started stays closed.
+     */
+    public synchronized void close() {
+        running = false;
+        for (BoundedLane<Sample> lane : lanes) {
+            lane.close();
+        }
+        for (Thread writer : writers) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        writers.clear();
+    }
+
+    /**
+     * Enqueues a sample for asynchronous storage. Depending on the overflow policy this
+     * may block, drop the sample, or drop an older one.
+     */
+    @Override
+    public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        if (!running) {
+            rejectedSamples.incrementAndGet();
+            return;
+        }
+        lanes.get(Math.floorMod(patientId, lanes.size()))
+                .offer(new Sample(patientId, measurementValue, recordType, timestamp));
+    }
+
+    /**
+     * Enqueues the samples of a batch, as {@link #addPatientData(int, double, String, long)}
+     * does for each of them.
+     */
+    @Override
+    public void addPatientData(SampleBatch batch) {
+        if (!running) {
+            rejectedSamples.addAndGet(batch.size());
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            int patientId = batch.getPatientId(i);
+            lanes.get(Math.floorMod(patientId, lanes.size())).offer(new Sample(patientId,
+                    batch.getMeasurementValue(i), batch.getRecordType(i), batch.getTimestamp(i)));
+        }
+    }
+
+    // Stores the batch a writer drained and clears it for the next one
+    private void write(SampleBatch batch) {
+        try {
+            target.addPatientData(batch);
+        } catch (Exception e) {
+            System.err.println("Error storing " + batch.size() + " samples: " + e.getMessage());
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return the number of samples currently queued over all lanes
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (BoundedLane<Sample> lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    public long getEnqueuedSamples() {
+        long enqueued = 0;
+        for (BoundedLane<Sample> lane : lanes) {
+            enqueued += lane.getEnqueued();
+        }
+        return enqueued;
+    }
+
+    public long getWrittenSamples() {
+        long written = 0;
+        for (BoundedLane<Sample> lane : lanes) {
+            written += lane.getDrained();
+        }
+        return written;
+    }
+
+    public long getDroppedSamples() {
+        long dropped = rejectedSamples.get();
+        for (BoundedLane<Sample> lane : lanes) {
+            dropped += lane.getDropped();
+        }
+        return dropped;
+    }
+
+    // A queued measurement
+    private static class Sample {
+        final int patientId;
+        final double measurementValue;
+        final String recordType;
+        final long timestamp;
+
+        Sample(int patientId, double measurementValue, String recordType, long timestamp) {
+            this.patientId = patientId;
+            this.measurementValue = measurementValue;
+            this.recordType = recordType;
+            this.timestamp = timestamp;
+        }
+    }
+}
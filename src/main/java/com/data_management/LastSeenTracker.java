@@ -0,0 +1,118 @@
+package com.data_management;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sink decorator that remembers the newest timestamp seen for every patient and record
+ * type, so that a reconnecting reader can ask for a replay and the overlap of the replay
+ * with what was already received is dropped here instead of reaching the storage.
+ *
+ * Samples pass unfiltered until {@link #beginResume()} is called. From then on, the
+ * samples of each patient and record type that are not newer than the last one seen
+ * before the reconnect are discarded, until the first newer one arrives: the replay has
+ * then moved past the data already received and later samples, also out of order
+ * ones, pass again.
+ */
+public class LastSeenTracker implements PatientDataSink {
+
+    // No resume in progress for a patient and record type
+    private static final long NOT_RESUMING = Long.MIN_VALUE;
+
+    private final PatientDataSink delegate;
+    private final Map<Integer, Map<String, Seen>> lastSeen = new ConcurrentHashMap<>();
+    private final AtomicLong duplicatesDiscarded = new AtomicLong();
+    private final AtomicLong newestTimestamp = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param delegate the sink receiving the samples that are not duplicates
+     */
+    public LastSeenTracker(PatientDataSink delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        Map<String, Seen> patientLastSeen = lastSeen.computeIfAbsent(patientId, id -> new HashMap<>());
+        synchronized (patientLastSeen) {
+            Seen seen = patientLastSeen.get(recordType);
+            if (seen == null) {
+                patientLastSeen.put(recordType, new Seen(timestamp));
+            } else {
+                if (seen.resumeAfter != NOT_RESUMING) {
+                    if (timestamp <= seen.resumeAfter) {
+                        duplicatesDiscarded.incrementAndGet();
+                        return;
+                    }
+                    seen.resumeAfter = NOT_RESUMING;
+                }
+                seen.timestamp = Math.max(seen.timestamp, timestamp);
+            }
+        }
+        if (timestamp > newestTimestamp.get()) {
+            newestTimestamp.accumulateAndGet(timestamp, Math::max);
+        }
+        delegate.addPatientData(patientId, measurementValue, recordType, timestamp);
+    }
+
+    /**
+     * Starts discarding the replayed samples that were already received, and returns
+     * the timestamp to ask the server to replay from: the oldest of the newest
+     * timestamps seen per patient and record type, so no signal misses anything.
+     *
+     * @return the timestamp to resume from, or {@link Long#MIN_VALUE} if nothing was
+     *         seen yet
+     */
+    public long beginResume() {
+        long since = Long.MAX_VALUE;
+        for (Map<String, Seen> patientLastSeen : lastSeen.values()) {
+            synchronized (patientLastSeen) {
+                for (Seen seen : patientLastSeen.values()) {
+                    seen.resumeAfter = seen.timestamp;
+                    since = Math.min(since, seen.timestamp);
+                }
+            }
+        }
+        return since == Long.MAX_VALUE ? Long.MIN_VALUE : since;
+    }
+
+    /**
+     * Returns the newest timestamp seen for a patient and record type.
+     *
+     * @return the timestamp, or {@code null} if nothing was seen yet
+     */
+    public Long getLastSeen(int patientId, String recordType) {
+        Map<String, Seen> patientLastSeen = lastSeen.get(patientId);
+        if (patientLastSeen == null) {
+            return null;
+        }
+        synchronized (patientLastSeen) {
+            Seen seen = patientLastSeen.get(recordType);
+            return seen == null ? null : seen.timestamp;
+        }
+    }
+
+    /**
+     * @return the newest timestamp over all patients and record types, or
+     *         {@link Long#MIN_VALUE} if nothing was seen yet
+     */
+    public long getNewestTimestamp() {
+        return newestTimestamp.get();
+    }
+
+    public long getDuplicatesDiscarded() {
+        return duplicatesDiscarded.get();
+    }
+
+    // What was seen of one patient and record type; guarded by the patient's map
+    private static class Seen {
+        long timestamp;
+        long resumeAfter = NOT_RESUMING;
+
+        Seen(long timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+}
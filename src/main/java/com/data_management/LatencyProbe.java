@@ -0,0 +1,167 @@
+package com.data_management;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sink decorator that measures ingest latency. The simulator's load mode sends
+ * {@code LoadProbe} samples whose value is their send time in microseconds since the
+ * epoch; for each one that arrives here the time since it was sent is recorded in a
+ * histogram. All samples, probes included, are passed on to the wrapped sink, so the
+ * latency covers the way from the generator up to the storage.
+ *
+ * The histogram has exact buckets below 64 us and 32 buckets per power of two above,
+ * so percentiles are within about 3% of the true value. Recording is lock-free. The
+ * sender and this probe compare wall clocks, so across machines the clocks must be
+ * synchronized.
+ */
+public class LatencyProbe implements PatientDataSink {
+
+    private static final String PROBE_LABEL = SignalCode.LOAD_PROBE.label();
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 6) * SUB_BUCKETS;
+
+    private final PatientDataSink delegate;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * @param delegate the sink receiving every sample
+     */
+    public LatencyProbe(PatientDataSink delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the current wall clock time in microseconds since the epoch, as sent in probe samples
+     */
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+    @Override
+    public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        if (PROBE_LABEL.equals(recordType)) {
+            record(nowMicros() - (long) measurementValue);
+        }
+        delegate.addPatientData(patientId, measurementValue, recordType, timestamp);
+    }
+
+    /**
+     * Records the probes of the batch against one reading of the clock, then hands the
+     * batch on whole.
+     */
+    @Override
+    public void addPatientData(SampleBatch batch) {
+        long now = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (PROBE_LABEL.equals(batch.getRecordType(i))) {
+                if (now == 0) {
+                    now = nowMicros();
+                }
+                record(now - (long) batch.getMeasurementValue(i));
+            }
+        }
+        delegate.addPatientData(batch);
+    }
+
+    /**
+     * Records one latency; negative values, from clocks out of step, count as 0.
+     *
+     * @param micros the latency in microseconds
+     */
+    public void record(long micros) {
+        micros = Math.max(0, micros);
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    /**
+     * @return the number of probes recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMicros() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) totalMicros.get() / recorded;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns the latency that the given fraction of the probes did not exceed.
+     *
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the latency in microseconds, or 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double quantile) {
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Clears the recorded latencies, e.g. between the steps of a load test.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /**
+     * @return count, mean, p50, p90, p99, p99.9 and max on one line
+     */
+    public String formatSummary() {
+        return String.format("probes %d, mean %.0f us, p50 %d us, p90 %d us, p99 %d us, p99.9 %d us, max %d us",
+                getCount(), getMeanMicros(), getPercentileMicros(0.5), getPercentileMicros(0.9),
+                getPercentileMicros(0.99), getPercentileMicros(0.999), getMaxMicros());
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 6) * SUB_BUCKETS + subBucket;
+    }
+
+    // The largest latency that falls into the bucket
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 6;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket) << shift) + (1L << shift) - 1;
+    }
+}
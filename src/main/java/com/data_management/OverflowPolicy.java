@@ -0,0 +1,17 @@
+package com.data_management;
+
+/**
+ * What a bounded queue does with a new sample when it has no room for it.
+ */
+public enum OverflowPolicy {
+    /** Wait until a consumer frees a slot. */
+    BLOCK,
+    /** Discard the oldest queued sample to make room. */
+    DROP_OLDEST,
+    /**
+     * Keep headroom for important signals: low priority samples (see {@link SignalPriority})
+     * are discarded once the queue is three quarters full or when it is full; others
+     * wait for a free slot, so they never push out a queued sample.
+     */
+    DROP_LOW_PRIORITY
+}
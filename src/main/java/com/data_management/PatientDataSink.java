@@ -0,0 +1,32 @@
+package com.data_management;
+
+/**
+ * Destination for incoming patient measurements. Implemented by the storages and by
+ * {@link IngestQueue}, so readers can write either directly into a storage or through
+ * an asynchronous queue.
+ */
+public interface PatientDataSink {
+
+    /**
+     * Accepts a single measurement.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordType       the type of record, e.g., "HeartRate", "BloodPressure"
+     * @param timestamp        the time at which the measurement was taken, in milliseconds since the Unix epoch
+     */
+    void addPatientData(int patientId, double measurementValue, String recordType, long timestamp);
+
+    /**
+     * Accepts every measurement in a batch. Implementations may override this to take
+     * their locks once per batch instead of once per sample.
+     *
+     * @param batch the measurements; the caller may reuse it after this method returns
+     */
+    default void addPatientData(SampleBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            addPatientData(batch.getPatientId(i), batch.getMeasurementValue(i), batch.getRecordType(i),
+                    batch.getTimestamp(i));
+        }
+    }
+}
@@ -2,43 +2,107 @@ package com.data_management;
 
 import com.webSocket.RealTimeWebSocketClient;
 import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
  * RealTimeDataReader implements DataReader and reads real-time data
  * via WebSocket connection. It manages WebSocket client that listens to incoming data.
+ *
+ * When the connection drops the reader reconnects with exponential backoff. After
+ * reconnecting it asks the server to replay everything since the oldest of the newest
+ * timestamps seen per patient and signal, so no signal misses samples, and the samples
+ * already received are discarded by a LastSeenTracker before they reach the storage.
  */
 
 public class RealTimeDataReader implements DataReader {
 
+    //Backoff bounds for reconnect attempts
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
     //WebSocket client instance
     private RealTimeWebSocketClient client;
 
+    //Drops samples already received before a reconnect
+    private final LastSeenTracker tracker;
+
+    //Created by startReading, so a stopped reader can be started again
+    private volatile ScheduledExecutorService reconnectScheduler;
+    private final AtomicBoolean reconnectPending = new AtomicBoolean();
+    private volatile boolean stopped = true;
+    private boolean started;
+    private volatile int failedAttempts;
+    private volatile boolean everConnected;
+    private volatile long disconnectedAt;
+    private volatile long lastRecoveryMillis = -1;
+    private volatile int reconnects;
+
+
 
-    
    /**
      * Constructor initializes the WebSocket client with the given URL.
-     * 
+     *
      * @param wsUrl WebSocket server URL
      * @throws Exception if URI is invalid or client initialization fails
      */
     public RealTimeDataReader(String wsUrl) throws Exception {
-        
-        client = new RealTimeWebSocketClient(new URI(wsUrl));
+
+        this(wsUrl, DataStorageSingleton.getInstance());
     }
 
-    //Establishes a blocking connection to the WebSocket server
+    /**
+     * Constructor initializes the WebSocket client with the given URL and a sink
+     * for the received data, e.g. an IngestQueue.
+     *
+     * @param wsUrl WebSocket server URL
+     * @param sink  where the received samples are stored
+     * @throws Exception if URI is invalid or client initialization fails
+     */
+    public RealTimeDataReader(String wsUrl, PatientDataSink sink) throws Exception {
+
+        tracker = new LastSeenTracker(sink);
+        client = new RealTimeWebSocketClient(new URI(wsUrl), tracker);
+        client.setConnectionListener(new ReconnectingListener());
+    }
+
+    //Establishes a blocking connection to the WebSocket server; failures are retried in the background
     @Override
-    public void startReading() {
+    public synchronized void startReading() {
+        if (!stopped) {
+            return;
+        }
+        stopped = false;
+        reconnectScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
-            client.connectBlocking();  
+            // A client can only be connected once; later starts reuse it through reconnect
+            if (started) {
+                client.reconnectBlocking();
+            } else {
+                started = true;
+                client.connectBlocking();
+            }
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
     }
 
-    //Closes the WebSocket connection
+    //Closes the WebSocket connection and stops reconnecting
     @Override
-    public void stopReading() {
+    public synchronized void stopReading() {
+        stopped = true;
+        if (reconnectScheduler != null) {
+            reconnectScheduler.shutdownNow();
+        }
+        reconnectPending.set(false);
         try {
             client.close();
         } catch (Exception e) {
@@ -50,4 +114,82 @@ public class RealTimeDataReader implements DataReader {
     public void readData(DataStorage dataStorage){
         //Not used in this class
     }
-}
\ No newline at end of file
+
+    /**
+     * @return how long the last outage lasted until the connection was restored, in
+     *         milliseconds, or -1 if there was no outage yet
+     */
+    public long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    /**
+     * @return how many times the connection was restored
+     */
+    public int getReconnects() {
+        return reconnects;
+    }
+
+    /**
+     * @return how many replayed samples were discarded as already received
+     */
+    public long getDuplicatesDiscarded() {
+        return tracker.getDuplicatesDiscarded();
+    }
+
+    // Schedules the next reconnect attempt, doubling the delay after every failure
+    private void scheduleReconnect() {
+        if (stopped || !reconnectPending.compareAndSet(false, true)) {
+            return;
+        }
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(failedAttempts, 16));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        failedAttempts++;
+        try {
+            reconnectScheduler.schedule(() -> {
+                reconnectPending.set(false);
+                if (stopped) {
+                    return;
+                }
+                try {
+                    // A failed attempt closes the client again, which schedules the next one
+                    client.reconnectBlocking();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Reader was stopped
+        }
+    }
+
+    private class ReconnectingListener implements RealTimeWebSocketClient.ConnectionListener {
+
+        @Override
+        public void onConnected(RealTimeWebSocketClient connectedClient) {
+            failedAttempts = 0;
+            everConnected = true;
+            if (disconnectedAt > 0) {
+                lastRecoveryMillis = System.currentTimeMillis() - disconnectedAt;
+                reconnects++;
+                disconnectedAt = 0;
+                System.out.printf("Reconnected after %.1f s%n", lastRecoveryMillis / 1000.0);
+            }
+            long since = tracker.beginResume();
+            if (since != Long.MIN_VALUE) {
+                connectedClient.send("{\"type\":\"resume\",\"since\":" + since + "}");
+            }
+        }
+
+        @Override
+        public void onDisconnected(RealTimeWebSocketClient disconnectedClient, int code, String reason, boolean remote) {
+            if (stopped) {
+                return;
+            }
+            if (everConnected && disconnectedAt == 0) {
+                disconnectedAt = System.currentTimeMillis();
+            }
+            scheduleReconnect();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.data_management;
+
+/**
+ * Reusable batch of measurements held in parallel primitive arrays, so readers can
+ * collect many samples without allocating an object per sample and hand them to a
+ * {@link PatientDataSink} in one call.
+ */
+public class SampleBatch {
+
+    private final int[] patientIds;
+    private final double[] measurementValues;
+    private final String[] recordTypes;
+    private final long[] timestamps;
+    private int size;
+
+    /**
+     * @param capacity the maximum number of samples in the batch
+     */
+    public SampleBatch(int capacity) {
+        patientIds = new int[capacity];
+        measurementValues = new double[capacity];
+        recordTypes = new String[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(int patientId, double measurementValue, String recordType, long timestamp) {
+        if (size == patientIds.length) {
+            throw new IllegalStateException("Batch is full");
+        }
+        patientIds[size] = patientId;
+        measurementValues[size] = measurementValue;
+        recordTypes[size] = recordType;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == patientIds.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int getPatientId(int index) {
+        return patientIds[index];
+    }
+
+    public double getMeasurementValue(int index) {
+        return measurementValues[index];
+    }
+
+    public String getRecordType(int index) {
+        return recordTypes[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+}
@@ -0,0 +1,123 @@
+package com.data_management;
+
+/**
+ * Numeric codes for the signal labels produced by the simulator, used where a label
+ * would otherwise be sent or compared as a String. {@link #UNKNOWN} stands for a label
+ * without a code of its own. The codes are part of the binary wire format, so a
+ * constant keeps its code once it has been released.
+ */
+public enum SignalCode {
+    UNKNOWN(0, null),
+    ECG(1, "ECG"),
+    SATURATION(2, "Saturation"),
+    SYSTOLIC_PRESSURE(3, "SystolicPressure"),
+    DIASTOLIC_PRESSURE(4, "DiastolicPressure"),
+    CHOLESTEROL(5, "Cholesterol"),
+    WHITE_BLOOD_CELLS(6, "WhiteBloodCells"),
+    RED_BLOOD_CELLS(7, "RedBloodCells"),
+    ALERT(8, "Alert"),
+    HEART_RATE(9, "HeartRate"),
+    /** A load generator sample whose value is its send time in microseconds since the epoch. */
+    LOAD_PROBE(10, "LoadProbe");
+
+    // Declared in code order, so indexed by code
+    private static final SignalCode[] BY_CODE = values();
+
+    private final int code;
+    private final String label;
+
+    SignalCode(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    /**
+     * @return the code sent on the wire
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * @return the label, or {@code null} for {@link #UNKNOWN}
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Returns the label of a signal that must have one.
+     *
+     * @throws IllegalArgumentException for {@link #UNKNOWN}
+     */
+    public String requireLabel() {
+        if (label == null) {
+            throw new IllegalArgumentException("Signal " + this + " has no label");
+        }
+        return label;
+    }
+
+    /**
+     * Returns the signal of a label.
+     *
+     * @param label the record type, e.g. "ECG" or "SystolicPressure"
+     * @return the signal, or {@link #UNKNOWN} if the label has no code
+     */
+    public static SignalCode of(String label) {
+        switch (label) {
+            case "ECG":
+                return ECG;
+            case "Saturation":
+                return SATURATION;
+            case "SystolicPressure":
+                return SYSTOLIC_PRESSURE;
+            case "DiastolicPressure":
+                return DIASTOLIC_PRESSURE;
+            case "Cholesterol":
+                return CHOLESTEROL;
+            case "WhiteBloodCells":
+                return WHITE_BLOOD_CELLS;
+            case "RedBloodCells":
+                return RED_BLOOD_CELLS;
+            case "Alert":
+                return ALERT;
+            case "HeartRate":
+                return HEART_RATE;
+            case "LoadProbe":
+                return LOAD_PROBE;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    /**
+     * Returns the signal of a wire code.
+     *
+     * @throws IllegalArgumentException if no signal has the code
+     */
+    public static SignalCode fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown signal code " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Formats a value as the text data of a sample: "triggered" or "resolved" for an
+     * alert, the decimal value otherwise.
+     */
+    public String format(double value) {
+        if (this == ALERT) {
+            return value != 0 ? "triggered" : "resolved";
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Appends a value as formatted by {@link #format(double)}, without creating an
+     * intermediate String for numbers.
+     */
+    public StringBuilder appendValue(StringBuilder out, double value) {
+        return this == ALERT ? out.append(format(value)) : out.append(value);
+    }
+}
@@ -0,0 +1,33 @@
+package com.data_management;
+
+/**
+ * Ranks signal labels by clinical importance, used when samples have to be dropped.
+ * High rate waveforms lose least when a sample is missing; alerts and vital signs
+ * taken once a minute lose most.
+ */
+public enum SignalPriority {
+    LOW,
+    NORMAL,
+    HIGH;
+
+    /**
+     * Returns the priority of a signal label.
+     *
+     * @param label the record type, e.g. "ECG" or "SystolicPressure"
+     * @return the priority; {@link #NORMAL} for labels not ranked otherwise
+     */
+    public static SignalPriority of(String label) {
+        switch (label) {
+            case "ECG":
+                return LOW;
+            case "Alert":
+            case "SystolicPressure":
+            case "DiastolicPressure":
+            case "Saturation":
+            case "HeartRate":
+                return HIGH;
+            default:
+                return NORMAL;
+        }
+    }
+}
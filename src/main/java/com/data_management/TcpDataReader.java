@@ -0,0 +1,691 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the "patientId,timestamp,label,data" lines streamed by the simulator's
+ * {@code TcpOutputStrategy}.
+ *
+ * All endpoints are served by one thread using non-blocking channels and a
+ * {@link Selector}. Each connection reads into its own direct buffer and lines are
+ * parsed in place: numbers are decoded straight from the bytes and labels are looked up
+ * in a small cache, so no String is created per line. Parsed samples are collected in a
+ * {@link SampleBatch} and handed to the sink once per batch.
+ *
+ * With {@link WireFormat#BINARY} the streams carry {@link BinaryFrameCodec} frames
+ * instead of lines, which are decoded straight into the batch.
+ *
+ * {@link #readData(DataStorage)} reads until every endpoint has closed its connection.
+ * {@link #startReading()} reads on a background thread and reconnects endpoints whose
+ * connection failed or closed.
+ *
+ * A reader can also listen instead of connecting, as the aggregator of simulators that
+ * push their samples to it, e.g. the processes of a partitioned simulation. It then
+ * accepts any number of simulators on the same selector thread. A pushing simulator
+ * starts every connection with a {@link #HELLO_PREFIX} line naming itself, so that one
+ * that reconnects is still counted once; a connection without it counts as a simulator
+ * of its own.
+ */
+public class TcpDataReader implements DataReader {
+
+    /**
+     * Start of the "SIMULATOR id" line a pushing simulator sends before its samples.
+     */
+    public static final String HELLO_PREFIX = "SIMULATOR ";
+    private static final byte[] HELLO_PREFIX_BYTES = HELLO_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 1024;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    // Binary connections grow their buffer up to this size to fit a whole frame
+    private static final int MAX_FRAME_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final List<InetSocketAddress> endpoints;
+    private final PatientDataSink target;
+    private final WireFormat wireFormat;
+    // Listening socket of an aggregating reader, otherwise null
+    private final ServerSocketChannel serverChannel;
+    private final int expectedSimulators;
+    private final AtomicLong samplesRead = new AtomicLong();
+    private final AtomicLong malformedLines = new AtomicLong();
+    private volatile boolean running;
+    private volatile Selector selector;
+    private Thread readerThread;
+
+    /**
+     * Creates a reader for a single simulator.
+     *
+     * @param host   host of the simulator's TCP output
+     * @param port   port of the simulator's TCP output
+     * @param target sink receiving the samples in continuous mode
+     */
+    public TcpDataReader(String host, int port, PatientDataSink target) {
+        this(Collections.singletonList(new InetSocketAddress(host, port)), target);
+    }
+
+    /**
+     * Creates a reader that consumes several simulators at once.
+     *
+     * @param endpoints addresses of the simulators' TCP outputs
+     * @param target    sink receiving the samples in continuous mode
+     */
+    public TcpDataReader(List<InetSocketAddress> endpoints, PatientDataSink target) {
+        this(endpoints, target, WireFormat.TEXT);
+    }
+
+    /**
+     * Creates a reader that consumes several simulators using the given wire format.
+     *
+     * @param endpoints  addresses of the simulators' TCP outputs
+     * @param target     sink receiving the samples in continuous mode
+     * @param wireFormat the format the simulators send
+     */
+    public TcpDataReader(List<InetSocketAddress> endpoints, PatientDataSink target, WireFormat wireFormat) {
+        this.endpoints = new ArrayList<>(endpoints);
+        this.target = target;
+        this.wireFormat = wireFormat;
+        this.serverChannel = null;
+        this.expectedSimulators = 0;
+    }
+
+    /**
+     * Creates an aggregating reader that listens for simulators pushing their samples.
+     * The port is bound before returning and stays open until reading ends.
+     *
+     * @param port               the port to listen on, or 0 for any free port
+     * @param expectedSimulators in {@link #readData}, the number of distinct simulators
+     *                           to wait for before returning once all connections have
+     *                           closed
+     * @param target             sink receiving the samples in continuous mode
+     * @param wireFormat         the format the simulators send
+     * @throws IOException if the port cannot be bound
+     */
+    public TcpDataReader(int port, int expectedSimulators, PatientDataSink target, WireFormat wireFormat)
+            throws IOException {
+        this.endpoints = Collections.emptyList();
+        this.target = target;
+        this.wireFormat = wireFormat;
+        this.expectedSimulators = expectedSimulators;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+    }
+
+    /**
+     * @return the port an aggregating reader listens on, or -1 for a connecting reader
+     */
+    public int getLocalPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Connects to every endpoint and stores the received samples until all connections
+     * have been closed by the simulators. An aggregating reader instead waits for the
+     * expected number of distinct simulators to connect and for all of them to close.
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        run(dataStorage, false);
+    }
+
+    /**
+     * Starts reading from all endpoints on a background thread.
+     *
+     * @throws IllegalStateException if the reader was created without a target sink
+     */
+    @Override
+    public synchronized void startReading() {
+        if (target == null) {
+            throw new IllegalStateException("No target sink configured for continuous reading");
+        }
+        if (running) {
+            return;
+        }
+        running = true;
+        readerThread = new Thread(() -> {
+            try {
+                run(target, true);
+            } catch (IOException e) {
+                System.err.println("TCP reader stopped: " + e.getMessage());
+            }
+        }, "tcp-data-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Stops the background thread and closes all connections.
+     */
+    @Override
+    public synchronized void stopReading() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+        try {
+            readerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        readerThread = null;
+    }
+
+    /**
+     * @return the number of samples parsed so far
+     */
+    public long getSamplesRead() {
+        return samplesRead.get();
+    }
+
+    /**
+     * @return the number of lines skipped as malformed, or of invalid binary frames
+     */
+    public long getMalformedLines() {
+        return malformedLines.get();
+    }
+
+    // Selector loop shared by the one-shot and the continuous mode
+    private void run(PatientDataSink sink, boolean continuous) throws IOException {
+        Map<InetSocketAddress, Long> retryAt = new HashMap<>();
+        SampleBatch batch = new SampleBatch(BATCH_SIZE);
+        int openConnections = 0;
+        // Simulators that pushed to an aggregating reader, by the id of their hello
+        Set<String> simulators = new HashSet<>();
+        try (Selector selector = Selector.open()) {
+            this.selector = selector;
+            if (serverChannel != null) {
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+            for (InetSocketAddress endpoint : endpoints) {
+                if (connect(selector, endpoint)) {
+                    openConnections++;
+                } else if (continuous) {
+                    retryAt.put(endpoint, System.currentTimeMillis() + RECONNECT_DELAY_MILLIS);
+                }
+            }
+
+            while (continuous ? running : openConnections > 0 || simulators.size() < expectedSimulators) {
+                selector.select(continuous ? RECONNECT_DELAY_MILLIS : 0);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        if (accept(selector)) {
+                            openConnections++;
+                        }
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    boolean open;
+                    try {
+                        if (key.isConnectable()) {
+                            connection.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                            System.out.println("Connected to simulator at " + connection.endpoint);
+                            open = true;
+                        } else {
+                            open = connection.read(sink, batch);
+                        }
+                        if (connection.simulator != null && simulators.add(connection.simulator)) {
+                            System.out.println("Simulator " + connection.simulator + " joined");
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Connection to " + connection.endpoint + " failed: " + e.getMessage());
+                        open = false;
+                    }
+                    if (!open) {
+                        key.cancel();
+                        connection.close();
+                        openConnections--;
+                        if (continuous && serverChannel == null) {
+                            retryAt.put(connection.endpoint, System.currentTimeMillis() + RECONNECT_DELAY_MILLIS);
+                        }
+                    }
+                }
+                flush(sink, batch);
+
+                if (continuous && !retryAt.isEmpty()) {
+                    long now = System.currentTimeMillis();
+                    Iterator<Map.Entry<InetSocketAddress, Long>> retries = retryAt.entrySet().iterator();
+                    while (retries.hasNext()) {
+                        Map.Entry<InetSocketAddress, Long> retry = retries.next();
+                        if (retry.getValue() <= now) {
+                            if (connect(selector, retry.getKey())) {
+                                openConnections++;
+                                retries.remove();
+                            } else {
+                                retry.setValue(now + RECONNECT_DELAY_MILLIS);
+                            }
+                        }
+                    }
+                }
+            }
+
+            flush(sink, batch);
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() != null) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+        } finally {
+            this.selector = null;
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        }
+    }
+
+    // Accepts a simulator pushing to an aggregating reader
+    private boolean accept(Selector selector) {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return false;
+            }
+            channel.configureBlocking(false);
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            Connection connection = new Connection(remote, channel);
+            connection.helloPending = true;
+            channel.register(selector, SelectionKey.OP_READ, connection);
+            System.out.println("Simulator connected from " + remote);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not accept simulator: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean connect(Selector selector, InetSocketAddress endpoint) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            Connection connection = new Connection(endpoint, channel);
+            if (channel.connect(endpoint)) {
+                channel.register(selector, SelectionKey.OP_READ, connection);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, connection);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not connect to " + endpoint + ": " + e.getMessage());
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already failed
+                }
+            }
+            return false;
+        }
+    }
+
+    private void flush(PatientDataSink sink, SampleBatch batch) {
+        if (!batch.isEmpty()) {
+            sink.addPatientData(batch);
+            batch.clear();
+        }
+    }
+
+    // State of one simulator connection
+    private class Connection {
+        final InetSocketAddress endpoint;
+        final SocketChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final LabelCache labels = new LabelCache();
+        // Set on connections accepted by an aggregating reader until the hello is read
+        boolean helloPending;
+        // Id of the pushing simulator once known, otherwise null
+        String simulator;
+
+        Connection(InetSocketAddress endpoint, SocketChannel channel) {
+            this.endpoint = endpoint;
+            this.channel = channel;
+        }
+
+        /**
+         * Reads what is available and parses every complete line.
+         *
+         * @return {@code false} when the simulator closed the connection
+         */
+        boolean read(PatientDataSink sink, SampleBatch batch) throws IOException {
+            if (wireFormat == WireFormat.BINARY) {
+                return readFrames(sink, batch);
+            }
+            int read;
+            while ((read = channel.read(buffer)) > 0) {
+                buffer.flip();
+                if (helloPending && !readHello()) {
+                    buffer.compact();
+                    continue;
+                }
+                int lineStart = buffer.position();
+                int limit = buffer.limit();
+                for (int i = lineStart; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        if (parseLine(buffer, lineStart, i, batch)) {
+                            samplesRead.incrementAndGet();
+                            if (batch.isFull()) {
+                                flush(sink, batch);
+                            }
+                        } else if (i > lineStart) {
+                            malformedLines.incrementAndGet();
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                buffer.position(lineStart);
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // A line longer than the buffer cannot be valid
+                    malformedLines.incrementAndGet();
+                    buffer.clear();
+                }
+            }
+            return read >= 0;
+        }
+
+        /**
+         * Reads what is available and decodes every complete frame.
+         *
+         * @return {@code false} when the simulator closed the connection
+         * @throws IOException if the stream does not contain valid frames
+         */
+        boolean readFrames(PatientDataSink sink, SampleBatch batch) throws IOException {
+            int read;
+            while ((read = channel.read(buffer)) > 0) {
+                buffer.flip();
+                if (helloPending && !readHello()) {
+                    buffer.compact();
+                    continue;
+                }
+                try {
+                    int count;
+                    while ((count = BinaryFrameCodec.decode(buffer, batch, sink)) >= 0) {
+                        samplesRead.addAndGet(count);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Frame boundaries are lost, nothing after this point can be trusted
+                    malformedLines.incrementAndGet();
+                    throw new IOException("Invalid frame: " + e.getMessage());
+                }
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    if (buffer.capacity() >= MAX_FRAME_BUFFER_SIZE) {
+                        malformedLines.incrementAndGet();
+                        throw new IOException("Frame larger than " + MAX_FRAME_BUFFER_SIZE + " bytes");
+                    }
+                    ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+            return read >= 0;
+        }
+
+        /**
+         * Consumes the hello line at the start of the flipped buffer. A connection that
+         * starts with anything else is a simulator of its own, named after its address,
+         * and its data is left in the buffer.
+         *
+         * @return {@code false} if the hello is not complete yet
+         */
+        private boolean readHello() {
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = 0; i < HELLO_PREFIX_BYTES.length; i++) {
+                if (start + i == limit) {
+                    return false;
+                }
+                if (buffer.get(start + i) != HELLO_PREFIX_BYTES[i]) {
+                    return identify(endpoint.toString());
+                }
+            }
+            for (int i = start + HELLO_PREFIX_BYTES.length; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    String id = ascii(buffer, start + HELLO_PREFIX_BYTES.length, i).trim();
+                    buffer.position(i + 1);
+                    return identify(id);
+                }
+            }
+            // A hello filling the whole buffer is not one
+            return limit == buffer.capacity() && identify(endpoint.toString());
+        }
+
+        private boolean identify(String id) {
+            simulator = id;
+            helloPending = false;
+            return true;
+        }
+
+        // Parses "patientId,timestamp,label,data" between start and end (exclusive)
+        private boolean parseLine(ByteBuffer buf, int start, int end, SampleBatch batch) {
+            if (end > start && buf.get(end - 1) == '\r') {
+                end--;
+            }
+            int firstComma = indexOf(buf, start, end);
+            int secondComma = firstComma < 0 ? -1 : indexOf(buf, firstComma + 1, end);
+            int thirdComma = secondComma < 0 ? -1 : indexOf(buf, secondComma + 1, end);
+            if (thirdComma < 0) {
+                return false;
+            }
+            long patientId = parseLong(buf, start, firstComma);
+            long timestamp = parseLong(buf, firstComma + 1, secondComma);
+            if (patientId < 0 || patientId > Integer.MAX_VALUE || timestamp < 0) {
+                return false;
+            }
+            double value = parseDouble(buf, thirdComma + 1, end);
+            if (Double.isNaN(value)) {
+                // Not a number: an alert state, as in the binary frames, or malformed
+                value = BinaryFrameCodec.toValue(ascii(buf, thirdComma + 1, end));
+                if (Double.isNaN(value)) {
+                    return false;
+                }
+            }
+            batch.add((int) patientId, value, labels.get(buf, secondComma + 1, thirdComma), timestamp);
+            return true;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    private static int indexOf(ByteBuffer buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == ',') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a non-negative decimal integer of at most 18 digits.
+     *
+     * @return the value, or -1 if the bytes are not a valid number
+     */
+    static long parseLong(ByteBuffer buf, int from, int to) {
+        if (to <= from || to - from > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static String ascii(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    // Exactly representable powers of ten
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Parses a decimal number such as "-12.5", "97.0%" or "1.0E-4". Numbers of at most
+     * 15 significant digits with a small exponent, which covers the generated signals,
+     * are converted with one exact multiplication or division and so rounded correctly;
+     * other numbers are handed to {@link Double#parseDouble(String)}.
+     *
+     * @return the value, or NaN if the bytes are not a number
+     */
+    static double parseDouble(ByteBuffer buf, int from, int to) {
+        if (to > from && buf.get(to - 1) == '%') {
+            to--;
+        }
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        boolean truncated = false;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            anyDigit = true;
+            if (significantDigits < 18) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+                if (fraction) {
+                    exponent--;
+                }
+            } else {
+                truncated |= digit != 0;
+                if (!fraction) {
+                    exponent++;
+                }
+            }
+        }
+        if (!anyDigit) {
+            return Double.NaN;
+        }
+        if (i < to && (buf.get(i) == 'e' || buf.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+                negativeExponent = buf.get(i) == '-';
+                i++;
+            }
+            int value = 0;
+            int exponentStart = i;
+            for (; i < to; i++) {
+                int digit = buf.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return Double.NaN;
+                }
+                value = Math.min(value * 10 + digit, 1000);
+            }
+            if (i == exponentStart) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i != to) {
+            return Double.NaN;
+        }
+        if (truncated || mantissa >= 1L << 53 || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            // Both operands would not be exact; the JDK rounds these correctly
+            return Double.parseDouble(ascii(buf, from, to));
+        }
+        double result = mantissa;
+        if (exponent < 0) {
+            result /= POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0) {
+            result *= POWERS_OF_TEN[exponent];
+        }
+        return negative ? -result : result;
+    }
+
+    // Maps label bytes to a shared String instance; signals use only a handful of labels
+    private static class LabelCache {
+        private static final int MAX_LABELS = 64;
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+
+        String get(ByteBuffer buf, int from, int to) {
+            int length = to - from;
+            search:
+            for (int k = 0; k < keys.size(); k++) {
+                byte[] key = keys.get(k);
+                if (key.length != length) {
+                    continue;
+                }
+                for (int j = 0; j < length; j++) {
+                    if (buf.get(from + j) != key[j]) {
+                        continue search;
+                    }
+                }
+                return labels.get(k);
+            }
+            byte[] bytes = new byte[length];
+            for (int j = 0; j < length; j++) {
+                bytes[j] = buf.get(from + j);
+            }
+            String label = new String(bytes, StandardCharsets.UTF_8);
+            if (keys.size() < MAX_LABELS) {
+                keys.add(bytes);
+                labels.add(label);
+            }
+            return label;
+        }
+    }
+}
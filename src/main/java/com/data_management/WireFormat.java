@@ -0,0 +1,11 @@
+package com.data_management;
+
+/**
+ * How samples are encoded on a TCP or WebSocket stream.
+ */
+public enum WireFormat {
+    /** "patientId,timestamp,label,data" lines. */
+    TEXT,
+    /** Frames of fixed-width samples, see {@link BinaryFrameCodec}. */
+    BINARY
+}
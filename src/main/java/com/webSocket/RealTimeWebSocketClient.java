@@ -2,16 +2,24 @@ package com.webSocket;
 
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.data_management.BinaryFrameCodec;
 import com.data_management.DataStorageSingleton;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.data_management.PatientDataSink;
+import com.data_management.SampleBatch;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 /**
  * RealTimeWebSocketClient extends WebSocketClient to handle incoming real-time
  * patient data over WebSocket connection. It parses incoming JSON messages
- * and stores the data in the DataStorageSingleton
+ * and stores the data in the DataStorageSingleton, or in another sink such as an
+ * IngestQueue that moves storage work off the WebSocket read thread
  * 
  * Expected JSON message:
  * {
@@ -20,12 +28,41 @@ import com.fasterxml.jackson.databind.ObjectMapper;
   "recordType": "SystolicPressure",
   "timestamp": 1716123910000
     }
+ * A frame may also carry a JSON array of such objects, or one or more
+ * "patientId,timestamp,label,data" lines as sent by the simulator's
+ * WebSocketOutputStrategy. Binary messages carry BinaryFrameCodec frames and are
+ * decoded into a batch handed to the sink in one call.
+ *
+ * Messages are parsed with a streaming parser, without building a tree. Instead of
+ * printing every message, the client keeps counters and, when the
+ * {@code realtime.debug} system property is set, logs one in every
+ * {@value #LOG_SAMPLE_INTERVAL} stored samples.
  */
 
 public class RealTimeWebSocketClient extends WebSocketClient {
 
-    //Object mapper to parsing JSON messages
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    //Only every n-th event is logged so console I/O stays off the hot path
+    static final int LOG_SAMPLE_INTERVAL = 10_000;
+
+    //Where parsed samples are stored
+    private final PatientDataSink sink;
+
+    //Factory for the streaming JSON parsers
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    //Reused for every sample; onMessage is only called from the WebSocket read thread
+    private final Sample sample = new Sample();
+
+    //Reused for binary frames, for the same reason
+    private final SampleBatch batch = new SampleBatch(1024);
+
+    private final boolean debug = Boolean.getBoolean("realtime.debug");
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong storedSamples = new AtomicLong();
+    private final AtomicLong rejectedSamples = new AtomicLong();
+
+    //Notified when the connection opens or closes, e.g. to reconnect
+    private volatile ConnectionListener connectionListener;
 
 
     /**
@@ -34,52 +71,245 @@ public class RealTimeWebSocketClient extends WebSocketClient {
      *
      */
     public RealTimeWebSocketClient(URI serverUri){
+        this(serverUri, DataStorageSingleton.getInstance());
+    }
+
+    /**
+     * Constructor sets WebSocket server URI and the sink receiving the samples
+     * @param serverUri URI of the WebSocket server
+     * @param sink where parsed samples are stored
+     */
+    public RealTimeWebSocketClient(URI serverUri, PatientDataSink sink){
         super(serverUri);
+        this.sink = sink;
+    }
+
+    /**
+     * Sets the listener notified about connection changes.
+     * @param connectionListener the listener, or null to remove it
+     */
+    public void setConnectionListener(ConnectionListener connectionListener){
+        this.connectionListener = connectionListener;
     }
 
     //Called when connection is established
     @Override
     public void onOpen(ServerHandshake handshake){
         System.out.println("Connected to WebSocket server.");
+        ConnectionListener listener = connectionListener;
+        if (listener != null) {
+            listener.onConnected(this);
+        }
     }
 
 
     /**
      * Handles incoming messages from the WebSocket server,
      * parses the message and stores the data
-     * @param message JSON-formated patient data string
+     * @param message JSON-formated patient data string, either one object or an array of objects
      */
     @Override
     public void onMessage(String message){
-        System.out.println("Received: "+ message);
-        
-        try{
-            //Parse incoming JSON stirng
-            JsonNode jsonNode = objectMapper.readTree(message);
-
-            //Validate required fields
-            if (!jsonNode.hasNonNull("patientId") || !jsonNode.hasNonNull("measurementValue") || !jsonNode.hasNonNull("recordType") || !jsonNode.hasNonNull("timestamp")) {
-                throw new IllegalArgumentException("Missing required fields in JSON message.");
+        receivedMessages.incrementAndGet();
+
+        int first = 0;
+        while (first < message.length() && Character.isWhitespace(message.charAt(first))) {
+            first++;
+        }
+        if (first < message.length() && message.charAt(first) != '{' && message.charAt(first) != '[') {
+            readCsvLines(message);
+            return;
+        }
+
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                    readSample(parser);
+                }
+                if (token != JsonToken.END_ARRAY) {
+                    reject("Expected a JSON object in array", message);
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                readSample(parser);
+            } else {
+                reject("Expected a JSON object or array", message);
+            }
+        } catch (IOException e) {
+            reject("Error parsing JSON message: " + e.getMessage(), message);
+        }
+    }
+
+    /**
+     * Handles binary messages, each holding one or more frames of samples.
+     * @param bytes the message payload
+     */
+    @Override
+    public void onMessage(ByteBuffer bytes){
+        receivedMessages.incrementAndGet();
+        try {
+            while (bytes.hasRemaining()) {
+                int count = BinaryFrameCodec.decode(bytes, batch, sink);
+                if (count < 0) {
+                    reject("Truncated binary frame", bytes.remaining() + " bytes");
+                    break;
+                }
+                storedSamples.addAndGet(count);
+            }
+        } catch (IllegalArgumentException e) {
+            reject("Invalid binary frame: " + e.getMessage(), bytes.remaining() + " bytes");
+        }
+        if (!batch.isEmpty()) {
+            sink.addPatientData(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Reads the fields of one sample object, validates them and stores the sample.
+     * Unknown fields are skipped; missing fields or fields of the wrong type reject
+     * the sample.
+     *
+     * @param parser parser positioned on the START_OBJECT token of the sample
+     */
+    private void readSample(JsonParser parser) throws IOException {
+        sample.reset();
+        boolean valid = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "patientId":
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        sample.patientId = parser.getIntValue();
+                        sample.hasPatientId = true;
+                    } else {
+                        valid = false;
+                        parser.skipChildren();
+                    }
+                    break;
+                case "measurementValue":
+                    if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                        sample.measurementValue = parser.getDoubleValue();
+                        sample.hasMeasurementValue = true;
+                    } else {
+                        valid = false;
+                        parser.skipChildren();
+                    }
+                    break;
+                case "recordType":
+                    if (value == JsonToken.VALUE_STRING) {
+                        sample.recordType = parser.getText();
+                    } else {
+                        valid = false;
+                        parser.skipChildren();
+                    }
+                    break;
+                case "timestamp":
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        sample.timestamp = parser.getLongValue();
+                        sample.hasTimestamp = true;
+                    } else {
+                        valid = false;
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        //Validate required fields
+        if (!valid || !sample.isComplete()) {
+            reject("Missing or invalid required fields in JSON message.", null);
+            return;
+        }
+
+        //Store the data
+        store(sample.patientId, sample.measurementValue, sample.recordType, sample.timestamp);
+    }
+
+    private void store(int patientId, double measurementValue, String recordType, long timestamp) {
+        sink.addPatientData(patientId, measurementValue, recordType, timestamp);
+        long stored = storedSamples.incrementAndGet();
+        if (debug && stored % LOG_SAMPLE_INTERVAL == 0) {
+            System.out.println("Stored " + stored + " records, last for patient ID: " + patientId);
+        }
+    }
+
+    //Reads newline separated "patientId,timestamp,label,data" lines
+    private void readCsvLines(String message) {
+        int start = 0;
+        while (start < message.length()) {
+            int end = message.indexOf('\n', start);
+            if (end < 0) {
+                end = message.length();
+            }
+            if (end > start) {
+                readCsvSample(message, start, end);
             }
-            
-            //Extract patient data fields
-            int patientId = jsonNode.get("patientId").asInt();
-            double measurementValue = jsonNode.get("measurementValue").asDouble();
-            String recordType = jsonNode.get("recordType").asText();
-            long timestamp = jsonNode.get("timestamp").asLong();
+            start = end + 1;
+        }
+    }
 
-            //Store the data
-            DataStorageSingleton.getInstance().addPatientData(patientId, measurementValue, recordType, timestamp);
-            System.out.println("Stored record for patient ID: "+ patientId);
+    private void readCsvSample(String message, int start, int end) {
+        int firstComma = message.indexOf(',', start);
+        int secondComma = firstComma < 0 ? -1 : message.indexOf(',', firstComma + 1);
+        int thirdComma = secondComma < 0 ? -1 : message.indexOf(',', secondComma + 1);
+        if (thirdComma < 0 || thirdComma >= end) {
+            reject("Expected patientId,timestamp,label,data", message.substring(start, end));
+            return;
+        }
+        int valueEnd = end;
+        if (valueEnd > thirdComma + 1 && message.charAt(valueEnd - 1) == '\r') {
+            valueEnd--;
+        }
+        try {
+            int patientId = Integer.parseInt(message, start, firstComma, 10);
+            long timestamp = Long.parseLong(message, firstComma + 1, secondComma, 10);
+            String recordType = message.substring(secondComma + 1, thirdComma);
+            // Same conversion as the binary frames, so alert states become 1.0 and 0.0
+            double measurementValue = BinaryFrameCodec.toValue(message.substring(thirdComma + 1, valueEnd));
+            if (Double.isNaN(measurementValue)) {
+                reject("Invalid value", message.substring(start, end));
+                return;
+            }
+            store(patientId, measurementValue, recordType, timestamp);
+        } catch (NumberFormatException e) {
+            reject("Invalid number: " + e.getMessage(), message.substring(start, end));
+        }
+    }
 
-        } catch(IllegalArgumentException e){
-            System.out.println("Validation error: " + e.getMessage());
-        } catch(Exception e){
-            System.out.println("Error parsing JSON message: " + message);
-            e.printStackTrace();
+    //Counts a rejected sample and logs the first one and then every n-th one
+    private void reject(String reason, String message) {
+        long rejected = rejectedSamples.incrementAndGet();
+        if (rejected % LOG_SAMPLE_INTERVAL == 1) {
+            System.out.println("Validation error (" + rejected + " rejected so far): " + reason
+                    + (message == null ? "" : " Message: " + message));
         }
     }
 
+    /**
+     * @return the number of WebSocket messages received
+     */
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    /**
+     * @return the number of samples stored
+     */
+    public long getStoredSamples() {
+        return storedSamples.get();
+    }
+
+    /**
+     * @return the number of samples rejected as malformed
+     */
+    public long getRejectedSamples() {
+        return rejectedSamples.get();
+    }
+
 
     /**
      * Called when WebSocket connection is closed
@@ -90,6 +320,10 @@ public class RealTimeWebSocketClient extends WebSocketClient {
     @Override
     public void onClose(int code, String reason, boolean remote) {
         System.out.println("Disconnected from WebSocket server. Reason: "+reason);
+        ConnectionListener listener = connectionListener;
+        if (listener != null) {
+            listener.onDisconnected(this, code, reason, remote);
+        }
     }
 
     //Handles errors that occur during WebSocket communication
@@ -98,4 +332,36 @@ public class RealTimeWebSocketClient extends WebSocketClient {
         System.out.println("WebSocket error:");
         ex.printStackTrace();
     }
-}
+
+    /**
+     * Receives connection state changes of a RealTimeWebSocketClient. Both methods are
+     * called on the WebSocket thread and must not block.
+     */
+    public interface ConnectionListener {
+        void onConnected(RealTimeWebSocketClient client);
+
+        void onDisconnected(RealTimeWebSocketClient client, int code, String reason, boolean remote);
+    }
+
+    //Mutable holder for the fields of the sample being parsed
+    private static class Sample {
+        int patientId;
+        double measurementValue;
+        String recordType;
+        long timestamp;
+        boolean hasPatientId;
+        boolean hasMeasurementValue;
+        boolean hasTimestamp;
+
+        void reset() {
+            recordType = null;
+            hasPatientId = false;
+            hasMeasurementValue = false;
+            hasTimestamp = false;
+        }
+
+        boolean isComplete() {
+            return hasPatientId && hasMeasurementValue && recordType != null && hasTimestamp;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.AsyncOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.OverflowPolicy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+class AsyncOutputStrategyTest {
+
+    @Test
+    void testCloseDeliversAllSamplesInOrder() {
+        List<Long> timestamps = new ArrayList<>();
+        boolean[] closed = new boolean[1];
+        OutputStrategy collector = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                timestamps.add(timestamp);
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        AsyncOutputStrategy async = new AsyncOutputStrategy(collector, 16, OverflowPolicy.BLOCK);
+        for (int i = 0; i < 10000; i++) {
+            async.output(1, i, "HeartRate", "72.0");
+        }
+        async.close();
+
+        assertTrue(closed[0]);
+        assertEquals(10000, async.getDeliveredSamples());
+        assertEquals(0, async.getDroppedSamples());
+        assertEquals(0, async.getDepth());
+        assertEquals(10000, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(i, timestamps.get(i));
+        }
+        assertTrue(async.getMaxLatencyMicros() >= async.getAverageLatencyMicros());
+    }
+
+    @Test
+    void testDropLowPriorityKeepsImportantSignals() {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> labels = new ArrayList<>();
+        OutputStrategy stalled = (patientId, timestamp, label, data) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            labels.add(label);
+        };
+
+        AsyncOutputStrategy async = new AsyncOutputStrategy(stalled, 16, OverflowPolicy.DROP_LOW_PRIORITY);
+        for (int i = 0; i < 100; i++) {
+            async.output(1, i, "ECG", "0.1");
+        }
+        for (int i = 0; i < 4; i++) {
+            async.output(1, 100 + i, "Alert", "triggered");
+        }
+        release.countDown();
+        async.close();
+
+        assertTrue(async.getDroppedSamples() > 0);
+        assertEquals(104, async.getDeliveredSamples() + async.getDroppedSamples());
+        assertEquals(4, labels.stream().filter("Alert"::equals).count());
+    }
+
+    @Test
+    void testLowPrioritySamplesNeverPushOutAlerts() {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> labels = new ArrayList<>();
+        OutputStrategy stalled = (patientId, timestamp, label, data) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            labels.add(label);
+        };
+
+        // The buffer is filled with alerts before any low priority sample arrives
+        AsyncOutputStrategy async = new AsyncOutputStrategy(stalled, 16, OverflowPolicy.DROP_LOW_PRIORITY);
+        for (int i = 0; i < 16; i++) {
+            async.output(1, i, "Alert", "triggered");
+        }
+        for (int i = 0; i < 10; i++) {
+            async.output(1, 100 + i, "ECG", "0.1");
+        }
+        release.countDown();
+        async.close();
+
+        assertEquals(10, async.getDroppedSamples());
+        assertEquals(16, labels.size());
+        assertEquals(16, labels.stream().filter("Alert"::equals).count());
+    }
+}
@@ -0,0 +1,129 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.data_management.BinaryFrameCodec;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.SampleBatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+class BinaryFrameCodecTest {
+
+    @Test
+    void testRoundTripWithDeltaTimestamps() {
+        SampleBatch batch = new SampleBatch(8);
+        batch.add(1, -0.125, "ECG", 1_700_000_000_000L);
+        batch.add(2, 97.0, "Saturation", 1_700_000_000_004L);
+        batch.add(1, 1.0, "Alert", 1_699_999_999_990L);
+        batch.add(3, 42.5, "Temperature", 1_700_000_000_010L);
+
+        byte[] frame = BinaryFrameCodec.encode(batch, true);
+        // 8 byte prefix, count and base timestamp, 17 bytes per sample plus the inline label
+        assertEquals(8 + 10 + 4 * 17 + 1 + "Temperature".length(), frame.length);
+
+        SampleBatch decoded = new SampleBatch(8);
+        assertEquals(4, BinaryFrameCodec.decode(ByteBuffer.wrap(frame), decoded, null));
+        assertEquals(4, decoded.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(batch.getPatientId(i), decoded.getPatientId(i));
+            assertEquals(batch.getTimestamp(i), decoded.getTimestamp(i));
+            assertEquals(batch.getRecordType(i), decoded.getRecordType(i));
+            assertEquals(batch.getMeasurementValue(i), decoded.getMeasurementValue(i));
+        }
+    }
+
+    @Test
+    void testFallsBackToFullTimestampsForWideGaps() {
+        SampleBatch batch = new SampleBatch(2);
+        batch.add(1, 1.0, "ECG", 0L);
+        batch.add(1, 2.0, "ECG", 10_000_000_000L);
+
+        byte[] frame = BinaryFrameCodec.encode(batch, true);
+        assertEquals(8 + 10 + 2 * 21, frame.length);
+
+        SampleBatch decoded = new SampleBatch(2);
+        BinaryFrameCodec.decode(ByteBuffer.wrap(frame), decoded, null);
+        assertEquals(10_000_000_000L, decoded.getTimestamp(1));
+    }
+
+    @Test
+    void testIncompleteFrameLeavesBufferUntouched() {
+        SampleBatch batch = new SampleBatch(1);
+        batch.add(1, 72.0, "HeartRate", 1000L);
+        byte[] frame = BinaryFrameCodec.encode(batch, true);
+
+        ByteBuffer partial = ByteBuffer.wrap(frame, 0, frame.length - 1);
+        assertEquals(-1, BinaryFrameCodec.decode(partial, new SampleBatch(1), null));
+        assertEquals(0, partial.position());
+    }
+
+    @Test
+    void testLargeFrameIsHandedToSinkInBatches() {
+        SampleBatch batch = new SampleBatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            batch.add(5, i, "ECG", 1000L + i);
+        }
+        DataStorage storage = new DataStorage();
+        SampleBatch decoded = new SampleBatch(64);
+
+        assertEquals(1000, BinaryFrameCodec.decode(ByteBuffer.wrap(BinaryFrameCodec.encode(batch, true)), decoded, storage));
+        storage.addPatientData(decoded);
+
+        List<PatientRecord> records = storage.getRecords(5, 0, Long.MAX_VALUE);
+        assertEquals(1000, records.size());
+        assertEquals(999.0, records.get(999).getMeasurementValue());
+    }
+
+    @Test
+    void testRejectsUnknownVersion() {
+        SampleBatch batch = new SampleBatch(1);
+        batch.add(1, 72.0, "HeartRate", 1000L);
+        byte[] frame = BinaryFrameCodec.encode(batch, false);
+        frame[2] = 99;
+
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryFrameCodec.decode(ByteBuffer.wrap(frame), new SampleBatch(1), null));
+    }
+
+    @Test
+    void testRejectsUnknownSignalCode() {
+        SampleBatch batch = new SampleBatch(1);
+        batch.add(1, 72.0, "HeartRate", 1000L);
+        byte[] frame = BinaryFrameCodec.encode(batch, false);
+        // Prefix, count, base timestamp, patient id and timestamp come before the code
+        frame[8 + 10 + 4 + 8] = 99;
+
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryFrameCodec.decode(ByteBuffer.wrap(frame), new SampleBatch(1), null));
+    }
+
+    @Test
+    void testInvalidFrameAddsNoSamples() {
+        SampleBatch batch = new SampleBatch(2);
+        batch.add(1, 72.0, "HeartRate", 1000L);
+        batch.add(1, 73.0, "HeartRate", 1001L);
+        byte[] frame = BinaryFrameCodec.encode(batch, true);
+        // The code of the second sample, after the first sample's 17 bytes
+        frame[8 + 10 + 17 + 4 + 4] = 99;
+
+        SampleBatch decoded = new SampleBatch(1);
+        DataStorage storage = new DataStorage();
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryFrameCodec.decode(ByteBuffer.wrap(frame), decoded, storage));
+        assertTrue(decoded.isEmpty());
+        assertTrue(storage.getRecords(1, 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testTextDataToValue() {
+        assertEquals(97.0, BinaryFrameCodec.toValue("97.0%"));
+        assertEquals(1.0, BinaryFrameCodec.toValue("triggered"));
+        assertEquals(0.0, BinaryFrameCodec.toValue("resolved"));
+        assertTrue(Double.isNaN(BinaryFrameCodec.toValue("n/a")));
+    }
+}
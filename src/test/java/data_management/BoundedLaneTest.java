@@ -0,0 +1,82 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.data_management.BoundedLane;
+import com.data_management.OverflowPolicy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+class BoundedLaneTest {
+
+    @Test
+    void testDropOldestKeepsTheNewestElements() {
+        BoundedLane<Integer> lane = new BoundedLane<>(4, OverflowPolicy.DROP_OLDEST, element -> false);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(lane.offer(i));
+        }
+        lane.close();
+        List<Integer> drained = new ArrayList<>();
+        lane.drainUntilClosed(drained::add, 2);
+
+        assertEquals(List.of(6, 7, 8, 9), drained);
+        assertEquals(10, lane.getEnqueued());
+        assertEquals(6, lane.getDropped());
+        assertEquals(4, lane.getDrained());
+    }
+
+    @Test
+    void testLowPriorityElementsAreDroppedFirst() {
+        // Negative elements are low priority; they only get three quarters of the lane
+        BoundedLane<Integer> lane = new BoundedLane<>(8, OverflowPolicy.DROP_LOW_PRIORITY, element -> element < 0);
+        for (int i = 1; i <= 10; i++) {
+            lane.offer(-i);
+        }
+        assertEquals(6, lane.size());
+        assertTrue(lane.offer(1));
+        assertTrue(lane.offer(2));
+        assertFalse(lane.offer(-11));
+
+        lane.close();
+        assertFalse(lane.offer(3));
+        List<Integer> drained = new ArrayList<>();
+        lane.drainUntilClosed(drained::add, 100);
+        assertEquals(List.of(-1, -2, -3, -4, -5, -6, 1, 2), drained);
+        assertEquals(6, lane.getDropped());
+    }
+
+    @Test
+    void testEveryEnqueuedElementIsDrainedAcrossClose() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            BoundedLane<Integer> lane = new BoundedLane<>(64, OverflowPolicy.BLOCK, element -> false);
+            AtomicLong delivered = new AtomicLong();
+            Thread consumer = new Thread(() -> lane.drainUntilClosed(element -> delivered.incrementAndGet(), 16));
+            consumer.start();
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                Thread producer = new Thread(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        lane.offer(i);
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            Thread.sleep(1);
+            lane.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            consumer.join(10_000);
+            assertFalse(consumer.isAlive());
+
+            assertEquals(lane.getEnqueued(), delivered.get());
+            assertEquals(lane.getEnqueued(), lane.getDrained());
+            assertEquals(40_000, lane.getEnqueued() + lane.getDropped());
+        }
+    }
+}
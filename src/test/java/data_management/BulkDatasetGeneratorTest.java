@@ -0,0 +1,151 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.BulkDatasetGenerator;
+import com.cardio_generator.outputs.BinaryFileOutputStrategy;
+import com.data_management.BinaryFileDataReader;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class BulkDatasetGeneratorTest {
+
+    @Test
+    void testGeneratedDatasetLoadsIntoDataStorage(@TempDir Path dir) throws IOException {
+        long start = BulkDatasetGenerator.DEFAULT_START_MILLIS;
+        long hour = TimeUnit.HOURS.toMillis(1);
+        long samples = new BulkDatasetGenerator(20, hour, 3, start, 7).generate(dir);
+
+        for (int partition = 0; partition < 3; partition++) {
+            assertTrue(Files.exists(dir.resolve("part-" + partition + ".bin")));
+        }
+        DataStorage storage = new DataStorage();
+        BinaryFileDataReader reader = new BinaryFileDataReader(dir.toString());
+        reader.readData(storage);
+        assertEquals(samples, reader.getSamplesRead());
+
+        long loaded = 0;
+        for (int patientId = 1; patientId <= 20; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            loaded += records.size();
+            long ecg = records.stream().filter(r -> r.getRecordType().equals("ECG")).count();
+            // Once a second after an initial delay of up to 4 seconds
+            assertTrue(ecg >= 3596 && ecg <= 3600, "ECG samples " + ecg);
+            for (PatientRecord record : records) {
+                assertTrue(record.getTimestamp() >= start && record.getTimestamp() < start + hour);
+            }
+        }
+        assertEquals(samples, loaded);
+    }
+
+    @Test
+    void testBinaryFileRoundTrip(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("capture.bin");
+        BinaryFileOutputStrategy output = new BinaryFileOutputStrategy(file);
+        for (int i = 0; i < 10_000; i++) {
+            output.output(1, 1000L + i, SignalCode.HEART_RATE, 60 + i % 40);
+        }
+        output.output(2, 5000, "Saturation", "97.0%");
+        output.output(2, 5001, "Note", "not a number");
+        output.close();
+        assertEquals(10_001, output.getWrittenSamples());
+        assertEquals(1, output.getRejectedSamples());
+
+        DataStorage storage = new DataStorage();
+        new BinaryFileDataReader(file.toString()).readData(storage);
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(10_000, records.size());
+        assertEquals(1999L, records.get(999).getTimestamp());
+        assertEquals(99.0, records.get(999).getMeasurementValue());
+        assertEquals(97.0, storage.getRecords(2, 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+    }
+
+    @Test
+    void testTruncatedFileIsRejected(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("capture.bin");
+        BinaryFileOutputStrategy output = new BinaryFileOutputStrategy(file);
+        output.output(1, 1000, SignalCode.ECG, 0.5);
+        output.close();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertThrows(IOException.class, () -> new BinaryFileDataReader(file.toString()).readData(new DataStorage()));
+    }
+
+    @Test
+    void testSameSeedGivesSameDatasetForAnyPartitioning(@TempDir Path dir) throws IOException {
+        long start = BulkDatasetGenerator.DEFAULT_START_MILLIS;
+        long tenMinutes = TimeUnit.MINUTES.toMillis(10);
+        new BulkDatasetGenerator(12, tenMinutes, 1, start, 42).generate(dir.resolve("one"));
+        new BulkDatasetGenerator(12, tenMinutes, 4, start, 42).generate(dir.resolve("four"));
+        new BulkDatasetGenerator(12, tenMinutes, 4, start, 43).generate(dir.resolve("other"));
+
+        DataStorage one = load(dir.resolve("one"));
+        DataStorage four = load(dir.resolve("four"));
+        DataStorage other = load(dir.resolve("other"));
+        boolean differs = false;
+        for (int patientId = 1; patientId <= 12; patientId++) {
+            assertEquals(describe(one, patientId), describe(four, patientId));
+            differs |= !describe(one, patientId).equals(describe(other, patientId));
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    void testRegeneratingReplacesTheEarlierPartitions(@TempDir Path dir) throws IOException {
+        long start = BulkDatasetGenerator.DEFAULT_START_MILLIS;
+        long tenMinutes = TimeUnit.MINUTES.toMillis(10);
+        new BulkDatasetGenerator(12, tenMinutes, 4, start, 1).generate(dir);
+        long samples = new BulkDatasetGenerator(12, tenMinutes, 2, start, 2).generate(dir);
+
+        assertFalse(Files.exists(dir.resolve("part-2.bin")));
+        assertFalse(Files.exists(dir.resolve("part-3.bin")));
+        BinaryFileDataReader reader = new BinaryFileDataReader(dir.toString());
+        reader.readData(new DataStorage());
+        assertEquals(samples, reader.getSamplesRead());
+        // Nothing to follow
+        reader.startReading();
+        reader.stopReading();
+    }
+
+    @Test
+    void testSeedOptionReproducesTheFiles(@TempDir Path dir) throws IOException {
+        for (String run : List.of("first", "second")) {
+            BulkDatasetGenerator.main(new String[]{"--output-dir", dir.resolve(run).toString(),
+                    "--patient-count", "6", "--duration", "300", "--partitions", "2", "--seed", "99"});
+        }
+        for (int partition = 0; partition < 2; partition++) {
+            String name = "part-" + partition + ".bin";
+            assertArrayEquals(Files.readAllBytes(dir.resolve("first").resolve(name)),
+                    Files.readAllBytes(dir.resolve("second").resolve(name)));
+        }
+    }
+
+    private static DataStorage load(Path dir) throws IOException {
+        DataStorage storage = new DataStorage();
+        new BinaryFileDataReader(dir.toString()).readData(storage);
+        return storage;
+    }
+
+    private static List<String> describe(DataStorage storage, int patientId) {
+        List<String> samples = new ArrayList<>();
+        for (PatientRecord record : storage.getRecords(patientId, 0, Long.MAX_VALUE)) {
+            samples.add(record.getTimestamp() + " " + record.getRecordType() + " " + record.getMeasurementValue());
+        }
+        Collections.sort(samples);
+        return samples;
+    }
+}
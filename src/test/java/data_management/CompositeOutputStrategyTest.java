@@ -0,0 +1,77 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.CompositeOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.OverflowPolicy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+class CompositeOutputStrategyTest {
+
+    @Test
+    void testEverySinkReceivesEverySample() {
+        List<Long> first = new ArrayList<>();
+        List<Long> second = new ArrayList<>();
+        Map<String, OutputStrategy> sinks = new LinkedHashMap<>();
+        sinks.put("first", (patientId, timestamp, label, data) -> first.add(timestamp));
+        sinks.put("second", (patientId, timestamp, label, data) -> second.add(timestamp));
+
+        CompositeOutputStrategy composite = new CompositeOutputStrategy(sinks, 64, OverflowPolicy.BLOCK);
+        for (int i = 0; i < 5000; i++) {
+            composite.output(1, i, "HeartRate", "72.0");
+        }
+        composite.close();
+
+        assertEquals(5000, first.size());
+        assertEquals(first, second);
+        assertEquals(List.of("first", "second"), composite.getNames());
+        assertEquals(5000, composite.getLanes().get(1).getDeliveredSamples());
+        assertTrue(composite.formatMetrics().startsWith("first: "));
+    }
+
+    @Test
+    void testSlowSinkDoesNotDelayFastSink() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Semaphore delivered = new Semaphore(0);
+        List<Long> fast = Collections.synchronizedList(new ArrayList<>());
+        Map<String, OutputStrategy> sinks = new LinkedHashMap<>();
+        sinks.put("slow", (patientId, timestamp, label, data) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sinks.put("fast", (patientId, timestamp, label, data) -> {
+            fast.add(timestamp);
+            delivered.release();
+        });
+
+        CompositeOutputStrategy composite = new CompositeOutputStrategy(sinks, 256, OverflowPolicy.DROP_OLDEST);
+        // Each chunk fits in a lane and is delivered by the fast lane before the next one,
+        // so only the stalled lane overflows
+        for (int chunk = 0; chunk < 10; chunk++) {
+            for (int i = 0; i < 100; i++) {
+                composite.output(1, chunk * 100 + i, "ECG", "0.5");
+            }
+            assertTrue(delivered.tryAcquire(100, 10, TimeUnit.SECONDS), "fast lane stalled");
+        }
+        assertEquals(1000, fast.size());
+        assertTrue(composite.getLanes().get(0).getDroppedSamples() > 0);
+        assertEquals(0, composite.getLanes().get(1).getDroppedSamples());
+
+        release.countDown();
+        composite.close();
+    }
+}
@@ -0,0 +1,104 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.DirectStorageOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.OverflowPolicy;
+import com.data_management.PatientRecord;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class DirectStorageOutputStrategyTest {
+
+    private static void produce(DirectStorageOutputStrategy strategy, int threads, int samplesPerThread)
+            throws InterruptedException {
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int patientId = t + 1;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < samplesPerThread; i++) {
+                    strategy.output(patientId, i, SignalCode.ECG, i * 0.5);
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    @Test
+    void testStoresAllSamplesInOrder() throws Exception {
+        DataStorage storage = new DataStorage();
+        DirectStorageOutputStrategy strategy = new DirectStorageOutputStrategy(storage);
+        produce(strategy, 4, 10_000);
+        strategy.output(9, 100, "Saturation", "97.0%");
+        strategy.output(9, 101, "Alert", "triggered");
+        strategy.output(9, 102, "Note", "not a number");
+        strategy.close();
+
+        assertEquals(40_002, strategy.getStoredSamples());
+        assertEquals(1, strategy.getRejectedSamples());
+        for (int patientId = 1; patientId <= 4; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertEquals(10_000, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(i, records.get(i).getTimestamp());
+            }
+        }
+        List<PatientRecord> other = storage.getRecords(9, 0, Long.MAX_VALUE);
+        assertEquals(97.0, other.get(0).getMeasurementValue());
+        assertEquals(1.0, other.get(1).getMeasurementValue());
+    }
+
+    @Test
+    void testPartialBatchesAreFlushedWithoutClose() throws Exception {
+        DataStorage storage = new DataStorage();
+        DirectStorageOutputStrategy strategy = new DirectStorageOutputStrategy(storage);
+        strategy.output(1, 1000, SignalCode.HEART_RATE, 72.0);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.getRecords(1, 0, Long.MAX_VALUE).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        strategy.close();
+    }
+
+    @Test
+    void testHandOffQueueStoresEverythingOnClose() throws Exception {
+        DataStorage storage = new DataStorage();
+        DirectStorageOutputStrategy strategy = new DirectStorageOutputStrategy(storage, 1024, 2, OverflowPolicy.BLOCK);
+        produce(strategy, 4, 10_000);
+        strategy.close();
+
+        assertEquals(40_000, strategy.getHandOffQueue().getWrittenSamples());
+        for (int patientId = 1; patientId <= 4; patientId++) {
+            assertEquals(10_000, storage.getRecords(patientId, 0, Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    void testBlocksAreStoredInOrder() {
+        DataStorage storage = new DataStorage();
+        DirectStorageOutputStrategy strategy = new DirectStorageOutputStrategy(storage);
+        long[] timestamps = new long[300];
+        double[] values = new double[300];
+        for (int i = 0; i < 300; i++) {
+            timestamps[i] = 1000 + 4L * i;
+            values[i] = i;
+        }
+        strategy.output(3, SignalCode.ECG, timestamps, values, 300);
+        strategy.close();
+
+        List<PatientRecord> records = storage.getRecords(3, 0, Long.MAX_VALUE);
+        assertEquals(300, records.size());
+        assertEquals(1000 + 4 * 299, records.get(299).getTimestamp());
+        assertEquals(299.0, records.get(299).getMeasurementValue());
+        assertEquals(300, strategy.getStoredSamples());
+    }
+}
@@ -0,0 +1,245 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.SegmentManifest;
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.PatientRecord;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+class FileDataReaderFollowTest {
+
+    @TempDir
+    Path tempDir;
+
+    private void append(Path file, String... lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        Files.write(file, sb.toString().getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private String line(long timestamp, double value) {
+        return "Patient ID: 1, Timestamp: " + timestamp + ", Label: ECG, Data: " + value;
+    }
+
+    private void waitForRecords(DataStorage storage, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.getRecords(1, 0, Long.MAX_VALUE).size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testFollowsAppendedLinesAndResumesFromOffsets() throws Exception {
+        Path file = tempDir.resolve("ECG.txt");
+        append(file, line(1000, 0.1), line(1001, 0.2));
+
+        DataStorage storage = new DataStorage();
+        FileDataReader reader = new FileDataReader(tempDir.toString(), storage);
+        reader.setPollIntervalMillis(50);
+        reader.startReading();
+        waitForRecords(storage, 2);
+
+        // A partial line must wait until it is completed
+        Files.write(file, line(1002, 0.3).getBytes(), StandardOpenOption.APPEND);
+        append(file, "");
+        waitForRecords(storage, 3);
+        reader.stopReading();
+        assertEquals(3, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+
+        append(file, line(1003, 0.4));
+
+        DataStorage restarted = new DataStorage();
+        FileDataReader resumed = new FileDataReader(tempDir.toString(), restarted);
+        resumed.setPollIntervalMillis(50);
+        resumed.startReading();
+        waitForRecords(restarted, 1);
+        Thread.sleep(200);
+        resumed.stopReading();
+
+        assertEquals(1, restarted.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(1003L, restarted.getRecords(1, 0, Long.MAX_VALUE).get(0).getTimestamp());
+    }
+
+    @Test
+    void testRotatedFileIsNotReadTwice() throws Exception {
+        Path file = tempDir.resolve("ECG.txt");
+        append(file, line(1000, 0.1));
+
+        DataStorage storage = new DataStorage();
+        FileDataReader reader = new FileDataReader(tempDir.toString(), storage);
+        reader.setPollIntervalMillis(50);
+        reader.startReading();
+        waitForRecords(storage, 1);
+
+        Files.move(file, tempDir.resolve("ECG-000001.txt"));
+        append(file, line(1001, 0.2));
+        waitForRecords(storage, 2);
+        Thread.sleep(200);
+        reader.stopReading();
+
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testRotationWithUnreadTailReadsEveryLineOnce() throws Exception {
+        Path file = tempDir.resolve("ECG.txt");
+        // Long lines in the old file, short ones in the new, so stale offsets would land mid-line
+        append(file, line(1000, 0.123456789), line(1001, 0.223456789), line(1002, 0.323456789));
+
+        DataStorage storage = new DataStorage();
+        FileDataReader reader = new FileDataReader(tempDir.toString(), storage);
+        reader.setPollIntervalMillis(50);
+        reader.startReading();
+        waitForRecords(storage, 3);
+
+        // The tail is rotated away before the follower reads it
+        append(file, line(1003, 0.423456789), line(1004, 0.523456789));
+        Files.move(file, tempDir.resolve("ECG-000001.txt"));
+        append(file, line(1005, 1), line(1006, 2));
+        waitForRecords(storage, 7);
+        append(file, line(1007, 3));
+        waitForRecords(storage, 8);
+        Thread.sleep(300);
+        reader.stopReading();
+
+        // The new file may be read before the tail of the segment, so only the set is fixed
+        List<Long> timestamps = new ArrayList<>();
+        for (PatientRecord record : storage.getRecords(1, 0, Long.MAX_VALUE)) {
+            timestamps.add(record.getTimestamp());
+        }
+        timestamps.sort(null);
+        assertEquals(List.of(1000L, 1001L, 1002L, 1003L, 1004L, 1005L, 1006L, 1007L), timestamps);
+    }
+
+    // What FileOutputStrategy does to a closed segment: compress it next to the original, then delete it
+    private void compress(Path segment) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(
+                segment.resolveSibling(segment.getFileName() + ".gz")))) {
+            Files.copy(segment, out);
+        }
+        Files.delete(segment);
+    }
+
+    private List<Long> sortedTimestamps(DataStorage storage) {
+        List<Long> timestamps = new ArrayList<>();
+        for (PatientRecord record : storage.getRecords(1, 0, Long.MAX_VALUE)) {
+            timestamps.add(record.getTimestamp());
+        }
+        timestamps.sort(null);
+        return timestamps;
+    }
+
+    @Test
+    void testCompressedSegmentContinuesFromItsOffset() throws Exception {
+        Path file = tempDir.resolve("ECG.txt");
+        append(file, line(1000, 0.1), line(1001, 0.2));
+
+        DataStorage storage = new DataStorage();
+        FileDataReader reader = new FileDataReader(tempDir.toString(), storage);
+        reader.setPollIntervalMillis(50);
+        reader.startReading();
+        waitForRecords(storage, 2);
+
+        // Rotated and compressed before the follower reads the tail, in the order the writer does it
+        append(file, line(1002, 0.3), line(1003, 0.4));
+        Path segment = tempDir.resolve("ECG-000001.txt");
+        Files.move(file, segment);
+        append(file, line(1004, 0.5));
+        compress(segment);
+        waitForRecords(storage, 5);
+        Thread.sleep(300);
+        reader.stopReading();
+        assertEquals(List.of(1000L, 1001L, 1002L, 1003L, 1004L), sortedTimestamps(storage));
+
+        // The same while the reader is stopped; the offsets of the new files are picked up on restart
+        append(file, line(1005, 0.6));
+        segment = tempDir.resolve("ECG-000002.txt");
+        Files.move(file, segment);
+        append(file, line(1006, 0.7));
+        compress(segment);
+
+        DataStorage restarted = new DataStorage();
+        FileDataReader resumed = new FileDataReader(tempDir.toString(), restarted);
+        resumed.setPollIntervalMillis(50);
+        resumed.startReading();
+        waitForRecords(restarted, 2);
+        Thread.sleep(300);
+        resumed.stopReading();
+        assertEquals(List.of(1005L, 1006L), sortedTimestamps(restarted));
+    }
+
+    @Test
+    void testAlertStatesAreReadAsValues() throws Exception {
+        append(tempDir.resolve("Alert.txt"),
+                "Patient ID: 1, Timestamp: 1000, Label: Alert, Data: triggered",
+                "Patient ID: 1, Timestamp: 1001, Label: Alert, Data: resolved");
+
+        DataStorage storage = new DataStorage();
+        FileDataReader reader = new FileDataReader(tempDir.toString(), storage);
+        reader.setPollIntervalMillis(50);
+        reader.startReading();
+        waitForRecords(storage, 2);
+        reader.stopReading();
+
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(2, records.size());
+        assertEquals(1.0, records.get(0).getMeasurementValue(), 0.0);
+        assertEquals(0.0, records.get(1).getMeasurementValue(), 0.0);
+    }
+
+    @Test
+    void testSegmentsReadToTheEndAreNoLongerTracked() throws Exception {
+        SegmentManifest manifest = new SegmentManifest(tempDir);
+        for (int sequence = 1; sequence <= 2; sequence++) {
+            String name = String.format("ECG-%06d.txt", sequence);
+            append(tempDir.resolve(name), line(1000 + sequence, 0.1));
+            manifest.append(new SegmentManifest.Entry(name, "ECG", 1000 + sequence, 1000 + sequence, 1));
+        }
+        Path file = tempDir.resolve("ECG.txt");
+        append(file, line(1003, 0.3));
+
+        DataStorage storage = new DataStorage();
+        FileDataReader reader = new FileDataReader(tempDir.toString(), storage);
+        reader.setPollIntervalMillis(50);
+        reader.startReading();
+        waitForRecords(storage, 3);
+        reader.stopReading();
+        assertEquals(List.of(1001L, 1002L, 1003L), sortedTimestamps(storage));
+
+        Properties offsets = new Properties();
+        try (InputStream in = Files.newInputStream(tempDir.resolve(".offsets"))) {
+            offsets.load(in);
+        }
+        assertEquals(Set.of("ECG.txt", "ECG.txt.key", "ECG.done"), offsets.stringPropertyNames());
+        assertEquals("2", offsets.getProperty("ECG.done"));
+
+        // The forgotten segments are not imported again after a restart
+        append(file, line(1004, 0.4));
+        DataStorage restarted = new DataStorage();
+        FileDataReader resumed = new FileDataReader(tempDir.toString(), restarted);
+        resumed.setPollIntervalMillis(50);
+        resumed.startReading();
+        waitForRecords(restarted, 1);
+        Thread.sleep(200);
+        resumed.stopReading();
+        assertEquals(List.of(1004L), sortedTimestamps(restarted));
+    }
+}
@@ -0,0 +1,49 @@
+package data_management;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Measures how many lines per second FileOutputStrategy writes from several threads.
+ * Not a unit test; run it with
+ * {@code java -cp target/classes:target/test-classes:<deps> data_management.FileOutputStrategyBenchmark}.
+ */
+public class FileOutputStrategyBenchmark {
+
+    private static final int THREADS = 4;
+    private static final int LINES_PER_THREAD = 50_000;
+    private static final String[] LABELS = {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 3; round++) {
+            Path dir = Files.createTempDirectory("file-output-benchmark");
+            FileOutputStrategy strategy = new FileOutputStrategy(dir.toString());
+
+            Thread[] threads = new Thread[THREADS];
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                int patientId = t + 1;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < LINES_PER_THREAD; i++) {
+                        strategy.output(patientId, 1716123910000L + i, LABELS[i % LABELS.length], Double.toString(i * 0.5));
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            strategy.close();
+            long elapsed = System.nanoTime() - start;
+            System.err.printf("round %d: %.0f lines/s%n", round, THREADS * LINES_PER_THREAD / (elapsed / 1e9));
+
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.cardio_generator.outputs.SegmentManifest;
+import com.cardio_generator.outputs.SegmentPolicy;
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.PatientRecord;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+class FileOutputStrategyTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLinesAreReadableAfterClose() throws Exception {
+        FileOutputStrategy strategy = new FileOutputStrategy(tempDir.toString());
+        for (int i = 0; i < 1000; i++) {
+            strategy.output(1, 1000 + i, "ECG", Double.toString(i * 0.5));
+        }
+        strategy.output(1, 5000, "SystolicPressure", "120.0");
+        strategy.close();
+        strategy.output(1, 6000, "SystolicPressure", "130.0"); // Rejected after close
+        strategy.output(1, 6000, "Cholesterol", "190.0"); // Opens no new file
+        assertFalse(Files.exists(tempDir.resolve("Cholesterol.txt")));
+
+        DataStorage storage = new DataStorage();
+        new FileDataReader(tempDir.toString()).readData(storage);
+        assertEquals(1001, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testBufferedLinesAreFlushedPeriodically() throws Exception {
+        FileOutputStrategy strategy = new FileOutputStrategy(tempDir.toString(), 50);
+        strategy.output(2, 1000, "Saturation", "97.0");
+
+        Path file = tempDir.resolve("Saturation.txt");
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((!Files.exists(file) || Files.size(file) == 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(Files.readString(file).startsWith("Patient ID: 2, Timestamp: 1000, Label: Saturation, Data: 97.0"));
+        strategy.close();
+    }
+
+    @Test
+    void testRotatedSegmentsAreCompressedAndIndexed() throws Exception {
+        FileOutputStrategy strategy = new FileOutputStrategy(tempDir.toString(), 1000,
+                new SegmentPolicy(2000, 0, true));
+        for (int i = 0; i < 300; i++) {
+            strategy.output(1, 1000 + i, "ECG", Double.toString(i * 0.5));
+        }
+        strategy.close();
+
+        List<SegmentManifest.Entry> segments = SegmentManifest.read(tempDir);
+        assertTrue(segments.size() > 5);
+        long segmentLines = 0;
+        for (SegmentManifest.Entry segment : segments) {
+            assertTrue(segment.getFileName().endsWith(".txt.gz"));
+            assertTrue(Files.exists(tempDir.resolve(segment.getFileName())));
+            segmentLines += segment.getLines();
+        }
+        assertEquals(1000L, segments.get(0).getMinTimestamp());
+
+        DataStorage all = new DataStorage();
+        new FileDataReader(tempDir.toString()).readData(all);
+        List<PatientRecord> records = all.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(300, records.size());
+        // The segments of a label are imported one after the other
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(1000L + i, records.get(i).getTimestamp());
+        }
+        assertTrue(segmentLines < 300);
+
+        DataStorage window = new DataStorage();
+        new FileDataReader(tempDir.toString()).readData(window, 1100, 1149);
+        assertEquals(50, window.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testFailedRotationKeepsWritingToTheActiveFile() throws Exception {
+        FileOutputStrategy strategy = new FileOutputStrategy(tempDir.toString(), 1000,
+                new SegmentPolicy(2000, 0, false));
+        strategy.output(1, 1000, "ECG", "0.0");
+        // A directory in the way of the first segment makes the rename fail
+        Path blocker = Files.createDirectory(tempDir.resolve("ECG-000001.txt"));
+        for (int i = 1; i < 100; i++) {
+            strategy.output(1, 1000 + i, "ECG", Double.toString(i * 0.5));
+        }
+        assertTrue(SegmentManifest.read(tempDir).isEmpty());
+        Files.delete(blocker);
+        for (int i = 100; i < 200; i++) {
+            strategy.output(1, 1000 + i, "ECG", Double.toString(i * 0.5));
+        }
+        strategy.close();
+
+        assertFalse(SegmentManifest.read(tempDir).isEmpty());
+        DataStorage storage = new DataStorage();
+        new FileDataReader(tempDir.toString()).readData(storage);
+        assertEquals(200, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testSegmentBeingCompressedIsImportedOnce() throws Exception {
+        FileOutputStrategy strategy = new FileOutputStrategy(tempDir.toString(), 1000,
+                new SegmentPolicy(2000, 0, true));
+        for (int i = 0; i < 100; i++) {
+            strategy.output(1, 1000 + i, "ECG", Double.toString(i * 0.5));
+        }
+        strategy.close();
+        // The moment the first compressed copy is published, before it is recorded and
+        // the original is deleted
+        Path compressed = tempDir.resolve(SegmentManifest.read(tempDir).get(0).getFileName());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed))) {
+            Files.copy(in, tempDir.resolve("ECG-000001.txt"));
+        }
+        Files.delete(tempDir.resolve(SegmentManifest.FILE_NAME));
+
+        DataStorage storage = new DataStorage();
+        new FileDataReader(tempDir.toString()).readData(storage);
+        assertEquals(100, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+}
@@ -0,0 +1,91 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.generators.HighRateECGGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class HighRateECGGeneratorTest {
+
+    // Records blocks of patient 1; any other output is a failure
+    private static class BlockCollector implements OutputStrategy {
+        final List<Integer> blockSizes = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            fail("Expected blocks");
+        }
+
+        @Override
+        public void output(int patientId, SignalCode signalCode, long[] timestamps, double[] values, int count) {
+            assertEquals(SignalCode.ECG, signalCode);
+            blockSizes.add(count);
+            for (int i = 0; i < count; i++) {
+                this.timestamps.add(timestamps[i]);
+                this.values.add(values[i]);
+            }
+        }
+    }
+
+    private static BlockCollector run(long seed, long callMillis, long durationMillis) {
+        VirtualClock clock = new VirtualClock(10_000);
+        HighRateECGGenerator generator = new HighRateECGGenerator(2, 250, clock, new RandomStreams(seed));
+        BlockCollector collector = new BlockCollector();
+        for (long t = 0; t <= durationMillis; t += callMillis) {
+            clock.setTimeMillis(10_000 + t);
+            generator.generate(1, collector);
+        }
+        return collector;
+    }
+
+    @Test
+    void testEmitsTheSampleRateInBlocks() {
+        BlockCollector collector = run(1, 50, 10_000);
+
+        // 250 Hz for 10 seconds, counting the sample at the start
+        assertEquals(2501, collector.timestamps.size());
+        for (int i = 1; i < collector.timestamps.size(); i++) {
+            assertEquals(4, collector.timestamps.get(i) - collector.timestamps.get(i - 1));
+        }
+        assertEquals(20_000, (long) collector.timestamps.get(collector.timestamps.size() - 1));
+        // One sample on the first call, then 12 or 13 per 50 ms
+        assertTrue(collector.blockSizes.subList(1, collector.blockSizes.size()).stream()
+                .allMatch(size -> size == 12 || size == 13));
+    }
+
+    @Test
+    void testBeatsFollowTheHeartRate() {
+        BlockCollector collector = run(1, 50, 60_000);
+
+        int beats = 0;
+        for (int i = 1; i < collector.values.size(); i++) {
+            if (collector.values.get(i - 1) < 0.5 && collector.values.get(i) >= 0.5) {
+                beats++;
+            }
+        }
+        // A base rate of 60 to 80 bpm with 5% beat-to-beat variability
+        assertTrue(beats >= 55 && beats <= 85, "beats " + beats);
+        assertTrue(collector.values.stream().allMatch(value -> value > -1 && value < 2));
+    }
+
+    @Test
+    void testSameSeedGivesSameWaveformWhateverTheCallPeriod() {
+        BlockCollector fine = run(7, 50, 5000);
+        BlockCollector coarse = run(7, 1000, 5000);
+        BlockCollector other = run(8, 50, 5000);
+
+        assertEquals(fine.timestamps, coarse.timestamps);
+        assertEquals(fine.values, coarse.values);
+        assertNotEquals(fine.values, other.values);
+    }
+}
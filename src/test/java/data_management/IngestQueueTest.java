@@ -0,0 +1,125 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.data_management.DataStorage;
+import com.data_management.IngestQueue;
+import com.data_management.OverflowPolicy;
+import com.data_management.PatientDataSink;
+import com.data_management.PatientRecord;
+import com.data_management.SampleBatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IngestQueueTest {
+
+    @Test
+    void testWritersStoreAllSamplesInOrder() throws Exception {
+        DataStorage storage = new DataStorage();
+        IngestQueue queue = new IngestQueue(storage, 64, 3, OverflowPolicy.BLOCK);
+        queue.start();
+
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            int patientId = p + 1;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    queue.addPatientData(patientId, i, "ECG", i);
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        queue.close();
+
+        assertEquals(20000, queue.getWrittenSamples());
+        assertEquals(0, queue.getDroppedSamples());
+        assertEquals(0, queue.getDepth());
+        for (int patientId = 1; patientId <= 4; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertEquals(5000, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(i, records.get(i).getTimestamp());
+            }
+        }
+    }
+
+    @Test
+    void testDropLowPriorityKeepsImportantSignals() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DataStorage storage = new DataStorage();
+        PatientDataSink stalledStorage = (patientId, value, type, timestamp) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            storage.addPatientData(patientId, value, type, timestamp);
+        };
+        IngestQueue queue = new IngestQueue(stalledStorage, 16, 1, OverflowPolicy.DROP_LOW_PRIORITY);
+        queue.start();
+
+        for (int i = 0; i < 100; i++) {
+            queue.addPatientData(1, i, "ECG", i);
+        }
+        queue.addPatientData(1, 80, "SystolicPressure", 1000);
+        assertTrue(queue.getDroppedSamples() > 0);
+
+        release.countDown();
+        queue.close();
+
+        assertEquals(1, storage.getRecords(1, 1000, 1000).size());
+        assertEquals(queue.getEnqueuedSamples(), queue.getWrittenSamples());
+    }
+
+    @Test
+    void testWritersStoreDrainedSamplesAsBatches() {
+        AtomicInteger sampleCalls = new AtomicInteger();
+        AtomicInteger batchCalls = new AtomicInteger();
+        AtomicInteger batchedSamples = new AtomicInteger();
+        PatientDataSink sink = new PatientDataSink() {
+            @Override
+            public void addPatientData(int patientId, double value, String type, long timestamp) {
+                sampleCalls.incrementAndGet();
+            }
+
+            @Override
+            public void addPatientData(SampleBatch batch) {
+                batchCalls.incrementAndGet();
+                batchedSamples.addAndGet(batch.size());
+            }
+        };
+        IngestQueue queue = new IngestQueue(sink, 4096, 1, OverflowPolicy.BLOCK);
+        queue.start();
+        SampleBatch incoming = new SampleBatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            incoming.add(1, i, "ECG", i);
+        }
+        queue.addPatientData(incoming);
+        queue.close();
+
+        assertEquals(1000, batchedSamples.get());
+        assertEquals(0, sampleCalls.get());
+        assertTrue(batchCalls.get() < 1000);
+    }
+
+    @Test
+    void testQueueClosedBeforeStartStaysClosed() {
+        DataStorage storage = new DataStorage();
+        IngestQueue queue = new IngestQueue(storage, 16, 1, OverflowPolicy.BLOCK);
+        queue.close();
+        queue.start();
+        queue.addPatientData(1, 72.0, "HeartRate", 1000);
+        queue.close();
+
+        assertEquals(0, queue.getEnqueuedSamples());
+        assertEquals(1, queue.getDroppedSamples());
+        assertTrue(storage.getRecords(1, 0, Long.MAX_VALUE).isEmpty());
+    }
+}
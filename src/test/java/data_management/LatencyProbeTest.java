@@ -0,0 +1,97 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.data_management.DataReceiver;
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.LatencyProbe;
+import com.data_management.SampleBatch;
+import com.data_management.SignalCode;
+import com.data_management.TcpDataReader;
+import com.data_management.WireFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+class LatencyProbeTest {
+
+    @Test
+    void testPercentilesAreWithinBucketPrecision() {
+        LatencyProbe probe = new LatencyProbe(new DataStorage());
+        for (long micros = 1; micros <= 100_000; micros++) {
+            probe.record(micros);
+        }
+        assertEquals(100_000, probe.getCount());
+        assertEquals(50_000.5, probe.getMeanMicros(), 0.01);
+        assertEquals(100_000, probe.getMaxMicros());
+        assertEquals(50_000, probe.getPercentileMicros(0.5), 50_000 * 0.04);
+        assertEquals(99_000, probe.getPercentileMicros(0.99), 99_000 * 0.04);
+        assertEquals(100_000, probe.getPercentileMicros(1.0));
+
+        probe.reset();
+        assertEquals(0, probe.getCount());
+        assertEquals(0, probe.getPercentileMicros(0.99));
+    }
+
+    @Test
+    void testSmallLatenciesAreExactAndNegativeOnesCountAsZero() {
+        LatencyProbe probe = new LatencyProbe(new DataStorage());
+        probe.record(-5);
+        probe.record(10);
+        probe.record(63);
+        assertEquals(0, probe.getPercentileMicros(0.3));
+        assertEquals(10, probe.getPercentileMicros(0.5));
+        assertEquals(63, probe.getPercentileMicros(0.99));
+    }
+
+    @Test
+    void testRecordsProbesAndPassesEverySampleOn() {
+        DataStorage storage = new DataStorage();
+        LatencyProbe probe = new LatencyProbe(storage);
+        long sent = LatencyProbe.nowMicros() - 2000;
+        probe.addPatientData(1, sent, "LoadProbe", sent / 1000);
+        probe.addPatientData(1, 97, "Saturation", 1000);
+
+        SampleBatch batch = new SampleBatch(8);
+        batch.add(2, sent, "LoadProbe", sent / 1000);
+        batch.add(2, sent, "LoadProbe", sent / 1000 + 1);
+        batch.add(2, 0.5, "ECG", 2000);
+        probe.addPatientData(batch);
+
+        assertEquals(3, probe.getCount());
+        assertTrue(probe.getPercentileMicros(0.5) >= 2000);
+        assertTrue(probe.getMaxMicros() < 2_000_000);
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(3, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertTrue(probe.formatSummary().startsWith("probes 3,"));
+    }
+
+    @Test
+    void testProbeInFrontOfAFileReader(@TempDir Path directory) throws Exception {
+        FileOutputStrategy files = new FileOutputStrategy(directory.toString());
+        files.output(1, 1000, SignalCode.LOAD_PROBE, LatencyProbe.nowMicros());
+        files.output(1, 1001, SignalCode.SATURATION, 97);
+        files.close();
+
+        DataStorage storage = new DataStorage();
+        LatencyProbe probe = new LatencyProbe(storage);
+        new FileDataReader(directory.toString()).readData(probe, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(1, probe.getCount());
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testReceiverSources(@TempDir Path directory) throws Exception {
+        LatencyProbe probe = new LatencyProbe(new DataStorage());
+        assertTrue(DataReceiver.createReader("file:" + directory, probe, WireFormat.TEXT) instanceof FileDataReader);
+        assertTrue(DataReceiver.createReader("tcp:localhost:9000", probe, WireFormat.TEXT) instanceof TcpDataReader);
+        assertThrows(IllegalArgumentException.class,
+                () -> DataReceiver.createReader("tcp:9000", probe, WireFormat.TEXT));
+        assertThrows(IllegalArgumentException.class,
+                () -> DataReceiver.createReader("serial:/dev/ttyS0", probe, WireFormat.TEXT));
+    }
+}
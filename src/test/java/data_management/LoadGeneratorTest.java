@@ -0,0 +1,72 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.LoadGenerator;
+import com.cardio_generator.outputs.CompositeOutputStrategy;
+import com.cardio_generator.outputs.DirectStorageOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.LatencyProbe;
+import com.data_management.OverflowPolicy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+class LoadGeneratorTest {
+
+    // Accepts at most about 2,000 samples per second
+    private static class SlowSink implements OutputStrategy {
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            LockSupport.parkNanos(500_000);
+        }
+    }
+
+    @Test
+    void testFindsTheSaturationPointOfASlowSink() throws Exception {
+        DataStorage storage = new DataStorage();
+        LatencyProbe probe = new LatencyProbe(storage);
+        Map<String, OutputStrategy> sinks = new LinkedHashMap<>();
+        sinks.put("storage", new DirectStorageOutputStrategy(probe));
+        sinks.put("slow", new SlowSink());
+        CompositeOutputStrategy output = new CompositeOutputStrategy(sinks, 1 << 10, OverflowPolicy.DROP_OLDEST);
+
+        // 500, 1000, ... 5000 samples per second for 400 ms each
+        List<LoadGenerator.StepResult> results = new LoadGenerator(50, 5000, 10, 400, 1).run(output, probe);
+        output.close();
+
+        assertEquals(10, results.size());
+        assertEquals(500, results.get(0).getTargetRate(), 0.001);
+        assertEquals(5000, results.get(9).getTargetRate(), 0.001);
+        for (LoadGenerator.StepResult result : results) {
+            assertTrue(result.isSustained(0), "storage at " + result.getTargetRate());
+        }
+        assertTrue(results.get(0).isSustained(1));
+        assertFalse(results.get(9).isSustained(1));
+        assertTrue(results.get(9).getDroppedSamples(1) > 0);
+
+        // The probe holds the last step only; every sample reached the storage
+        assertTrue(probe.getCount() > 1500, "probes " + probe.getCount());
+        long stored = 0;
+        for (int patientId = 1; patientId <= 50; patientId++) {
+            stored += storage.getRecords(patientId, 0, Long.MAX_VALUE).size();
+        }
+        assertTrue(stored > 9000, "stored " + stored);
+
+        String report = LoadGenerator.formatReport(results, output.getNames());
+        assertTrue(report.contains("storage:"));
+        assertTrue(report.contains("saturation point not reached"));
+        assertTrue(report.matches("(?s).*slow:.*saturation point \\d+ samples/s.*"), report);
+    }
+
+    @Test
+    void testRejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(10, 0, 5, 1000, 1));
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(10, 1000, 0, 1000, 1));
+    }
+}
@@ -0,0 +1,199 @@
+package data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} for tests that runs nothing on its own: time only
+ * moves when the test calls {@link #advance}, and the tasks due by then run on the
+ * calling thread in order of their due time. Tasks take no time, so fixed rate and fixed
+ * delay are the same.
+ */
+final class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+    private long nowNanos;
+    private long sequence;
+    private boolean shutdown;
+
+    /**
+     * Moves time forward, running every task that falls due on the way.
+     */
+    void advance(long time, TimeUnit unit) {
+        long target = nowNanos + unit.toNanos(time);
+        Task<?> task;
+        while ((task = queue.peek()) != null && task.dueNanos <= target) {
+            queue.poll();
+            nowNanos = task.dueNanos;
+            task.runOnce();
+            if (task.periodNanos > 0 && !task.isDone()) {
+                task.dueNanos += task.periodNanos;
+                task.sequence = sequence++;
+                queue.add(task);
+            }
+        }
+        nowNanos = target;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return add(Executors.callable(command), delay, 0, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return add(callable, delay, 0, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return add(Executors.callable(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return add(Executors.callable(command), initialDelay, delay, unit);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    private <V> Task<V> add(Callable<V> callable, long delay, long period, TimeUnit unit) {
+        if (shutdown) {
+            throw new IllegalStateException("Scheduler is shut down");
+        }
+        Task<V> task = new Task<>(callable, nowNanos + unit.toNanos(Math.max(0, delay)), unit.toNanos(period));
+        task.sequence = sequence++;
+        queue.add(task);
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        queue.removeIf(task -> task.periodNanos > 0);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>(queue);
+        queue.clear();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && queue.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return isTerminated();
+    }
+
+    private final class Task<V> implements ScheduledFuture<V>, Runnable {
+        private final Callable<V> callable;
+        private final long periodNanos;
+        long dueNanos;
+        long sequence;
+        private boolean cancelled;
+        private boolean done;
+        private V result;
+        private Exception failure;
+
+        Task(Callable<V> callable, long dueNanos, long periodNanos) {
+            this.callable = callable;
+            this.dueNanos = dueNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        // A periodic task ends with its first exception, as in a real scheduler
+        void runOnce() {
+            try {
+                V value = callable.call();
+                if (periodNanos == 0) {
+                    result = value;
+                    done = true;
+                }
+            } catch (Exception e) {
+                failure = e;
+                done = true;
+            }
+        }
+
+        @Override
+        public void run() {
+            runOnce();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - nowNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task<?> task = (Task<?>) other;
+            int byDue = Long.compare(dueNanos, task.dueNanos);
+            return byDue != 0 ? byDue : Long.compare(sequence, task.sequence);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            done = true;
+            queue.remove(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public V get() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (!done) {
+                throw new IllegalStateException("Task has not run; advance the scheduler first");
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws ExecutionException {
+            return get();
+        }
+    }
+}
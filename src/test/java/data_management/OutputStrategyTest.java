@@ -0,0 +1,53 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class OutputStrategyTest {
+
+    @Test
+    void testNumericSamplesAreFormattedForTextStrategies() {
+        List<String> lines = new ArrayList<>();
+        OutputStrategy text = (patientId, timestamp, label, data) -> lines.add(label + "=" + data);
+
+        text.output(1, 1000, SignalCode.SATURATION, 97);
+        text.output(1, 1001, SignalCode.ALERT, 1.0);
+        text.output(1, 1002, SignalCode.ALERT, 0.0);
+
+        assertEquals(List.of("Saturation=97.0", "Alert=triggered", "Alert=resolved"), lines);
+        assertThrows(IllegalArgumentException.class, () -> text.output(1, 1003, SignalCode.UNKNOWN, 1.0));
+    }
+
+    @Test
+    void testGeneratorsUseTheNumericPath() {
+        List<Double> values = new ArrayList<>();
+        OutputStrategy numeric = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("Expected a numeric sample, got " + label + "=" + data);
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+                assertEquals(SignalCode.SATURATION, signalCode);
+                values.add(value);
+            }
+        };
+
+        BloodSaturationDataGenerator generator = new BloodSaturationDataGenerator(3);
+        for (int i = 0; i < 100; i++) {
+            generator.generate(1 + i % 3, numeric);
+        }
+
+        assertEquals(100, values.size());
+        assertTrue(values.stream().allMatch(value -> value >= 90 && value <= 100));
+    }
+}
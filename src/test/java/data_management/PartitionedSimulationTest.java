@@ -0,0 +1,114 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.HealthDataSimulator;
+import com.cardio_generator.PatientBlockScheduler;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.SignalCode;
+import com.data_management.TcpDataReader;
+import com.data_management.WireFormat;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+class PartitionedSimulationTest {
+
+    // Records every sample as "patient,timestamp,signal,value", grouped by patient
+    private static final class Recorder implements OutputStrategy {
+        final Map<Integer, List<String>> samples = new TreeMap<>();
+
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+        }
+
+        @Override
+        public synchronized void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+            samples.computeIfAbsent(patientId, id -> new ArrayList<>())
+                    .add(patientId + "," + timestamp + "," + signalCode + "," + value);
+        }
+    }
+
+    private static Recorder simulate(List<Integer> patientIds, int patientCount) {
+        VirtualClock clock = new VirtualClock(1_000_000L);
+        RandomStreams streams = new RandomStreams(42);
+        PatientBlockScheduler blocks = new PatientBlockScheduler(patientIds, 4, 1000, streams);
+        blocks.addSignal(new BloodSaturationDataGenerator(patientCount, clock, streams), 1, TimeUnit.SECONDS);
+        blocks.addSignal(new BloodPressureDataGenerator(patientCount, clock, streams), 1, TimeUnit.MINUTES);
+        Recorder recorder = new Recorder();
+        blocks.runVirtual(clock, TimeUnit.MINUTES.toMillis(10), recorder);
+        return recorder;
+    }
+
+    @Test
+    void testPartitionsAreDisjointAndCoverAllPatients() {
+        List<Integer> all = new ArrayList<>();
+        for (int partition = 1; partition <= 3; partition++) {
+            List<Integer> ids = HealthDataSimulator.partitionPatientIds(10, partition, 3);
+            assertTrue(ids.size() == 3 || ids.size() == 4, "size " + ids.size());
+            all.addAll(ids);
+        }
+        assertEquals(HealthDataSimulator.partitionPatientIds(10, 1, 1), all);
+        assertTrue(HealthDataSimulator.partitionPatientIds(2, 1, 3).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> HealthDataSimulator.partitionPatientIds(10, 4, 3));
+    }
+
+    @Test
+    void testPatientDataDoesNotDependOnThePartitioning() {
+        Recorder whole = simulate(HealthDataSimulator.partitionPatientIds(12, 1, 1), 12);
+        Map<Integer, List<String>> split = new TreeMap<>();
+        for (int partition = 1; partition <= 3; partition++) {
+            split.putAll(simulate(HealthDataSimulator.partitionPatientIds(12, partition, 3), 12).samples);
+        }
+        assertEquals(12, whole.samples.size());
+        assertEquals(whole.samples, split);
+    }
+
+    @Test
+    void testPartitionsPushToOneAggregator() throws Exception {
+        TcpDataReader aggregator = new TcpDataReader(0, 2, null, WireFormat.BINARY);
+        InetSocketAddress address = new InetSocketAddress("localhost", aggregator.getLocalPort());
+        DataStorage storage = new DataStorage();
+        Thread reader = new Thread(() -> {
+            try {
+                aggregator.readData(storage);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        reader.start();
+
+        for (int partition = 1; partition <= 2; partition++) {
+            TcpOutputStrategy push = new TcpOutputStrategy(address, 1 << 20,
+                    TcpOutputStrategy.SlowClientPolicy.DROP, WireFormat.BINARY);
+            for (int patientId : HealthDataSimulator.partitionPatientIds(4, partition, 2)) {
+                for (int i = 0; i < 500; i++) {
+                    push.output(patientId, 1000 + i, SignalCode.SATURATION, 90 + patientId);
+                }
+            }
+            push.close();
+        }
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(reader.isAlive());
+
+        assertEquals(2000, aggregator.getSamplesRead());
+        for (int patientId = 1; patientId <= 4; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertEquals(500, records.size());
+            assertEquals(90 + patientId, records.get(0).getMeasurementValue(), 1e-12);
+        }
+    }
+}
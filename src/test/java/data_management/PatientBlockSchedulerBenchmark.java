@@ -0,0 +1,67 @@
+package data_management;
+
+import com.cardio_generator.PatientBlockScheduler;
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodLevelsDataGenerator;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the simulator's signals for 100,000 patients at the original rates with block
+ * scheduling and reports samples per second and the worst tick lag. Not a unit test;
+ * run it with {@code java -cp target/classes:target/test-classes data_management.PatientBlockSchedulerBenchmark}.
+ */
+public class PatientBlockSchedulerBenchmark {
+
+    private static final int PATIENTS = 100_000;
+    private static final int SECONDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> patientIds = new ArrayList<>();
+        for (int i = 1; i <= PATIENTS; i++) {
+            patientIds.add(i);
+        }
+        LongAdder samples = new LongAdder();
+        OutputStrategy counter = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                samples.increment();
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+                samples.increment();
+            }
+        };
+
+        PatientBlockScheduler blocks = new PatientBlockScheduler(patientIds, 1024, 1000, new RandomStreams(42));
+        blocks.addSignal(new ECGDataGenerator(PATIENTS), 1, TimeUnit.SECONDS);
+        blocks.addSignal(new BloodSaturationDataGenerator(PATIENTS), 1, TimeUnit.SECONDS);
+        blocks.addSignal(new BloodPressureDataGenerator(PATIENTS), 1, TimeUnit.MINUTES);
+        blocks.addSignal(new BloodLevelsDataGenerator(PATIENTS), 2, TimeUnit.MINUTES);
+        blocks.addSignal(new AlertGenerator(PATIENTS), 20, TimeUnit.SECONDS);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ScheduledExecutorService pool = Executors.newScheduledThreadPool(threads);
+        blocks.start(pool, counter);
+        for (int second = 1; second <= SECONDS; second++) {
+            long before = samples.sum();
+            Thread.sleep(1000);
+            System.err.printf("%2d s: %8d samples/s, max lag %d ms, %d threads, %d blocks%n",
+                    second, samples.sum() - before, blocks.getMaxLagMillis(), threads, blocks.getBlockCount());
+        }
+        blocks.stop();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,142 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.PatientBlockScheduler;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class PatientBlockSchedulerTest {
+
+    private static final OutputStrategy DISCARD = (patientId, timestamp, label, data) -> { };
+
+    private static List<Integer> patients(int count) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    @Test
+    void testEveryPatientRunsAtItsPeriod() {
+        AtomicIntegerArray fast = new AtomicIntegerArray(21);
+        AtomicIntegerArray slow = new AtomicIntegerArray(21);
+        PatientDataGenerator fastGenerator = (patientId, output) -> fast.incrementAndGet(patientId);
+        PatientDataGenerator slowGenerator = (patientId, output) -> slow.incrementAndGet(patientId);
+
+        PatientBlockScheduler blocks = new PatientBlockScheduler(patients(20), 6, 10, new RandomStreams(1));
+        blocks.addSignal(fastGenerator, 10, TimeUnit.MILLISECONDS);
+        blocks.addSignal(slowGenerator, 100, TimeUnit.MILLISECONDS);
+        ManualScheduler pool = new ManualScheduler();
+        blocks.start(pool, DISCARD);
+        assertEquals(4, blocks.getBlockCount());
+        pool.advance(500, TimeUnit.MILLISECONDS);
+        blocks.stop();
+        pool.advance(500, TimeUnit.MILLISECONDS);
+
+        for (int patientId = 1; patientId <= 20; patientId++) {
+            // 50 ticks, or 51 for the block at phase 0, less 0 to 4 for each signal's initial
+            // delay; the slow signal runs on every tenth tick after its own
+            int fastRuns = fast.get(patientId);
+            int slowRuns = slow.get(patientId);
+            assertTrue(fastRuns >= 46 && fastRuns <= 51, "fast " + fastRuns);
+            assertTrue(slowRuns == 5 || slowRuns == 6, "slow " + slowRuns);
+        }
+        assertEquals(0, blocks.getFailedRuns());
+    }
+
+    @Test
+    void testFailingGeneratorDoesNotStopTheBlock() {
+        AtomicIntegerArray calls = new AtomicIntegerArray(2);
+        PatientBlockScheduler blocks = new PatientBlockScheduler(patients(1), 1, 10, new RandomStreams(1));
+        blocks.addSignal((patientId, output) -> {
+            calls.incrementAndGet(patientId);
+            throw new IllegalStateException("broken");
+        }, 10, TimeUnit.MILLISECONDS);
+        ManualScheduler pool = new ManualScheduler();
+        blocks.start(pool, DISCARD);
+        pool.advance(200, TimeUnit.MILLISECONDS);
+        blocks.stop();
+
+        // 21 ticks less the initial delay
+        assertTrue(calls.get(1) >= 17, "calls " + calls.get(1));
+        assertEquals(calls.get(1), blocks.getFailedRuns());
+        assertEquals(21, blocks.getBlockRuns() + blocks.getFailedRuns());
+    }
+
+    @Test
+    void testPeriodMustBeMultipleOfTick() {
+        PatientBlockScheduler blocks = new PatientBlockScheduler(patients(1), 1, 1000, new RandomStreams(1));
+        assertThrows(IllegalArgumentException.class,
+                () -> blocks.addSignal((patientId, output) -> { }, 1500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testVirtualTimeKeepsPeriodsInSimulatedTime() throws Exception {
+        VirtualClock clock = new VirtualClock(1_000_000L);
+        List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+        OutputStrategy collector = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+                if (patientId == 1) {
+                    timestamps.add(timestamp);
+                }
+            }
+        };
+
+        PatientBlockScheduler blocks = new PatientBlockScheduler(patients(3), 2, 1000, new RandomStreams(1));
+        blocks.addSignal(new BloodSaturationDataGenerator(3, clock), 1, TimeUnit.MINUTES);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        long start = System.nanoTime();
+        try {
+            // Six hours of simulated time, as fast as possible
+            assertEquals(6 * 3600, blocks.runVirtual(clock, TimeUnit.HOURS.toMillis(6), 0, pool, collector));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1_000_000L + TimeUnit.HOURS.toMillis(6), clock.currentTimeMillis());
+        // Started after 0 to 4 minutes, then once a minute
+        assertTrue(timestamps.size() >= 356 && timestamps.size() <= 360, "samples " + timestamps.size());
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertEquals(60_000, timestamps.get(i) - timestamps.get(i - 1));
+        }
+    }
+
+    @Test
+    void testVirtualTimeAtSpeedFollowsRealTime() throws Exception {
+        VirtualClock clock = new VirtualClock(0);
+        PatientBlockScheduler blocks = new PatientBlockScheduler(patients(1), 1, 1000, new RandomStreams(1));
+        blocks.addSignal((patientId, output) -> { }, 1, TimeUnit.SECONDS);
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        long start = System.nanoTime();
+        try {
+            // Ten simulated seconds at 50 times real time take 200 ms
+            blocks.runVirtual(clock, 10_000, 50, pool, DISCARD);
+        } finally {
+            pool.shutdown();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 190 && elapsedMillis < 2000, "elapsed " + elapsedMillis);
+    }
+}
@@ -0,0 +1,196 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.PatientBlockScheduler;
+import com.cardio_generator.PatientControlServer;
+import com.cardio_generator.PatientTaskScheduler;
+import com.cardio_generator.generators.HighRateECGGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PatientCensusTest {
+
+    private static final OutputStrategy DISCARD = (patientId, timestamp, label, data) -> { };
+
+    // Counts the generator calls per patient and the discharges it was told about
+    private static final class CountingGenerator implements PatientDataGenerator {
+        final ConcurrentHashMap<Integer, AtomicInteger> calls = new ConcurrentHashMap<>();
+        final List<Integer> discharged = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void generate(int patientId, OutputStrategy outputStrategy) {
+            calls.computeIfAbsent(patientId, id -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public void discharge(int patientId) {
+            discharged.add(patientId);
+        }
+
+        int callsOf(int patientId) {
+            AtomicInteger count = calls.get(patientId);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    @Test
+    void testBlockSchedulerAdmitsAndDischargesBetweenRuns() {
+        VirtualClock clock = new VirtualClock(0);
+        CountingGenerator generator = new CountingGenerator();
+        PatientBlockScheduler blocks = new PatientBlockScheduler(List.of(1, 2), 2, 1000, new RandomStreams(1));
+        blocks.addSignal(generator, 1, TimeUnit.SECONDS);
+        blocks.runVirtual(clock, 60_000, DISCARD);
+        assertTrue(generator.callsOf(1) >= 56);
+
+        // A patient id beyond the initial census opens a new block, as the others are full
+        assertTrue(blocks.admit(500));
+        assertFalse(blocks.admit(500));
+        assertEquals(2, blocks.getBlockCount());
+        assertTrue(blocks.discharge(1));
+        assertFalse(blocks.discharge(1));
+        assertEquals(List.of(1), generator.discharged);
+
+        int callsAtDischarge = generator.callsOf(1);
+        blocks.runVirtual(clock, 60_000, DISCARD);
+        assertEquals(callsAtDischarge, generator.callsOf(1));
+        assertTrue(generator.callsOf(500) >= 55 && generator.callsOf(500) <= 60, "calls " + generator.callsOf(500));
+        assertTrue(generator.callsOf(2) >= 116);
+
+        List<Integer> ids = blocks.getPatientIds();
+        ids.sort(null);
+        assertEquals(List.of(2, 500), ids);
+        // The free place in the first block is taken before a new block is opened
+        assertTrue(blocks.admit(501));
+        assertEquals(2, blocks.getBlockCount());
+    }
+
+    @Test
+    void testReadmittedPatientGetsNoBacklog() {
+        VirtualClock clock = new VirtualClock(0);
+        AtomicInteger samples = new AtomicInteger();
+        OutputStrategy counter = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+                samples.incrementAndGet();
+            }
+        };
+        PatientBlockScheduler blocks = new PatientBlockScheduler(List.of(1), 1, 100, new RandomStreams(1));
+        blocks.addSignal(new HighRateECGGenerator(1, 100, clock, new RandomStreams(1)), 100, TimeUnit.MILLISECONDS);
+        blocks.runVirtual(clock, 10_000, counter);
+        assertTrue(samples.get() > 900);
+
+        blocks.discharge(1);
+        blocks.runVirtual(clock, 60_000, counter);
+        blocks.admit(1);
+        samples.set(0);
+        blocks.runVirtual(clock, 2_000, counter);
+        // At most the two seconds since readmission, not the minute away
+        assertTrue(samples.get() > 100 && samples.get() <= 201, "samples " + samples.get());
+    }
+
+    @Test
+    void testTaskSchedulerStopsDischargedPatients() {
+        CountingGenerator generator = new CountingGenerator();
+        ManualScheduler pool = new ManualScheduler();
+        PatientTaskScheduler tasks = new PatientTaskScheduler(pool, DISCARD, new Random(1));
+        tasks.addSignal(generator, 10, TimeUnit.MILLISECONDS);
+        assertTrue(tasks.admit(1));
+        assertTrue(tasks.admit(2));
+        assertFalse(tasks.admit(2));
+        pool.advance(200, TimeUnit.MILLISECONDS);
+
+        // Started after 0 to 4 ms, then every 10 ms
+        int callsAtDischarge = generator.callsOf(1);
+        int otherCalls = generator.callsOf(2);
+        assertTrue(callsAtDischarge == 20 || callsAtDischarge == 21, "calls " + callsAtDischarge);
+        assertTrue(tasks.discharge(1));
+        assertFalse(tasks.discharge(1));
+        assertEquals(List.of(1), generator.discharged);
+        pool.advance(200, TimeUnit.MILLISECONDS);
+
+        assertEquals(callsAtDischarge, generator.callsOf(1));
+        assertEquals(otherCalls + 20, generator.callsOf(2));
+        assertEquals(List.of(2), tasks.getPatientIds());
+    }
+
+    @Test
+    void testTaskWaitingForTheLockDoesNotRunAfterDischarge() {
+        // Hands out the tasks so the test can run one as if it had passed the cancellation
+        // check and then waited for the patient's lock while discharge held it
+        List<Runnable> scheduled = new ArrayList<>();
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period,
+                                                          TimeUnit unit) {
+                scheduled.add(command);
+                return super.scheduleAtFixedRate(command, 1, 1, TimeUnit.HOURS);
+            }
+        };
+        try {
+            CountingGenerator generator = new CountingGenerator();
+            PatientTaskScheduler tasks = new PatientTaskScheduler(pool, DISCARD, new Random(1));
+            tasks.addSignal(generator, 10, TimeUnit.MILLISECONDS);
+            assertTrue(tasks.admit(1));
+            assertTrue(tasks.discharge(1));
+
+            scheduled.get(0).run();
+            assertEquals(0, generator.callsOf(1));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testControlServerChangesTheCensus() throws Exception {
+        PatientBlockScheduler blocks = new PatientBlockScheduler(List.of(1, 2), 10, 1000, new RandomStreams(1));
+        blocks.addSignal((patientId, output) -> { }, 1, TimeUnit.SECONDS);
+        try (PatientControlServer server = new PatientControlServer(0, blocks);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            out.println("admit 10-14");
+            assertEquals("OK admitted 5", in.readLine());
+            out.println("admit 2");
+            assertEquals("ERROR patient 2 is already admitted", in.readLine());
+            out.println("discharge 1");
+            assertEquals("OK discharged 1", in.readLine());
+            out.println("count");
+            assertEquals("OK 6", in.readLine());
+            out.println("list");
+            assertEquals("OK 2 10 11 12 13 14", in.readLine());
+            out.println("admit 5-3");
+            assertTrue(in.readLine().startsWith("ERROR"));
+            out.println("admit x");
+            assertTrue(in.readLine().startsWith("ERROR"));
+            out.println("restart");
+            assertEquals("ERROR unknown command 'restart'", in.readLine());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.LastSeenTracker;
+import com.data_management.RealTimeDataReader;
+import com.data_management.WireFormat;
+import com.webSocket.RealTimeWebSocketClient;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+
+class RealTimeDataReaderReconnectTest {
+
+    private int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void waitForRecords(DataStorage storage, int patientId, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (storage.getRecords(patientId, 0, Long.MAX_VALUE).size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testReconnectsWhenServerComesUp() throws Exception {
+        int port = freePort();
+        DataStorage storage = new DataStorage();
+        RealTimeDataReader reader = new RealTimeDataReader("ws://localhost:" + port, storage);
+        reader.startReading(); // Refused, retried in the background
+
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (storage.getRecords(1, 0, Long.MAX_VALUE).isEmpty() && System.currentTimeMillis() < deadline) {
+            strategy.output(1, System.currentTimeMillis(), "Saturation", "97.0%");
+            Thread.sleep(100);
+        }
+        reader.stopReading();
+
+        assertFalse(storage.getRecords(1, 0, Long.MAX_VALUE).isEmpty());
+        assertEquals(97.0, storage.getRecords(1, 0, Long.MAX_VALUE).get(0).getMeasurementValue(), 0.001);
+    }
+
+    @Test
+    void testResumeReplaysMissedSamplesWithoutDuplicates() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port);
+        Thread.sleep(200);
+        for (int i = 0; i < 5; i++) {
+            strategy.output(2, 1000 + i, "ECG", Double.toString(i));
+        }
+
+        DataStorage storage = new DataStorage();
+        LastSeenTracker tracker = new LastSeenTracker(storage);
+        tracker.addPatientData(2, 0.0, "ECG", 1000); // Received before the outage
+        tracker.addPatientData(2, 1.0, "ECG", 1001);
+        tracker.addPatientData(3, 9.0, "Saturation", 1003);
+
+        RealTimeWebSocketClient client = new RealTimeWebSocketClient(new URI("ws://localhost:" + port), tracker);
+        assertTrue(client.connectBlocking());
+        // The oldest signal decides, not the newest sample over all patients
+        long since = tracker.beginResume();
+        assertEquals(1001, since);
+        client.send("{\"type\":\"resume\",\"since\":" + since + "}");
+        waitForRecords(storage, 2, 5);
+        client.closeBlocking();
+
+        assertEquals(5, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertEquals(1, tracker.getDuplicatesDiscarded());
+    }
+
+    @Test
+    void testResumeWithoutHistoryReplaysNothing() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 0, false, WireFormat.TEXT, 0);
+        Thread.sleep(200);
+        for (int i = 0; i < 5; i++) {
+            strategy.output(4, 1000 + i, "ECG", Double.toString(i));
+        }
+
+        DataStorage storage = new DataStorage();
+        RealTimeWebSocketClient client = new RealTimeWebSocketClient(new URI("ws://localhost:" + port), storage);
+        try {
+            assertTrue(client.connectBlocking());
+            client.send("{\"type\":\"resume\",\"since\":0}");
+            Thread.sleep(200);
+            strategy.output(4, 2000, "ECG", "5.0");
+            waitForRecords(storage, 4, 1);
+            assertEquals(1, storage.getRecords(4, 0, Long.MAX_VALUE).size());
+            assertEquals(2000L, storage.getRecords(4, 0, Long.MAX_VALUE).get(0).getTimestamp());
+        } finally {
+            client.closeBlocking();
+            strategy.close();
+        }
+    }
+
+    @Test
+    void testOutOfOrderSamplesAreKept() {
+        DataStorage storage = new DataStorage();
+        LastSeenTracker tracker = new LastSeenTracker(storage);
+        tracker.addPatientData(1, 1.0, "ECG", 1000);
+        tracker.addPatientData(1, 2.0, "ECG", 990);
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(1000L, tracker.getLastSeen(1, "ECG"));
+
+        // Replayed samples up to the last one seen are dropped, later late ones are not
+        tracker.beginResume();
+        tracker.addPatientData(1, 2.0, "ECG", 990);
+        tracker.addPatientData(1, 1.0, "ECG", 1000);
+        tracker.addPatientData(1, 3.0, "ECG", 1010);
+        tracker.addPatientData(1, 4.0, "ECG", 1005);
+        assertEquals(2, tracker.getDuplicatesDiscarded());
+        assertEquals(4, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(1010L, tracker.getLastSeen(1, "ECG"));
+    }
+
+    @Test
+    void testReaderCanBeStartedAgainAfterStopping() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port);
+        Thread.sleep(200);
+        DataStorage storage = new DataStorage();
+        RealTimeDataReader reader = new RealTimeDataReader("ws://localhost:" + port, storage);
+        try {
+            for (int round = 1; round <= 2; round++) {
+                reader.startReading();
+                long deadline = System.currentTimeMillis() + 10000;
+                while (storage.getRecords(round, 0, Long.MAX_VALUE).isEmpty()
+                        && System.currentTimeMillis() < deadline) {
+                    strategy.output(round, System.currentTimeMillis(), "Saturation", "97.0%");
+                    Thread.sleep(50);
+                }
+                reader.stopReading();
+                assertFalse(storage.getRecords(round, 0, Long.MAX_VALUE).isEmpty(), "round " + round);
+            }
+        } finally {
+            strategy.close();
+        }
+    }
+}
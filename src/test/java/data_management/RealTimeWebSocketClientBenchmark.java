@@ -0,0 +1,40 @@
+package data_management;
+
+import com.data_management.DataStorageSingleton;
+import com.webSocket.RealTimeWebSocketClient;
+
+import java.net.URI;
+
+/**
+ * Measures how many messages per second RealTimeWebSocketClient.onMessage ingests.
+ * Not a unit test; run it with
+ * {@code java -cp target/classes:target/test-classes:<deps> data_management.RealTimeWebSocketClientBenchmark}.
+ */
+public class RealTimeWebSocketClientBenchmark {
+
+    private static final int MESSAGES = 500_000;
+    private static final int PATIENTS = 100;
+
+    public static void main(String[] args) throws Exception {
+        RealTimeWebSocketClient client = new RealTimeWebSocketClient(new URI("ws://localhost:8887"));
+        String[] messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = "{\"patientId\": " + (i % PATIENTS + 1) + ", \"measurementValue\": " + (0.5 + i % 7)
+                    + ", \"recordType\": \"ECG\", \"timestamp\": " + (1716123910000L + i) + "}";
+        }
+
+        for (int round = 0; round < 3; round++) {
+            DataStorageSingleton.getInstance().clear();
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                client.onMessage(messages[i]);
+                if (i % 10_000 == 0) {
+                    // Keep the per-patient record lists short so storage does not dominate
+                    DataStorageSingleton.getInstance().clear();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.err.printf("round %d: %.0f msgs/s%n", round, MESSAGES / (elapsed / 1e9));
+        }
+    }
+}
@@ -94,4 +94,35 @@ public class RealTimeWebSocketClientTest {
 
         assertDoesNotThrow(() -> client.onMessage(invalidNumericJson));
     }
+
+    @Test
+    public void testJsonArrayOfSamples() throws Exception {
+        String jsonMessage = "[{\"patientId\": 3, \"measurementValue\": 97, \"recordType\": \"Saturation\", \"timestamp\": 1716123910000},"
+                + "{\"patientId\": 3, \"measurementValue\": \"bad\", \"recordType\": \"Saturation\", \"timestamp\": 1716123911000},"
+                + "{\"patientId\": 3, \"measurementValue\": 96, \"recordType\": \"Saturation\", \"timestamp\": 1716123912000, \"extra\": {\"a\": 1}}]";
+
+        RealTimeWebSocketClient client = new RealTimeWebSocketClient(new URI("ws://localhost:8887"));
+        client.onMessage(jsonMessage);
+
+        List<PatientRecord> records = DataStorageSingleton.getInstance().getRecords(3, 1716123910000L, 1716123912000L);
+
+        assertEquals(2, records.size());
+        assertEquals(1, client.getReceivedMessages());
+        assertEquals(2, client.getStoredSamples());
+        assertEquals(1, client.getRejectedSamples());
+    }
+
+    @Test
+    public void testCsvLinesWithAlertStates() throws Exception {
+        RealTimeWebSocketClient client = new RealTimeWebSocketClient(new URI("ws://localhost:8887"));
+        client.onMessage("4,1000,Alert,triggered\n4,1001,Saturation,97.0%\r\n4,1002,Alert,resolved\n4,1003,ECG,abc");
+
+        List<PatientRecord> records = DataStorageSingleton.getInstance().getRecords(4, 1000L, 1003L);
+
+        assertEquals(3, records.size());
+        assertEquals(1.0, records.get(0).getMeasurementValue(), 0.0);
+        assertEquals(97.0, records.get(1).getMeasurementValue(), 0.0);
+        assertEquals(0.0, records.get(2).getMeasurementValue(), 0.0);
+        assertEquals(1, client.getRejectedSamples());
+    }
 }
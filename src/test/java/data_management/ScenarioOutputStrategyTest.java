@@ -0,0 +1,225 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.PatientBlockScheduler;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.RandomStreams;
+import com.cardio_generator.generators.VirtualClock;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.ScenarioOutputStrategy;
+import com.cardio_generator.outputs.ScenarioOutputStrategy.Episode;
+import com.cardio_generator.outputs.ScenarioOutputStrategy.Scenario;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class ScenarioOutputStrategyTest {
+
+    private static final long ORIGIN = 1_000_000L;
+    private static final long MINUTE = 60_000L;
+
+    // Records numeric samples as "patient signal timestamp value"
+    private static class Collector implements OutputStrategy {
+        final List<double[]> samples = new ArrayList<>();
+        final List<Integer> discharged = new ArrayList<>();
+
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            fail("Expected numeric samples");
+        }
+
+        @Override
+        public synchronized void discharge(int patientId) {
+            discharged.add(patientId);
+        }
+
+        @Override
+        public synchronized void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+            samples.add(new double[]{patientId, signalCode.code(), timestamp, value});
+        }
+
+        List<double[]> of(int patientId, SignalCode signalCode) {
+            List<double[]> result = new ArrayList<>();
+            for (double[] sample : samples) {
+                if (sample[0] == patientId && sample[1] == signalCode.code()) {
+                    result.add(sample);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static ScenarioOutputStrategy scripted(Collector collector, Episode... episodes) {
+        return new ScenarioOutputStrategy(collector, 2, ORIGIN, List.of(episodes), 0, 10 * MINUTE,
+                new RandomStreams(1));
+    }
+
+    @Test
+    void testHypotensionLowersPressureOfItsPatientDuringTheEpisode() {
+        Collector collector = new Collector();
+        ScenarioOutputStrategy strategy = scripted(collector,
+                new Episode(1, Scenario.HYPOTENSION, 10 * MINUTE, 10 * MINUTE));
+        for (long minute = 0; minute < 30; minute++) {
+            for (int patientId = 1; patientId <= 2; patientId++) {
+                strategy.output(patientId, ORIGIN + minute * MINUTE, SignalCode.SYSTOLIC_PRESSURE, 120);
+                strategy.output(patientId, ORIGIN + minute * MINUTE, SignalCode.DIASTOLIC_PRESSURE, 80);
+                strategy.output(patientId, ORIGIN + minute * MINUTE, SignalCode.SATURATION, 97);
+            }
+        }
+
+        List<double[]> systolic = collector.of(1, SignalCode.SYSTOLIC_PRESSURE);
+        List<double[]> diastolic = collector.of(1, SignalCode.DIASTOLIC_PRESSURE);
+        for (int minute = 0; minute < 30; minute++) {
+            boolean inEpisode = minute >= 10 && minute < 20;
+            if (!inEpisode) {
+                assertEquals(120, systolic.get(minute)[3], "minute " + minute);
+                assertEquals(80, diastolic.get(minute)[3], "minute " + minute);
+            } else if (minute >= 13) {
+                // After the ramp the values are past the alert thresholds
+                assertTrue(systolic.get(minute)[3] < 90, "minute " + minute);
+                assertTrue(diastolic.get(minute)[3] < 60, "minute " + minute);
+            }
+        }
+        // The falling values also form a decreasing trend of more than 10 mmHg per reading
+        assertTrue(systolic.get(10)[3] - systolic.get(11)[3] > 10);
+        assertTrue(systolic.get(11)[3] - systolic.get(12)[3] > 10);
+        for (double[] sample : collector.of(1, SignalCode.SATURATION)) {
+            assertEquals(97, sample[3]);
+        }
+        for (double[] sample : collector.of(2, SignalCode.SYSTOLIC_PRESSURE)) {
+            assertEquals(120, sample[3]);
+        }
+        assertEquals(1, strategy.getStartedEpisodes());
+        // Nine readings of each pressure; the first of the episode is not lowered yet
+        assertEquals(18, strategy.getModifiedSamples());
+    }
+
+    @Test
+    void testHypotensiveHypoxemiaLowersPressureAndSaturationTogether() {
+        Collector collector = new Collector();
+        ScenarioOutputStrategy strategy = scripted(collector,
+                new Episode(2, Scenario.HYPOTENSIVE_HYPOXEMIA, 0, 10 * MINUTE));
+        for (long minute = 0; minute < 10; minute++) {
+            strategy.output(2, ORIGIN + minute * MINUTE, SignalCode.SYSTOLIC_PRESSURE, 110);
+            strategy.output(2, ORIGIN + minute * MINUTE, SignalCode.SATURATION, 96);
+        }
+        double[] systolic = collector.of(2, SignalCode.SYSTOLIC_PRESSURE).get(5);
+        double[] saturation = collector.of(2, SignalCode.SATURATION).get(5);
+        assertTrue(systolic[3] < 90);
+        assertTrue(saturation[3] < 92);
+        assertEquals(systolic[2], saturation[2]);
+    }
+
+    @Test
+    void testTachycardiaAddsHeartRatePerSecondAndSpikesStandOut() {
+        Collector collector = new Collector();
+        ScenarioOutputStrategy strategy = scripted(collector,
+                new Episode(1, Scenario.TACHYCARDIA, 0, 10 * MINUTE),
+                new Episode(2, Scenario.ECG_SPIKES, 0, 10 * MINUTE));
+        // Ten minutes of a 250 Hz ECG in 50 ms blocks
+        long[] timestamps = new long[12];
+        double[] values = new double[12];
+        for (long block = 0; block < 12_000; block++) {
+            for (int i = 0; i < 12; i++) {
+                timestamps[i] = ORIGIN + block * 50 + i * 4;
+                values[i] = 0.1;
+            }
+            strategy.output(1, SignalCode.ECG, timestamps, values, 12);
+            strategy.output(2, SignalCode.ECG, timestamps, values, 12);
+            for (int i = 0; i < 12; i++) {
+                assertEquals(0.1, values[i], "caller's block was changed");
+            }
+        }
+
+        List<double[]> heartRates = collector.of(1, SignalCode.HEART_RATE);
+        assertEquals(600, heartRates.size());
+        assertEquals(600, strategy.getAddedSamples());
+        assertTrue(heartRates.get(599)[3] > 120);
+        assertTrue(collector.of(2, SignalCode.HEART_RATE).isEmpty());
+
+        int spikes = 0;
+        for (double[] sample : collector.of(2, SignalCode.ECG)) {
+            if (sample[3] > 1.5) {
+                spikes++;
+            }
+        }
+        assertEquals(300, spikes);
+        assertEquals(300, strategy.getModifiedSamples());
+        for (double[] sample : collector.of(1, SignalCode.ECG)) {
+            assertEquals(0.1, sample[3]);
+        }
+    }
+
+    // Saturation once a minute for 100 patients over 20 hours
+    private static ScenarioOutputStrategy runRandom(long seed, Collector collector) {
+        ScenarioOutputStrategy strategy = new ScenarioOutputStrategy(collector, 100, ORIGIN, Collections.emptyList(),
+                0.5, 10 * MINUTE, new RandomStreams(seed));
+        for (long minute = 0; minute < 20 * 60; minute++) {
+            for (int patientId = 1; patientId <= 100; patientId++) {
+                strategy.output(patientId, ORIGIN + minute * MINUTE, SignalCode.SATURATION, 97);
+            }
+        }
+        return strategy;
+    }
+
+    @Test
+    void testRandomEpisodesFollowTheRateAndTheSeed() {
+        Collector a = new Collector();
+        Collector b = new Collector();
+        ScenarioOutputStrategy first = runRandom(7, a);
+        ScenarioOutputStrategy second = runRandom(7, b);
+
+        // 0.5 per patient-hour with 10 minute episodes: about 100 * 20 / (2 h + 10 min) = 923
+        long episodes = first.getStartedEpisodes();
+        assertTrue(episodes > 700 && episodes < 1150, "episodes " + episodes);
+        assertTrue(first.getModifiedSamples() > 0);
+        assertEquals(episodes, second.getStartedEpisodes());
+        assertEquals(a.samples.size(), b.samples.size());
+        for (int i = 0; i < a.samples.size(); i++) {
+            assertArrayEquals(a.samples.get(i), b.samples.get(i));
+        }
+    }
+
+    @Test
+    void testDischargeForgetsThePatient() {
+        Collector collector = new Collector();
+        ScenarioOutputStrategy strategy = new ScenarioOutputStrategy(collector, 3, ORIGIN,
+                List.of(new Episode(3, Scenario.DESATURATION, 0, 30 * MINUTE)), 0.5, 10 * MINUTE,
+                new RandomStreams(1));
+        VirtualClock clock = new VirtualClock(ORIGIN);
+        PatientBlockScheduler blocks = new PatientBlockScheduler(List.of(1, 2, 3), 3, 1000, new RandomStreams(1));
+        blocks.addSignal(new BloodSaturationDataGenerator(3, clock), 1, TimeUnit.MINUTES);
+        blocks.runVirtual(clock, 10 * MINUTE, strategy);
+        assertEquals(3, strategy.getTrackedPatients());
+
+        assertTrue(blocks.discharge(1));
+        assertTrue(blocks.discharge(3));
+        assertEquals(1, strategy.getTrackedPatients());
+        assertEquals(List.of(1, 3), collector.discharged);
+
+        // A readmitted patient gets its scripted episode again
+        blocks.admit(3);
+        blocks.runVirtual(clock, 10 * MINUTE, strategy);
+        assertEquals(2, strategy.getTrackedPatients());
+        List<double[]> saturation = collector.of(3, SignalCode.SATURATION);
+        assertTrue(saturation.get(saturation.size() - 1)[3] < 92);
+    }
+
+    @Test
+    void testParsesEpisodes() {
+        Episode episode = Episode.parse("hypotensive_hypoxemia:12:300:60", 600_000);
+        assertEquals(12, episode.getPatientId());
+        assertEquals(Scenario.HYPOTENSIVE_HYPOXEMIA, episode.getScenario());
+        assertEquals(300_000, episode.getStartOffsetMillis());
+        assertEquals(60_000, episode.getDurationMillis());
+        assertEquals(600_000, Episode.parse("ecg-spikes:1:0", 600_000).getDurationMillis());
+        assertThrows(IllegalArgumentException.class, () -> Episode.parse("fever:1:0", 600_000));
+        assertThrows(IllegalArgumentException.class, () -> Episode.parse("hypotension:1", 600_000));
+    }
+}
@@ -0,0 +1,129 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.TcpDataReader;
+import com.data_management.WireFormat;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class TcpDataReaderTest {
+
+    // Accepts one client, writes the payload in small chunks and closes
+    private ServerSocket serve(String payload) throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        Thread thread = new Thread(() -> {
+            try (Socket client = server.accept(); OutputStream out = client.getOutputStream()) {
+                byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < bytes.length; i += 7) {
+                    out.write(bytes, i, Math.min(7, bytes.length - i));
+                    out.flush();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    server.close();
+                } catch (Exception ignored) {
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    @Test
+    void testReadsLinesFromSeveralEndpoints() throws Exception {
+        ServerSocket first = serve("1,1000,Saturation,97.0%\n1,1001,ECG,-0.125\n1,1002,Alert,triggered\n1,1003,ECG,n/a\n");
+        ServerSocket second = serve("2,2000,SystolicPressure,120.0\r\n2,2001,Cholesterol,1.5E2\n");
+
+        TcpDataReader reader = new TcpDataReader(Arrays.asList(
+                new InetSocketAddress("localhost", first.getLocalPort()),
+                new InetSocketAddress("localhost", second.getLocalPort())), null);
+        DataStorage storage = new DataStorage();
+        reader.readData(storage);
+
+        List<PatientRecord> patient1 = storage.getRecords(1, 0, Long.MAX_VALUE);
+        List<PatientRecord> patient2 = storage.getRecords(2, 0, Long.MAX_VALUE);
+        assertEquals(3, patient1.size());
+        assertEquals(97.0, patient1.get(0).getMeasurementValue(), 1e-12);
+        assertEquals("Saturation", patient1.get(0).getRecordType());
+        assertEquals(-0.125, patient1.get(1).getMeasurementValue(), 1e-12);
+        // Alert states are read as in the binary frames
+        assertEquals(1.0, patient1.get(2).getMeasurementValue(), 0.0);
+        assertEquals(2, patient2.size());
+        assertEquals(120.0, patient2.get(0).getMeasurementValue(), 1e-12);
+        assertEquals(150.0, patient2.get(1).getMeasurementValue(), 1e-12);
+        assertEquals(2001L, patient2.get(1).getTimestamp());
+        assertEquals(5, reader.getSamplesRead());
+        assertEquals(1, reader.getMalformedLines());
+    }
+
+    @Test
+    void testValuesMatchDoubleToString() throws Exception {
+        double[] values = {0.8379238419023842, 1.0E-5, 123456.789, -3.3333333333333335, 4.9E-10,
+                1.7976931348623157E308, 4.9E-324, 2.2250738585072014E-308, 9.007199254740993E15, 1.0E23};
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            payload.append("3,").append(i).append(",ECG,").append(Double.toString(values[i])).append('\n');
+        }
+        ServerSocket server = serve(payload.toString());
+
+        DataStorage storage = new DataStorage();
+        new TcpDataReader("localhost", server.getLocalPort(), null).readData(storage);
+
+        List<PatientRecord> records = storage.getRecords(3, 0, Long.MAX_VALUE);
+        assertEquals(values.length, records.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], records.get(i).getMeasurementValue(), 0.0, "value " + values[i]);
+        }
+    }
+
+    // Connects to an aggregating reader, sends the payload and closes
+    private static void push(int port, String payload) throws Exception {
+        try (Socket socket = new Socket("localhost", port); OutputStream out = socket.getOutputStream()) {
+            out.write(payload.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testAggregatorCountsAReconnectingSimulatorOnce() throws Exception {
+        TcpDataReader aggregator = new TcpDataReader(0, 2, null, WireFormat.TEXT);
+        DataStorage storage = new DataStorage();
+        Thread reader = new Thread(() -> {
+            try {
+                aggregator.readData(storage);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        reader.start();
+        int port = aggregator.getLocalPort();
+
+        push(port, "SIMULATOR a\n1,1000,ECG,0.5\n");
+        push(port, "SIMULATOR a\n1,1001,ECG,0.25\n");
+        reader.join(500);
+        assertTrue(reader.isAlive(), "two connections of one simulator are not two simulators");
+
+        // A simulator without a hello counts as one of its own
+        push(port, "2,2000,ECG,1.0\n");
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(reader.isAlive());
+
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertEquals(0, aggregator.getMalformedLines());
+    }
+}
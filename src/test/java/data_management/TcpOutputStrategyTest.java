@@ -0,0 +1,111 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import com.cardio_generator.outputs.TcpOutputStrategy.SlowClientPolicy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.TcpDataReader;
+import com.data_management.WireFormat;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+class TcpOutputStrategyTest {
+
+    private static void awaitClients(TcpOutputStrategy output, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (output.getClientCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, output.getClientCount());
+    }
+
+    @Test
+    void testEveryClientReceivesEverySample() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(0, 1 << 20, SlowClientPolicy.DROP);
+        try (Socket first = new Socket("localhost", output.getLocalPort());
+             Socket second = new Socket("localhost", output.getLocalPort())) {
+            awaitClients(output, 2);
+
+            for (int i = 0; i < 1000; i++) {
+                output.output(7, i, "HeartRate", "72.0");
+            }
+
+            for (Socket socket : new Socket[] {first, second}) {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals("7," + i + ",HeartRate,72.0", in.readLine());
+                }
+            }
+            assertEquals(2000, output.getSentSamples());
+            assertEquals(0, output.getDroppedSamples());
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    void testSlowClientIsDisconnected() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(0, 4096, SlowClientPolicy.DISCONNECT);
+        try (Socket stalled = new Socket("localhost", output.getLocalPort())) {
+            stalled.setReceiveBufferSize(1024);
+            awaitClients(output, 1);
+
+            // Never read: the socket buffers fill up and then the client's outbound buffer
+            String data = "x".repeat(200);
+            for (int i = 0; i < 100_000 && output.getClientCount() > 0; i++) {
+                output.output(1, i, "ECG", data);
+            }
+
+            assertEquals(0, output.getClientCount());
+            assertEquals(1, output.getDisconnectedClients());
+            assertTrue(output.getDroppedSamples() > 0);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    void testBinaryFramesAreReadByTcpDataReader() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(0, 1 << 20, SlowClientPolicy.DROP, WireFormat.BINARY);
+        DataStorage storage = new DataStorage();
+        TcpDataReader reader = new TcpDataReader(
+                Collections.singletonList(new InetSocketAddress("localhost", output.getLocalPort())),
+                storage, WireFormat.BINARY);
+        try {
+            reader.startReading();
+            awaitClients(output, 1);
+
+            for (int i = 0; i < 3000; i++) {
+                output.output(4, 5000 + i, "Saturation", (90 + i % 10) + ".0%");
+            }
+            output.output(4, 9000, "Alert", "triggered");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (storage.getRecords(4, 0, Long.MAX_VALUE).size() < 3001 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            reader.stopReading();
+            output.close();
+        }
+
+        List<PatientRecord> records = storage.getRecords(4, 0, Long.MAX_VALUE);
+        assertEquals(3001, records.size());
+        assertEquals(90.0, records.get(0).getMeasurementValue());
+        assertEquals(99.0, records.get(2999).getMeasurementValue());
+        assertEquals("Alert", records.get(3000).getRecordType());
+        assertEquals(1.0, records.get(3000).getMeasurementValue());
+        assertEquals(0, reader.getMalformedLines());
+    }
+}
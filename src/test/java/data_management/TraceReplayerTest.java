@@ -0,0 +1,132 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.BulkDatasetGenerator;
+import com.cardio_generator.TraceReplayer;
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.SegmentPolicy;
+import com.data_management.BinaryFileDataReader;
+import com.data_management.DataStorage;
+import com.data_management.SignalCode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class TraceReplayerTest {
+
+    // Records the timestamps and signals in the order they arrive
+    private static final class Recorder implements OutputStrategy {
+        final List<Long> timestamps = new ArrayList<>();
+        final List<SignalCode> signals = new ArrayList<>();
+        final List<String> texts = new ArrayList<>();
+
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            timestamps.add(timestamp);
+            texts.add(label + "=" + data);
+        }
+
+        @Override
+        public void output(int patientId, long timestamp, SignalCode signalCode, double value) {
+            timestamps.add(timestamp);
+            signals.add(signalCode);
+        }
+    }
+
+    private static void assertAscending(List<Long> timestamps) {
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertTrue(timestamps.get(i) >= timestamps.get(i - 1), "out of order at " + i);
+        }
+    }
+
+    @Test
+    void testMergesRotatedLabelFilesByTimestamp(@TempDir Path directory) throws Exception {
+        // Small segments, so every label is spread over several compressed files
+        FileOutputStrategy files = new FileOutputStrategy(directory.toString(), 1000,
+                new SegmentPolicy(2000, 0, true));
+        for (int i = 0; i < 300; i++) {
+            files.output(1, 1000 + 2 * i, SignalCode.SATURATION, 95);
+            files.output(2, 1001 + 2 * i, SignalCode.ECG, 0.5);
+            if (i % 100 == 0) {
+                files.output(3, 1000 + 2 * i, SignalCode.ALERT, 1);
+            }
+        }
+        files.output(4, 1500, "Custom", "7.5");
+        files.close();
+        Files.write(directory.resolve("ECG.txt"), "not a sample\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        TraceReplayer replayer = new TraceReplayer(directory, 0, false);
+        Recorder recorder = new Recorder();
+        assertEquals(604, replayer.replay(recorder));
+
+        assertEquals(604, recorder.timestamps.size());
+        assertAscending(recorder.timestamps);
+        assertEquals(1000L, recorder.timestamps.get(0));
+        assertEquals(1599L, recorder.timestamps.get(603));
+        assertEquals(599, replayer.getTraceSpanMillis());
+        assertEquals(1, replayer.getSkippedSamples());
+        assertEquals(List.of("Custom=7.5"), recorder.texts);
+        assertEquals(3, recorder.signals.stream().filter(code -> code == SignalCode.ALERT).count());
+    }
+
+    @Test
+    void testMergesBinaryCapturesOfSeveralPartitions(@TempDir Path directory) throws Exception {
+        long generated = new BulkDatasetGenerator(6, TimeUnit.MINUTES.toMillis(5), 3,
+                BulkDatasetGenerator.DEFAULT_START_MILLIS, 7).generate(directory);
+
+        Recorder recorder = new Recorder();
+        TraceReplayer replayer = new TraceReplayer(directory, 0, false);
+        assertEquals(generated, replayer.replay(recorder));
+        assertAscending(recorder.timestamps);
+        assertEquals(0, replayer.getSkippedSamples());
+
+        // The same samples as a plain import of the files
+        DataStorage storage = new DataStorage();
+        new BinaryFileDataReader(directory.toString()).readData(storage);
+        long imported = 0;
+        for (int patientId = 1; patientId <= 6; patientId++) {
+            imported += storage.getRecords(patientId, 0, Long.MAX_VALUE).size();
+        }
+        assertEquals(generated, imported);
+    }
+
+    @Test
+    void testKeepsTheTimingAtTheGivenSpeed(@TempDir Path directory) throws Exception {
+        FileOutputStrategy files = new FileOutputStrategy(directory.toString());
+        for (int i = 0; i <= 20; i++) {
+            files.output(1, 10_000 + 100 * i, SignalCode.SATURATION, 97);
+        }
+        files.close();
+
+        // Two seconds of trace at ten times real time
+        long start = System.nanoTime();
+        Recorder recorder = new Recorder();
+        long before = System.currentTimeMillis();
+        new TraceReplayer(directory, 10, true).replay(recorder);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 190 && elapsedMillis < 2000, "elapsed " + elapsedMillis);
+
+        // Rebased to start now, with the recorded spacing
+        assertTrue(recorder.timestamps.get(0) >= before && recorder.timestamps.get(0) < before + 1000);
+        assertEquals(2000L, recorder.timestamps.get(20) - recorder.timestamps.get(0));
+    }
+
+    @Test
+    void testMissingTraceIsReported(@TempDir Path directory) {
+        assertThrows(IOException.class,
+                () -> new TraceReplayer(directory.resolve("missing"), 0, false).replay(new Recorder()));
+        assertThrows(IOException.class, () -> new TraceReplayer(directory, 0, false).replay(new Recorder()));
+    }
+}
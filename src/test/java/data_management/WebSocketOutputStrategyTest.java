@@ -0,0 +1,217 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.WireFormat;
+import com.webSocket.RealTimeWebSocketClient;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class WebSocketOutputStrategyTest {
+
+    private int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // Collects received lines over a connection that negotiates permessage-deflate
+    private static class DeflateClient extends WebSocketClient {
+        final List<String> lines = new CopyOnWriteArrayList<>();
+
+        DeflateClient(URI uri) {
+            super(uri, new Draft_6455(new PerMessageDeflateExtension()));
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+        }
+
+        @Override
+        public void onMessage(String message) {
+            for (String line : message.split("\n")) {
+                lines.add(line);
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Test
+    void testCoalescedFramesReachEveryClient() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 50, true);
+        Thread.sleep(200);
+
+        DataStorage storage = new DataStorage();
+        RealTimeWebSocketClient plain = new RealTimeWebSocketClient(new URI("ws://localhost:" + port), storage);
+        DeflateClient deflate = new DeflateClient(new URI("ws://localhost:" + port));
+        assertTrue(plain.connectBlocking());
+        assertTrue(deflate.connectBlocking());
+
+        for (int i = 0; i < 2000; i++) {
+            strategy.output(3, 1000 + i, "HeartRate", Double.toString(60 + i % 40));
+        }
+        strategy.flush();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((storage.getRecords(3, 0, Long.MAX_VALUE).size() < 2000 || deflate.lines.size() < 2000)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        plain.closeBlocking();
+        deflate.closeBlocking();
+        strategy.close();
+
+        assertEquals(2000, storage.getRecords(3, 0, Long.MAX_VALUE).size());
+        assertEquals(2000, deflate.lines.size());
+        assertEquals("3,1000,HeartRate,60.0", deflate.lines.get(0));
+        assertEquals("3,2999,HeartRate,99.0", deflate.lines.get(1999));
+        assertTrue(strategy.getBroadcastFrames() < 100, "frames: " + strategy.getBroadcastFrames());
+        assertEquals(2000, strategy.getBroadcastSamples());
+    }
+
+    @Test
+    void testSubscriptionsFilterAndDownsample() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 10, false);
+        Thread.sleep(200);
+        URI uri = new URI("ws://localhost:" + port);
+
+        DataStorage bedside = new DataStorage();
+        DataStorage trends = new DataStorage();
+        DataStorage everything = new DataStorage();
+        RealTimeWebSocketClient bedsideClient = new RealTimeWebSocketClient(uri, bedside);
+        RealTimeWebSocketClient trendsClient = new RealTimeWebSocketClient(uri, trends);
+        RealTimeWebSocketClient everythingClient = new RealTimeWebSocketClient(uri, everything);
+        assertTrue(bedsideClient.connectBlocking());
+        assertTrue(trendsClient.connectBlocking());
+        assertTrue(everythingClient.connectBlocking());
+        bedsideClient.send("{\"type\":\"subscribe\",\"patients\":[1]}");
+        trendsClient.send("{\"type\":\"subscribe\",\"labels\":[\"HeartRate\"],\"rate\":1}");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (strategy.getSubscriberCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, strategy.getSubscriberCount());
+
+        // Ten seconds of samples at 10 Hz for two patients
+        for (int i = 0; i < 100; i++) {
+            for (int patientId = 1; patientId <= 2; patientId++) {
+                strategy.output(patientId, 100_000 + i * 100, "HeartRate", "70.0");
+                strategy.output(patientId, 100_000 + i * 100, "ECG", "0.5");
+            }
+        }
+        strategy.flush();
+
+        deadline = System.currentTimeMillis() + 10000;
+        while (everything.getRecords(2, 0, Long.MAX_VALUE).size() < 200 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+        bedsideClient.closeBlocking();
+        trendsClient.closeBlocking();
+        everythingClient.closeBlocking();
+        strategy.close();
+
+        assertEquals(200, bedside.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertTrue(bedside.getRecords(2, 0, Long.MAX_VALUE).isEmpty());
+        assertEquals(10, trends.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(10, trends.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertTrue(trends.getRecords(1, 0, Long.MAX_VALUE).stream()
+                .allMatch(record -> record.getRecordType().equals("HeartRate")));
+        assertEquals(200, everything.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(200, everything.getRecords(2, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testRatesAboveAThousandStillLimit() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 10, false);
+        Thread.sleep(200);
+        URI uri = new URI("ws://localhost:" + port);
+
+        DataStorage fast = new DataStorage();
+        DataStorage slow = new DataStorage();
+        RealTimeWebSocketClient fastClient = new RealTimeWebSocketClient(uri, fast);
+        RealTimeWebSocketClient slowClient = new RealTimeWebSocketClient(uri, slow);
+        assertTrue(fastClient.connectBlocking());
+        assertTrue(slowClient.connectBlocking());
+        fastClient.send("{\"type\":\"subscribe\",\"rate\":2500}");
+        slowClient.send("{\"type\":\"subscribe\",\"rate\":400}");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (strategy.getSubscriberCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, strategy.getSubscriberCount());
+
+        // One second of sample time with three samples per millisecond
+        for (int t = 0; t < 1000; t++) {
+            for (int i = 0; i < 3; i++) {
+                strategy.output(1, 100_000 + t, "ECG", "0.5");
+            }
+        }
+        strategy.flush();
+
+        deadline = System.currentTimeMillis() + 10000;
+        while ((fast.getRecords(1, 0, Long.MAX_VALUE).size() < 1000 || slow.getRecords(1, 0, Long.MAX_VALUE).size() < 400)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+        fastClient.closeBlocking();
+        slowClient.closeBlocking();
+        strategy.close();
+
+        // At most one sample per distinct timestamp, and 2.5 ms apart on average
+        assertEquals(1000, fast.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(400, slow.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testBinaryFramesAreDecodedByClient() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 20, false, WireFormat.BINARY);
+        Thread.sleep(200);
+
+        DataStorage storage = new DataStorage();
+        RealTimeWebSocketClient client = new RealTimeWebSocketClient(new URI("ws://localhost:" + port), storage);
+        assertTrue(client.connectBlocking());
+        for (int i = 0; i < 5000; i++) {
+            strategy.output(8, 1000 + i, "ECG", Double.toString(i / 10.0));
+        }
+        strategy.flush();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (storage.getRecords(8, 0, Long.MAX_VALUE).size() < 5000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        client.closeBlocking();
+        strategy.close();
+
+        List<PatientRecord> records = storage.getRecords(8, 0, Long.MAX_VALUE);
+        assertEquals(5000, records.size());
+        assertEquals(499.9, records.get(4999).getMeasurementValue(), 1e-9);
+        assertEquals(5000, client.getStoredSamples());
+        assertEquals(0, client.getRejectedSamples());
+    }
+}
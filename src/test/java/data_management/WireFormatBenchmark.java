@@ -0,0 +1,179 @@
+package data_management;
+
+import com.data_management.BinaryFrameCodec;
+import com.data_management.PatientDataSink;
+import com.data_management.SampleBatch;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the text, JSON and binary wire formats: bytes per sample and encode and
+ * decode nanoseconds per sample. Not a unit test; run it with
+ * {@code java -cp target/classes:target/test-classes:<deps> data_management.WireFormatBenchmark}.
+ */
+public class WireFormatBenchmark {
+
+    private static final int SAMPLES = 200_000;
+    private static final int FRAME_SAMPLES = 1024;
+    private static final String[] LABELS = {"ECG", "ECG", "ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+
+    private static final PatientDataSink DISCARD = new PatientDataSink() {
+        @Override
+        public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        }
+
+        @Override
+        public void addPatientData(SampleBatch batch) {
+        }
+    };
+
+    private static int[] patientIds = new int[SAMPLES];
+    private static long[] timestamps = new long[SAMPLES];
+    private static String[] labels = new String[SAMPLES];
+    private static String[] data = new String[SAMPLES];
+    private static double[] values = new double[SAMPLES];
+    private static double checksum;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        long timestamp = 1716123910000L;
+        for (int i = 0; i < SAMPLES; i++) {
+            timestamp += random.nextInt(3);
+            patientIds[i] = 1 + random.nextInt(100);
+            timestamps[i] = timestamp;
+            labels[i] = LABELS[random.nextInt(LABELS.length)];
+            values[i] = random.nextGaussian() * 50 + 80;
+            data[i] = Double.toString(values[i]);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            System.err.println("round " + round);
+            text();
+            json();
+            binary(false);
+            binary(true);
+        }
+        System.err.println("checksum " + checksum);
+    }
+
+    private static void text() {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < SAMPLES; i++) {
+            line.setLength(0);
+            line.append(patientIds[i]).append(',').append(timestamps[i]).append(',')
+                    .append(labels[i]).append(',').append(data[i]).append('\n');
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        long encoded = System.nanoTime();
+
+        String stream = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        SampleBatch batch = new SampleBatch(FRAME_SAMPLES);
+        int lineStart = 0;
+        while (lineStart < stream.length()) {
+            int end = stream.indexOf('\n', lineStart);
+            int first = stream.indexOf(',', lineStart);
+            int second = stream.indexOf(',', first + 1);
+            int third = stream.indexOf(',', second + 1);
+            if (batch.isFull()) {
+                batch.clear();
+            }
+            batch.add(Integer.parseInt(stream, lineStart, first, 10),
+                    Double.parseDouble(stream.substring(third + 1, end)),
+                    stream.substring(second + 1, third).intern(),
+                    Long.parseLong(stream, first + 1, second, 10));
+            checksum += batch.getMeasurementValue(batch.size() - 1);
+            lineStart = end + 1;
+        }
+        report("text", out.size(), encoded - start, System.nanoTime() - encoded);
+    }
+
+    private static void json() throws Exception {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < SAMPLES; i++) {
+            message.setLength(0);
+            message.append("{\"patientId\":").append(patientIds[i])
+                    .append(",\"measurementValue\":").append(data[i])
+                    .append(",\"recordType\":\"").append(labels[i])
+                    .append("\",\"timestamp\":").append(timestamps[i]).append("}\n");
+            byte[] bytes = message.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        long encoded = System.nanoTime();
+
+        SampleBatch batch = new SampleBatch(FRAME_SAMPLES);
+        try (JsonParser parser = new JsonFactory().createParser(out.toByteArray())) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int patientId = 0;
+                double value = 0;
+                String label = null;
+                long timestamp = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "patientId":
+                            patientId = parser.getIntValue();
+                            break;
+                        case "measurementValue":
+                            value = parser.getDoubleValue();
+                            break;
+                        case "recordType":
+                            label = parser.getText();
+                            break;
+                        default:
+                            timestamp = parser.getLongValue();
+                    }
+                }
+                if (batch.isFull()) {
+                    batch.clear();
+                }
+                batch.add(patientId, value, label, timestamp);
+                checksum += value;
+            }
+        }
+        report("json", out.size(), encoded - start, System.nanoTime() - encoded);
+    }
+
+    private static void binary(boolean deltaTimestamps) {
+        long start = System.nanoTime();
+        List<byte[]> frames = new ArrayList<>();
+        SampleBatch batch = new SampleBatch(FRAME_SAMPLES);
+        int bytes = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            // Starts from the double value, as the text formats start from its String
+            batch.add(patientIds[i], values[i], labels[i], timestamps[i]);
+            if (batch.isFull() || i == SAMPLES - 1) {
+                byte[] frame = BinaryFrameCodec.encode(batch, deltaTimestamps);
+                frames.add(frame);
+                bytes += frame.length;
+                batch.clear();
+            }
+        }
+        long encoded = System.nanoTime();
+
+        for (byte[] frame : frames) {
+            batch.clear();
+            BinaryFrameCodec.decode(ByteBuffer.wrap(frame), batch, DISCARD);
+            checksum += batch.getMeasurementValue(batch.size() - 1);
+        }
+        report(deltaTimestamps ? "binary (delta)" : "binary", bytes, encoded - start, System.nanoTime() - encoded);
+    }
+
+    private static void report(String format, long bytes, long encodeNanos, long decodeNanos) {
+        System.err.printf("  %-15s %5.1f bytes/sample  encode %6.1f ns/sample  decode %6.1f ns/sample%n",
+                format, (double) bytes / SAMPLES, (double) encodeNanos / SAMPLES, (double) decodeNanos / SAMPLES);
+    }
+}